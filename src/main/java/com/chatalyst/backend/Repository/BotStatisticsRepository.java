@@ -0,0 +1,9 @@
+package com.chatalyst.backend.Repository;
+
+import com.chatalyst.backend.model.BotStatistics;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BotStatisticsRepository extends JpaRepository<BotStatistics, Long> {
+}
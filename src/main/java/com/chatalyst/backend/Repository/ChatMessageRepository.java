@@ -3,10 +3,12 @@ package com.chatalyst.backend.Repository;
 // src/main/java/com/chatalyst/backend/repository/ChatMessageRepository.java
 
 import com.chatalyst.backend.model.ChatMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
@@ -14,23 +16,73 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
      * Retrieves the top 25 chat messages for a specific chat and bot, ordered by ID in descending order.
      * This is useful for fetching the most recent messages.
      * @param chatId The ID of the chat.
-     * @param botIdentifier The identifier of the bot.
+     * @param botId The ID of the bot.
      * @return A list of the top 25 ChatMessage objects.
      */
-    List<ChatMessage> findTop30ByChatIdAndBotIdentifierOrderByIdDesc(Long chatId, String botIdentifier);
+    List<ChatMessage> findTop30ByChatIdAndBotIdOrderByIdDesc(Long chatId, Long botId);
+
+    /**
+     * Retrieves the newest messages of a chat that were not yet folded into the conversation summary.
+     * @param chatId The ID of the chat.
+     * @param botId The ID of the bot.
+     * @param lastMessageId The ID of the last summarized message (0 if there is no summary).
+     * @param since Only messages created after this moment are considered, so only recent partitions are scanned.
+     * @param pageable Limits the number of returned messages.
+     * @return Messages ordered from newest to oldest.
+     */
+    List<ChatMessage> findByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfterOrderByIdDesc(Long chatId, Long botId, Long lastMessageId, LocalDateTime since, Pageable pageable);
+
+    /**
+     * Retrieves the oldest messages of a chat that were not yet folded into the conversation summary.
+     * @param chatId The ID of the chat.
+     * @param botId The ID of the bot.
+     * @param lastMessageId The ID of the last summarized message (0 if there is no summary).
+     * @param since Only messages created after this moment are considered, so only recent partitions are scanned.
+     * @param pageable Limits the number of returned messages.
+     * @return Messages ordered from oldest to newest.
+     */
+    List<ChatMessage> findByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfterOrderByIdAsc(Long chatId, Long botId, Long lastMessageId, LocalDateTime since, Pageable pageable);
+
+    /**
+     * Counts the messages of a chat that were not yet folded into the conversation summary.
+     * @param chatId The ID of the chat.
+     * @param botId The ID of the bot.
+     * @param lastMessageId The ID of the last summarized message (0 if there is no summary).
+     * @param since Only messages created after this moment are counted.
+     * @return The number of pending messages.
+     */
+    long countByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfter(Long chatId, Long botId, Long lastMessageId, LocalDateTime since);
+
+    /**
+     * Returns the bots that have messages created before the given moment.
+     * @param before The cutoff moment.
+     * @return Bot IDs.
+     */
+    @Query("SELECT DISTINCT m.botId FROM ChatMessage m WHERE m.createdAt < :before")
+    List<Long> findBotIdsWithMessagesBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * Retrieves the oldest messages of a bot created before the given moment.
+     * Used by the cold archiver.
+     * @param botId The ID of the bot.
+     * @param before The cutoff moment.
+     * @param pageable Limits the number of returned messages.
+     * @return Messages ordered from oldest to newest.
+     */
+    List<ChatMessage> findByBotIdAndCreatedAtBeforeOrderByIdAsc(Long botId, LocalDateTime before, Pageable pageable);
 
     /**
      * Counts the total number of messages for a specific bot.
-     * @param botIdentifier The identifier of the bot.
+     * @param botId The ID of the bot.
      * @return The total number of messages.
      */
-    long countByBotIdentifier(String botIdentifier);
+    long countByBotId(Long botId);
 
     /**
      * Counts the number of unique chats (dialogues) for a specific bot.
-     * @param botIdentifier The identifier of the bot.
+     * @param botId The ID of the bot.
      * @return The number of unique chats.
      */
-    @Query("SELECT COUNT(DISTINCT m.chatId) FROM ChatMessage m WHERE m.botIdentifier = :botIdentifier")
-    long countDistinctChatIdsByBotIdentifier(@Param("botIdentifier") String botIdentifier);
+    @Query("SELECT COUNT(DISTINCT m.chatId) FROM ChatMessage m WHERE m.botId = :botId")
+    long countDistinctChatIdsByBotId(@Param("botId") Long botId);
 }
\ No newline at end of file
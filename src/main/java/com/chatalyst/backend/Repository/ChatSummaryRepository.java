@@ -0,0 +1,16 @@
+package com.chatalyst.backend.Repository;
+
+import com.chatalyst.backend.model.ChatSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ChatSummaryRepository extends JpaRepository<ChatSummary, Long> {
+    // Найти сводку диалога для конкретного бота и чата
+    Optional<ChatSummary> findByBotIdentifierAndChatId(String botIdentifier, Long chatId);
+
+    // Удалить все сводки бота: внешнего ключа на bots у таблицы нет
+    long deleteByBotIdentifier(String botIdentifier);
+}
@@ -16,6 +16,9 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     // Найти все товары, привязанные к определенному боту
     List<Product> findByBot(Bot bot);
 
+    // То же по ID бота, без загрузки самого бота (сборка снимка каталога в фоне)
+    List<Product> findByBotId(Long botId);
+
     // Найти товар по имени и боту
     Optional<Product> findByNameAndBot(String name, Bot bot);
 
@@ -0,0 +1,31 @@
+package com.chatalyst.backend.archive;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Хранилище файлов архива истории чатов. Активная реализация выбирается свойством chat.archive.storage.
+ */
+public interface ArchiveStorage {
+
+    /**
+     * Сохраняет файл. Существующий файл с тем же ключом перезаписывается.
+     * @param key Ключ файла (путь с разделителем "/").
+     * @param data Содержимое.
+     */
+    void put(String key, byte[] data);
+
+    /**
+     * Открывает файл на чтение.
+     * @param key Ключ файла.
+     * @return Поток содержимого; закрывает вызывающий.
+     */
+    InputStream get(String key);
+
+    /**
+     * Возвращает ключи файлов с заданным префиксом в лексикографическом порядке.
+     * @param prefix Префикс ключа.
+     * @return Ключи файлов.
+     */
+    List<String> list(String prefix);
+}
@@ -0,0 +1,9 @@
+package com.chatalyst.backend.archive;
+
+import java.time.LocalDateTime;
+
+/**
+ * Сообщение чата, перенесённое в холодный архив.
+ */
+public record ArchivedMessage(long id, long chatId, LocalDateTime createdAt, String role, String content) {
+}
@@ -0,0 +1,294 @@
+package com.chatalyst.backend.archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Колоночный формат сегмента архива.
+ * Строки отсортированы по (chatId, id); каждая колонка сжимается отдельно, поэтому похожие значения
+ * (ID, время, роли) лежат рядом и хорошо сжимаются. Числовые колонки хранятся разностями в varint.
+ * <pre>
+ * сегмент: "CHSG" | версия | число строк | длины колонок | chatId | id | created_at | role | content
+ * индекс:  "CHIX" | версия | число чатов | (chatId, первая строка, число строк, мин. и макс. время)...
+ * </pre>
+ * Индекс хранится отдельным маленьким файлом, чтобы найти нужные сегменты, не читая их.
+ */
+public final class ChatSegmentCodec {
+
+    private static final int SEGMENT_MAGIC = 0x43485347; // "CHSG"
+    private static final int INDEX_MAGIC = 0x43484958; // "CHIX"
+    private static final byte VERSION = 1;
+    private static final int COLUMNS = 5;
+
+    private ChatSegmentCodec() {
+    }
+
+    /**
+     * Строки одного чата внутри сегмента.
+     */
+    public record IndexEntry(long chatId, int firstRow, int rowCount, LocalDateTime from, LocalDateTime to) {
+    }
+
+    /**
+     * Закодированный сегмент и его индекс.
+     */
+    public record Encoded(byte[] segment, byte[] index, int rowCount) {
+    }
+
+    /**
+     * Кодирует сообщения в сегмент.
+     * @param messages Сообщения, отсортированные по chatId, затем по id.
+     * @return Сегмент и индекс по chatId.
+     */
+    public static Encoded encode(List<ArchivedMessage> messages) {
+        try {
+            ColumnWriter chatIds = new ColumnWriter();
+            ColumnWriter ids = new ColumnWriter();
+            ColumnWriter times = new ColumnWriter();
+            ColumnWriter roles = new ColumnWriter();
+            ColumnWriter contents = new ColumnWriter();
+            List<IndexEntry> entries = new ArrayList<>();
+
+            long previousChatId = 0;
+            long previousId = 0;
+            long previousTime = 0;
+            int chatStart = 0;
+            for (int row = 0; row < messages.size(); row++) {
+                ArchivedMessage message = messages.get(row);
+                if (row > 0 && message.chatId() != previousChatId) {
+                    entries.add(indexEntry(messages, chatStart, row));
+                    chatStart = row;
+                }
+                long time = toMillis(message.createdAt());
+                chatIds.writeVarLong(zigZag(message.chatId() - previousChatId));
+                ids.writeVarLong(zigZag(message.id() - previousId));
+                times.writeVarLong(zigZag(time - previousTime));
+                roles.writeString(message.role());
+                contents.writeString(message.content());
+                previousChatId = message.chatId();
+                previousId = message.id();
+                previousTime = time;
+            }
+            if (!messages.isEmpty()) {
+                entries.add(indexEntry(messages, chatStart, messages.size()));
+            }
+
+            ByteArrayOutputStream segment = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(segment);
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(messages.size());
+            byte[][] columns = {chatIds.finish(), ids.finish(), times.finish(), roles.finish(), contents.finish()};
+            for (byte[] column : columns) {
+                out.writeInt(column.length);
+            }
+            for (byte[] column : columns) {
+                out.write(column);
+            }
+            out.flush();
+            return new Encoded(segment.toByteArray(), encodeIndex(entries), messages.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось закодировать сегмент архива: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Читает индекс сегмента.
+     * @param in Поток файла индекса.
+     * @return Записи индекса в порядке chatId.
+     */
+    public static List<IndexEntry> readIndex(InputStream in) {
+        try {
+            DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != INDEX_MAGIC || data.readByte() != VERSION) {
+                throw new RuntimeException("Неизвестный формат индекса архива");
+            }
+            int count = data.readInt();
+            List<IndexEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new IndexEntry(data.readLong(), data.readInt(), data.readInt(),
+                        fromMillis(data.readLong()), fromMillis(data.readLong())));
+            }
+            return entries;
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось прочитать индекс архива: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Декодирует строки сегмента в диапазоне [firstRow, firstRow + rowCount).
+     * Разностные колонки читаются с начала, тексты до firstRow пропускаются без декодирования.
+     * @param segment Содержимое сегмента.
+     * @param firstRow Первая строка.
+     * @param rowCount Число строк.
+     * @param consumer Получатель сообщений.
+     */
+    public static void read(byte[] segment, int firstRow, int rowCount, Consumer<ArchivedMessage> consumer) {
+        try {
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(segment));
+            if (header.readInt() != SEGMENT_MAGIC || header.readByte() != VERSION) {
+                throw new RuntimeException("Неизвестный формат сегмента архива");
+            }
+            int totalRows = header.readInt();
+            int[] lengths = new int[COLUMNS];
+            for (int i = 0; i < COLUMNS; i++) {
+                lengths[i] = header.readInt();
+            }
+            int offset = 4 + 1 + 4 + 4 * COLUMNS;
+            DataInputStream[] columns = new DataInputStream[COLUMNS];
+            for (int i = 0; i < COLUMNS; i++) {
+                columns[i] = new DataInputStream(new BufferedInputStream(
+                        new InflaterInputStream(new ByteArrayInputStream(segment, offset, lengths[i])), 8192));
+                offset += lengths[i];
+            }
+            int end = Math.min(totalRows, firstRow + rowCount);
+
+            long chatId = 0;
+            long id = 0;
+            long time = 0;
+            for (int row = 0; row < end; row++) {
+                chatId += unZigZag(readVarLong(columns[0]));
+                id += unZigZag(readVarLong(columns[1]));
+                time += unZigZag(readVarLong(columns[2]));
+                if (row < firstRow) {
+                    skipString(columns[3]);
+                    skipString(columns[4]);
+                    continue;
+                }
+                consumer.accept(new ArchivedMessage(id, chatId, fromMillis(time), readString(columns[3]), readString(columns[4])));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось прочитать сегмент архива: " + e.getMessage(), e);
+        }
+    }
+
+    private static IndexEntry indexEntry(List<ArchivedMessage> messages, int from, int to) {
+        LocalDateTime min = messages.get(from).createdAt();
+        LocalDateTime max = min;
+        for (int i = from + 1; i < to; i++) {
+            LocalDateTime createdAt = messages.get(i).createdAt();
+            if (createdAt.isBefore(min)) {
+                min = createdAt;
+            }
+            if (createdAt.isAfter(max)) {
+                max = createdAt;
+            }
+        }
+        return new IndexEntry(messages.get(from).chatId(), from, to - from, min, max);
+    }
+
+    private static byte[] encodeIndex(List<IndexEntry> entries) throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream(16 + entries.size() * 32);
+        DataOutputStream out = new DataOutputStream(index);
+        out.writeInt(INDEX_MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(entries.size());
+        for (IndexEntry entry : entries) {
+            out.writeLong(entry.chatId());
+            out.writeInt(entry.firstRow());
+            out.writeInt(entry.rowCount());
+            out.writeLong(toMillis(entry.from()));
+            out.writeLong(toMillis(entry.to()));
+        }
+        out.flush();
+        return index.toByteArray();
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Слишком длинное число varint");
+    }
+
+    // Строка: длина + 1 в varint (0 — null), затем байты UTF-8
+    private static String readString(DataInputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length - 1), StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(DataInputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length > 1) {
+            in.skipNBytes(length - 1);
+        }
+    }
+
+    /**
+     * Одна сжимаемая колонка.
+     */
+    private static class ColumnWriter {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        // Буфер перед сжатием: varint пишутся по байту
+        private final BufferedOutputStream out = new BufferedOutputStream(new DeflaterOutputStream(buffer, deflater, 8192), 8192);
+
+        void writeVarLong(long value) throws IOException {
+            ChatSegmentCodec.writeVarLong(out, value);
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                ChatSegmentCodec.writeVarLong(out, 0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ChatSegmentCodec.writeVarLong(out, bytes.length + 1L);
+            out.write(bytes);
+        }
+
+        byte[] finish() throws IOException {
+            out.close();
+            deflater.end();
+            return buffer.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.chatalyst.backend.archive;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Архив на локальном диске. Файл сначала пишется во временный и затем переименовывается,
+ * поэтому читатели не видят частично записанных сегментов.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.archive.storage", havingValue = "local", matchIfMissing = true)
+public class LocalArchiveStorage implements ArchiveStorage {
+
+    private final Path root;
+
+    public LocalArchiveStorage(@Value("${chat.archive.local-dir:./chat-archive}") String directory) {
+        this.root = Path.of(directory).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void put(String key, byte[] data) {
+        Path target = resolve(key);
+        try {
+            Files.createDirectories(target.getParent());
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось записать файл архива " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) {
+        try {
+            return Files.newInputStream(resolve(key));
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось прочитать файл архива " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        // Префикс вида "bot/" — это каталог, иначе файлы ищутся в каталоге префикса
+        Path directory = prefix.endsWith("/") ? resolve(prefix) : resolve(prefix).getParent();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace('\\', '/'))
+                    .filter(key -> key.startsWith(prefix) && !key.endsWith(".tmp"))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось получить список файлов архива " + prefix + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root)) {
+            throw new RuntimeException("Недопустимый ключ архива: " + key);
+        }
+        return path;
+    }
+}
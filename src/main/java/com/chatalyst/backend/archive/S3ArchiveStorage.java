@@ -0,0 +1,76 @@
+package com.chatalyst.backend.archive;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Архив в объектном хранилище (тот же S3-совместимый PS.kz, что и для изображений товаров).
+ * Переписка хранится в отдельном приватном бакете: бакет товаров публичный, его объекты доступны по прямой ссылке.
+ * Без chat.archive.s3.bucket или с бакетом товаров приложение не запустится.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.archive.storage", havingValue = "s3")
+public class S3ArchiveStorage implements ArchiveStorage {
+
+    private final S3Client s3Client;
+    private final String bucketName;
+
+    public S3ArchiveStorage(S3Client s3Client,
+                            @Value("${chat.archive.s3.bucket:}") String bucketName,
+                            @Value("${ps.bucket-name:}") String publicBucketName) {
+        if (bucketName.isBlank()) {
+            throw new IllegalStateException("Для chat.archive.storage=s3 нужно задать приватный бакет chat.archive.s3.bucket");
+        }
+        if (bucketName.equals(publicBucketName)) {
+            throw new IllegalStateException("chat.archive.s3.bucket не может совпадать с публичным бакетом товаров " + publicBucketName);
+        }
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public void put(String key, byte[] data) {
+        try {
+            s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType("application/octet-stream")
+                    .build(), RequestBody.fromBytes(data));
+        } catch (S3Exception e) {
+            throw new RuntimeException("Ошибка S3 при записи файла архива " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) {
+        try {
+            return s3Client.getObject(GetObjectRequest.builder().bucket(bucketName).key(key).build());
+        } catch (S3Exception e) {
+            throw new RuntimeException("Ошибка S3 при чтении файла архива " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        try {
+            return s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(bucketName).prefix(prefix).build())
+                    .contents().stream()
+                    .map(S3Object::key)
+                    .sorted()
+                    .toList();
+        } catch (S3Exception e) {
+            throw new RuntimeException("Ошибка S3 при получении списка файлов архива " + prefix + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.chatalyst.backend.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Выравнивает последовательности ID по уже существующим данным.
+ * Таблицы раньше использовали IDENTITY, а новая последовательность начинается с 1,
+ * поэтому при первом запуске её нужно сдвинуть за максимальный ID, иначе новые строки получат занятые ID.
+ * <p>
+ * Выполняется при создании бина, сразу после EntityManagerFactory (она создаёт последовательности),
+ * то есть до запуска веб-сервера и планировщиков. Ошибка прерывает запуск приложения:
+ * работать с невыровненной последовательностью нельзя.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class SequenceAligner implements InitializingBean {
+
+    // Должен совпадать с allocationSize в @SequenceGenerator сущностей
+    static final int ALLOCATION_SIZE = 50;
+
+    // Таблица -> последовательность
+    static final Map<String, String> SEQUENCES = Map.of(
+            "chat_message", "chat_message_seq",
+            "openaitoken_usage", "open_aitoken_usage_seq",
+            "products", "products_seq");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterPropertiesSet() {
+        SEQUENCES.forEach((table, sequence) -> {
+            try {
+                Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+                Long lastValue = jdbcTemplate.queryForObject("SELECT last_value FROM " + sequence, Long.class);
+                long required = maxId + ALLOCATION_SIZE;
+                if (lastValue < required) {
+                    jdbcTemplate.queryForObject("SELECT setval(?, ?)", Long.class, sequence, required);
+                    log.info("Последовательность {} сдвинута с {} на {} (максимальный ID в {}: {})",
+                            sequence, lastValue, required, table, maxId);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Не удалось выровнять последовательность " + sequence, e);
+            }
+        });
+    }
+}
@@ -4,7 +4,10 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.client.HttpClient;
 
 @Configuration
 public class WebClientConfig {
@@ -21,8 +24,13 @@ public class WebClientConfig {
     // WebClient для взаимодействия с OpenAI API
     @Bean(name = "openAiWebClient") // Уникальное имя для бина OpenAI WebClient
     public WebClient openAiWebClient() {
+        // Таймаут соединения; таймаут ответа задаётся для каждого запроса в OpenAILlmProvider,
+        // общий таймаут вызова — в OpenAIResilienceGuard
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
         return WebClient.builder()
                 .baseUrl("https://api.openai.com/v1") // Базовый URL для OpenAI API
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .build();
     }
@@ -1,12 +1,18 @@
 package com.chatalyst.backend.controller;
 
+import com.chatalyst.backend.dto.BotDashboardItem;
 import com.chatalyst.backend.dto.BotStats;
 import com.chatalyst.backend.dto.CreateBotRequest;
+import com.chatalyst.backend.dto.DialogueStats;
 import com.chatalyst.backend.dto.MessageResponse;
 import com.chatalyst.backend.dto.UpdateBotRequest;
 import com.chatalyst.backend.dto.UpdateShopNameRequest;
 import com.chatalyst.backend.model.Bot;
 import com.chatalyst.backend.security.services.BotService;
+import com.chatalyst.backend.security.services.BotStatsService;
+import com.chatalyst.backend.security.services.ChatArchiveService;
+import com.chatalyst.backend.security.services.ChatExportService;
+import com.chatalyst.backend.security.services.DialogueSketchService;
 import com.chatalyst.backend.security.services.UserPrincipal;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -17,12 +23,18 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -34,6 +46,10 @@ import java.util.List;
 public class BotController {
 
     private final BotService botService;
+    private final BotStatsService botStatsService;
+    private final ChatArchiveService chatArchiveService;
+    private final ChatExportService chatExportService;
+    private final DialogueSketchService dialogueSketchService;
 
     /**
      * Создает нового бота для текущего авторизованного пользователя.
@@ -82,6 +98,24 @@ public class BotController {
         return ResponseEntity.ok(bots);
     }
 
+    /**
+     * Возвращает все боты текущего пользователя со статистикой одним запросом.
+     * @param userPrincipal Информация об авторизованном пользователе.
+     * @return ResponseEntity со списком ботов и их статистикой.
+     */
+    @GetMapping("/dashboard")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    @Operation(summary = "Получить панель ботов пользователя", description = "Возвращает все AI-боты текущего пользователя с числом сообщений, диалогов, товаров и расходом токенов.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Панель успешно получена",
+                    content = @Content(schema = @Schema(implementation = BotDashboardItem.class, type = "array"))),
+            @ApiResponse(responseCode = "401", description = "Неавторизованный доступ",
+                    content = @Content(schema = @Schema(implementation = MessageResponse.class)))
+    })
+    public ResponseEntity<List<BotDashboardItem>> getDashboard(@AuthenticationPrincipal UserPrincipal userPrincipal) {
+        return ResponseEntity.ok(botStatsService.getDashboard(userPrincipal.getId()));
+    }
+
     /**
      * Эндпоинт для обновления имени магазина у бота.
      *
@@ -197,6 +231,120 @@ public class BotController {
         }
     }
 
+    /**
+     * Возвращает приблизительное число диалогов бота за период.
+     * @param botId ID бота.
+     * @param from Первый день периода (включительно), по умолчанию 29 дней до конца периода.
+     * @param to Последний день периода (включительно), по умолчанию сегодня.
+     * @param userPrincipal Информация об авторизованном пользователе.
+     * @return Число диалогов за период и по дням или сообщение об ошибке.
+     */
+    @GetMapping("/stats/{botId}/dialogues")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    @Operation(summary = "Получить число диалогов за период", description = "Возвращает число различных чатов бота за период и по дням с погрешностью около 1%. Доступно только владельцу бота.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Статистика успешно получена",
+                    content = @Content(schema = @Schema(implementation = DialogueStats.class))),
+            @ApiResponse(responseCode = "400", description = "Ошибка, бот не найден, нет прав доступа или неверный период",
+                    content = @Content(schema = @Schema(implementation = MessageResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Неавторизованный доступ",
+                    content = @Content(schema = @Schema(implementation = MessageResponse.class)))
+    })
+    public ResponseEntity<?> getDialogueStatistics(@PathVariable Long botId,
+                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                   @AuthenticationPrincipal UserPrincipal userPrincipal) {
+        try {
+            Bot bot = botService.getOwnedBot(botId, userPrincipal.getId());
+            LocalDate end = to != null ? to : LocalDate.now();
+            LocalDate start = from != null ? from : end.minusDays(29);
+            return ResponseEntity.ok(dialogueSketchService.estimate(bot.getId(), start, end));
+        } catch (RuntimeException e) {
+            log.error("Ошибка при получении числа диалогов бота {}: {}", botId, e.getMessage());
+            return ResponseEntity.badRequest().body(new MessageResponse("Ошибка: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Отдаёт архивную историю чата потоком в формате NDJSON.
+     * @param botId ID бота.
+     * @param chatId ID чата Telegram.
+     * @param userPrincipal Информация об авторизованном пользователе.
+     * @return Поток сообщений (по объекту JSON на строку) или сообщение об ошибке.
+     */
+    @GetMapping("/{botId}/archive/chats/{chatId}")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    @Operation(summary = "Получить архивную историю чата", description = "Возвращает сообщения чата, перенесённые в холодный архив, в формате NDJSON. Доступно только владельцу бота.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Архив чата отдаётся потоком",
+                    content = @Content(mediaType = "application/x-ndjson")),
+            @ApiResponse(responseCode = "400", description = "Ошибка, бот не найден или нет прав доступа",
+                    content = @Content(schema = @Schema(implementation = MessageResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Неавторизованный доступ",
+                    content = @Content(schema = @Schema(implementation = MessageResponse.class)))
+    })
+    public ResponseEntity<?> getArchivedChat(@PathVariable Long botId,
+                                             @PathVariable Long chatId,
+                                             @AuthenticationPrincipal UserPrincipal userPrincipal) {
+        try {
+            Bot bot = botService.getOwnedBot(botId, userPrincipal.getId());
+            StreamingResponseBody body = out -> chatArchiveService.writeChat(bot.getId(), chatId, out);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                    .body(body);
+        } catch (RuntimeException e) {
+            log.error("Ошибка при чтении архива чата {} бота {}: {}", chatId, botId, e.getMessage());
+            return ResponseEntity.badRequest().body(new MessageResponse("Ошибка: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Выгружает переписку бота потоком в NDJSON или CSV.
+     * @param botId ID бота.
+     * @param format Формат: ndjson или csv.
+     * @param gzip Сжимать ли файл gzip.
+     * @param from Начало периода (включительно), необязательно.
+     * @param to Конец периода (не включительно), необязательно.
+     * @param userPrincipal Информация об авторизованном пользователе.
+     * @return Файл выгрузки или сообщение об ошибке.
+     */
+    @GetMapping("/{botId}/export")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    @Operation(summary = "Выгрузить переписку бота", description = "Отдаёт все сообщения бота файлом NDJSON или CSV (по желанию сжатым gzip) без загрузки выгрузки в память. Доступно только владельцу бота.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Выгрузка отдаётся потоком",
+                    content = @Content(mediaType = "application/x-ndjson")),
+            @ApiResponse(responseCode = "400", description = "Ошибка, бот не найден, нет прав доступа или неверный формат",
+                    content = @Content(schema = @Schema(implementation = MessageResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Неавторизованный доступ",
+                    content = @Content(schema = @Schema(implementation = MessageResponse.class)))
+    })
+    public ResponseEntity<?> exportMessages(@PathVariable Long botId,
+                                            @RequestParam(defaultValue = "ndjson") String format,
+                                            @RequestParam(defaultValue = "false") boolean gzip,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                            @AuthenticationPrincipal UserPrincipal userPrincipal) {
+        try {
+            Bot bot = botService.getOwnedBot(botId, userPrincipal.getId());
+            ChatExportService.Format exportFormat = ChatExportService.Format.of(format);
+            String extension = exportFormat == ChatExportService.Format.CSV ? "csv" : "ndjson";
+            MediaType mediaType = exportFormat == ChatExportService.Format.CSV
+                    ? MediaType.parseMediaType("text/csv; charset=UTF-8")
+                    : MediaType.parseMediaType("application/x-ndjson");
+            String fileName = "bot-" + botId + "-messages." + extension + (gzip ? ".gz" : "");
+
+            StreamingResponseBody body = out -> chatExportService.export(bot.getId(), exportFormat, gzip, from, to, out);
+            return ResponseEntity.ok()
+                    .contentType(gzip ? MediaType.parseMediaType("application/gzip") : mediaType)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                    .body(body);
+        } catch (RuntimeException e) {
+            log.error("Ошибка при выгрузке сообщений бота {}: {}", botId, e.getMessage());
+            return ResponseEntity.badRequest().body(new MessageResponse("Ошибка: " + e.getMessage()));
+        }
+    }
+
     /**
      * Активирует webhook для бота.
      * @param botId ID бота для активации webhook.
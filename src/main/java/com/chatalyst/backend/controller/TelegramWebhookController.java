@@ -1,6 +1,7 @@
 // src/main/java/com/chatalyst/backend/controller/TelegramWebhookController.java
 package com.chatalyst.backend.controller;
 
+import com.chatalyst.backend.security.services.PipelineMetrics;
 import com.chatalyst.backend.security.services.TelegramService;
 import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
 public class TelegramWebhookController {
 
     private final TelegramService telegramService;
+    private final PipelineMetrics pipelineMetrics;
 
     /**
      * Эндпоинт для обработки входящих вебхуков от Telegram.
@@ -29,7 +31,8 @@ public class TelegramWebhookController {
     public ResponseEntity<?> handleTelegramWebhook(@PathVariable String botIdentifier, @RequestBody JsonNode updateJson) {
         log.info("Received webhook for bot {}: {}", botIdentifier, updateJson.toString());
         try {
-            telegramService.processUpdate(botIdentifier, updateJson); // Передаем botIdentifier в сервис
+            // Идентификатор бота из URL не попадает в теги: его значения не ограничены
+            pipelineMetrics.time("chat.webhook", () -> telegramService.processUpdate(botIdentifier, updateJson)); // Передаем botIdentifier в сервис
             return ResponseEntity.ok().build(); // Telegram ожидает 200 OK
         } catch (Exception e) {
             log.error("Error processing Telegram webhook for bot {}: {}", botIdentifier, e.getMessage(), e);
@@ -1,24 +1,74 @@
 package com.chatalyst.backend.controller;
 
+import com.chatalyst.backend.dto.MessageResponse;
+import com.chatalyst.backend.dto.TokenUsageSeriesDTO;
 import com.chatalyst.backend.dto.TokenUsageStatsDTO;
+import com.chatalyst.backend.model.RollupGranularity;
 import com.chatalyst.backend.security.services.TokenUsageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/token-usage")
 @RequiredArgsConstructor
+@Slf4j
 public class TokenUsageController {
 
     private final TokenUsageService tokenUsageService;
+    private final ObjectMapper objectMapper;
 
+    /**
+     * Расход токенов бота за период [from, to). Без параметров — за всё время.
+     */
     @GetMapping("/stats/{botIdentifier}")
-    public ResponseEntity<TokenUsageStatsDTO> getBotStats(@PathVariable String botIdentifier) {
-        TokenUsageStatsDTO stats = tokenUsageService.getBotTokenUsageStats(botIdentifier);
+    public ResponseEntity<TokenUsageStatsDTO> getBotStats(@PathVariable String botIdentifier,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        TokenUsageStatsDTO stats = tokenUsageService.getBotTokenUsageStats(botIdentifier, from, to);
         return ResponseEntity.ok(stats);
     }
+
+    /**
+     * Временной ряд расхода токенов и стоимости бота по корзинам minute, hour или day для графиков.
+     * Ответ помечается ETag: если данные не изменились, повторный запрос с If-None-Match получает 304 без тела.
+     */
+    @GetMapping("/series/{botIdentifier}")
+    public ResponseEntity<?> getBotSeries(@PathVariable String botIdentifier,
+                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                          @RequestParam(defaultValue = "hour") String granularity,
+                                          @RequestParam(defaultValue = "500") int points,
+                                          @RequestParam(defaultValue = "lttb") String downsampling,
+                                          WebRequest webRequest) {
+        try {
+            TokenUsageSeriesDTO series = tokenUsageService.getBotTokenUsageSeries(
+                    botIdentifier, RollupGranularity.of(granularity), from, to, points, downsampling);
+            String etag = "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(series)) + "\"";
+            if (webRequest.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS).cachePrivate())
+                    .body(series);
+        } catch (Exception e) {
+            log.error("Ошибка при построении ряда расхода токенов бота {}: {}", botIdentifier, e.getMessage());
+            return ResponseEntity.badRequest().body(new MessageResponse("Ошибка: " + e.getMessage()));
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package com.chatalyst.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Строка панели владельца: бот и его сводная статистика за всё время.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BotDashboardItem {
+    private Long botId;
+    private String botIdentifier;
+    private String name;
+    private String shopName;
+    private String platform;
+    private long totalMessages;
+    private long totalDialogues;
+    private long productCount;
+    private long totalRequests;
+    private long totalTokens;
+    private double totalUsdCost;
+    private double totalKztCost;
+}
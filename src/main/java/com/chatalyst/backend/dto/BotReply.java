@@ -0,0 +1,17 @@
+package com.chatalyst.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Ответ AI: текст для пользователя и ID товаров, фото которых нужно показать.
+ */
+@Data
+@AllArgsConstructor
+public class BotReply {
+    private String text;
+    // ID товаров из каталога; null, если модель вернула неструктурированный ответ
+    private List<Long> productIds;
+}
@@ -0,0 +1,18 @@
+package com.chatalyst.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Контекст диалога для AI: сводка старой части переписки и последние сообщения.
+ */
+@Data
+@AllArgsConstructor
+public class ConversationContext {
+    // Сводка ранних сообщений (null, если диалог ещё короткий)
+    private String summary;
+    // Последние сообщения в хронологическом порядке: {role, content}
+    private List<String[]> recentMessages;
+}
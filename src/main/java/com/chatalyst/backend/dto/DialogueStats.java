@@ -0,0 +1,21 @@
+package com.chatalyst.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Приблизительное число диалогов бота за период (погрешность около 1%).
+ */
+@Data
+@AllArgsConstructor
+public class DialogueStats {
+    private LocalDate from;
+    private LocalDate to;
+    // Различные чаты за весь период: чат, писавший в несколько дней, учитывается один раз
+    private long dialogues;
+    // Различные чаты по дням
+    private Map<LocalDate, Long> daily;
+}
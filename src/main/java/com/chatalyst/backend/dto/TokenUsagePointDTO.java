@@ -0,0 +1,22 @@
+package com.chatalyst.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Расход токенов за одну корзину временного ряда.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TokenUsagePointDTO {
+    private LocalDateTime bucketStart;
+    private long requests;
+    private long promptTokens;
+    private long completionTokens;
+    private double usdCost;
+    private double kztCost;
+}
@@ -0,0 +1,28 @@
+package com.chatalyst.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Временной ряд расхода токенов бота для графиков.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TokenUsageSeriesDTO {
+    private String botIdentifier;
+    // minute, hour или day
+    private String granularity;
+    // Границы ряда, выровненные по корзинам
+    private LocalDateTime from;
+    private LocalDateTime to;
+    // Сколько корзин было до прореживания
+    private int buckets;
+    // lttb, max или none, если ряд не прореживался
+    private String downsampling;
+    private List<TokenUsagePointDTO> points;
+}
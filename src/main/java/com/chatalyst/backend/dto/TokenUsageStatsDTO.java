@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -14,4 +16,7 @@ public class TokenUsageStatsDTO {
     private Long totalCompletionTokens;
     private Double totalUsdCost;
     private Double totalKztCost;
+    // Период статистики; null — без ограничения с этой стороны
+    private LocalDateTime from;
+    private LocalDateTime to;
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.chatalyst.backend.llm;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Сообщение диалога для LLM: роль ("system", "user", "assistant", "tool") и текст.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmMessage {
+    private String role;
+    private String content;
+    // Текст, заранее экранированный для JSON и закодированный в UTF-8 (без кавычек); null — кодируется при отправке
+    private byte[] encodedContent;
+    // Вызовы функций в сообщении ассистента
+    private List<LlmToolCall> toolCalls;
+    // ID вызова функции, на который отвечает сообщение с ролью "tool"
+    private String toolCallId;
+
+    public LlmMessage(String role, String content) {
+        this(role, content, null, null, null);
+    }
+
+    public static LlmMessage system(String content) {
+        return new LlmMessage("system", content);
+    }
+
+    public static LlmMessage user(String content) {
+        return new LlmMessage("user", content);
+    }
+
+    /**
+     * Создаёт сообщение с заранее закодированным текстом.
+     * Полезно для больших неизменных сообщений (системный промпт с каталогом),
+     * которые отправляются многократно: кодирование выполняется один раз, а не при каждом запросе.
+     * @param role Роль сообщения.
+     * @param content Текст сообщения.
+     * @return Сообщение с заполненным encodedContent.
+     */
+    public static LlmMessage preEncoded(String role, String content) {
+        return new LlmMessage(role, content, JsonStringEncoder.getInstance().quoteAsUTF8(content), null, null);
+    }
+
+    /**
+     * Сообщение ассистента с запросом вызова функций; возвращается модели в следующем запросе.
+     */
+    public static LlmMessage assistantToolCalls(String content, List<LlmToolCall> toolCalls) {
+        return new LlmMessage("assistant", content, null, toolCalls, null);
+    }
+
+    /**
+     * Результат вызова функции.
+     */
+    public static LlmMessage toolResult(String toolCallId, String content) {
+        return new LlmMessage("tool", content, null, null, toolCallId);
+    }
+}
@@ -0,0 +1,38 @@
+package com.chatalyst.backend.llm;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Провайдер языковой модели. Активная реализация выбирается свойством llm.provider.
+ */
+public interface LlmProvider {
+
+    /**
+     * @return Имя провайдера для логов и метрик.
+     */
+    String getName();
+
+    /**
+     * Выполняет запрос чата и возвращает полный ответ.
+     * @param request Запрос.
+     * @return Ответ с количеством токенов.
+     */
+    Mono<LlmResponse> chat(LlmRequest request);
+
+    /**
+     * Выполняет запрос чата в потоковом режиме.
+     * @param request Запрос.
+     * @return Фрагменты ответа по мере генерации.
+     */
+    Flux<String> streamChat(LlmRequest request);
+
+    /**
+     * Строит эмбеддинги для списка текстов.
+     * @param inputs Тексты.
+     * @return Векторы в том же порядке, что и тексты.
+     */
+    Mono<List<float[]>> embed(List<String> inputs);
+}
@@ -0,0 +1,29 @@
+package com.chatalyst.backend.llm;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Запрос к LLM, не зависящий от конкретного провайдера.
+ */
+@Data
+@Builder
+public class LlmRequest {
+    // Модель; если не задана, провайдер использует модель по умолчанию
+    private String model;
+    private List<LlmMessage> messages;
+    private double temperature;
+    // Ограничение длины ответа; null — без ограничения
+    private Integer maxTokens;
+    // Требовать от модели ответ в виде JSON-объекта
+    private boolean jsonMode;
+    // Функции, доступные модели; null или пустой список — без функций
+    private List<LlmTool> tools;
+    // Режим выбора функций ("auto", "none"); null — по умолчанию провайдера
+    private String toolChoice;
+    // Сколько ждать ответа; null — таймаут провайдера по умолчанию
+    private Duration responseTimeout;
+}
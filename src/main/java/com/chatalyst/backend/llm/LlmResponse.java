@@ -0,0 +1,27 @@
+package com.chatalyst.backend.llm;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Ответ LLM с учётом израсходованных токенов.
+ */
+@Data
+@AllArgsConstructor
+public class LlmResponse {
+    private String content;
+    private int promptTokens;
+    private int completionTokens;
+    // Вызовы функций, запрошенные моделью (пустой список, если модель ответила текстом)
+    private List<LlmToolCall> toolCalls;
+
+    public LlmResponse(String content, int promptTokens, int completionTokens) {
+        this(content, promptTokens, completionTokens, List.of());
+    }
+
+    public boolean hasToolCalls() {
+        return toolCalls != null && !toolCalls.isEmpty();
+    }
+}
@@ -0,0 +1,16 @@
+package com.chatalyst.backend.llm;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Функция, которую модель может вызвать вместо ответа пользователю.
+ */
+@Data
+@AllArgsConstructor
+public class LlmTool {
+    private String name;
+    private String description;
+    // JSON Schema аргументов функции
+    private String parametersSchema;
+}
@@ -0,0 +1,19 @@
+package com.chatalyst.backend.llm;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Вызов функции, запрошенный моделью.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmToolCall {
+    // ID вызова; ответ функции передаётся модели с этим ID
+    private String id;
+    private String name;
+    // Аргументы в виде JSON-строки, как их сгенерировала модель
+    private String arguments;
+}
@@ -0,0 +1,125 @@
+package com.chatalyst.backend.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Локальный детерминированный провайдер без сетевых вызовов.
+ * Нужен для нагрузочных тестов и бенчмарков: имитирует задержку модели и считает токены,
+ * чтобы весь конвейер вебхука (история, каталог, статистика токенов) работал офлайн.
+ */
+@Component
+@ConditionalOnProperty(name = "llm.provider", havingValue = "local")
+@Slf4j
+public class LocalLlmProvider implements LlmProvider {
+
+    // Грубая оценка: ~4 символа на токен
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int EMBEDDING_DIMENSIONS = 64;
+
+    // Базовая задержка ответа
+    @Value("${llm.local.base-latency-ms:300}")
+    private long baseLatencyMs;
+
+    // Дополнительная задержка на каждый сгенерированный токен
+    @Value("${llm.local.latency-per-token-ms:5}")
+    private long latencyPerTokenMs;
+
+    // Длина ответа в токенах
+    @Value("${llm.local.completion-tokens:60}")
+    private int completionTokens;
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    private final ObjectMapper objectMapper;
+
+    public LocalLlmProvider(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Mono<LlmResponse> chat(LlmRequest request) {
+        String content = generate(request);
+        if (request.isJsonMode()) {
+            ObjectNode json = objectMapper.createObjectNode();
+            json.put("reply", content);
+            json.putArray("product_ids");
+            content = json.toString();
+        }
+        int promptTokens = countPromptTokens(request);
+        int outputTokens = estimateTokens(content);
+        return Mono.just(new LlmResponse(content, promptTokens, outputTokens))
+                .delayElement(Duration.ofMillis(baseLatencyMs + latencyPerTokenMs * outputTokens));
+    }
+
+    @Override
+    public Flux<String> streamChat(LlmRequest request) {
+        List<String> words = Arrays.asList(generate(request).split(" "));
+        return Flux.fromIterable(words)
+                .index()
+                .map(indexed -> indexed.getT1() == 0 ? indexed.getT2() : " " + indexed.getT2())
+                .delayElements(Duration.ofMillis(Math.max(1, latencyPerTokenMs)))
+                .delaySubscription(Duration.ofMillis(baseLatencyMs));
+    }
+
+    @Override
+    public Mono<List<float[]>> embed(List<String> inputs) {
+        List<float[]> vectors = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            // Один и тот же текст всегда даёт один и тот же вектор
+            Random random = new Random(input.hashCode());
+            float[] vector = new float[EMBEDDING_DIMENSIONS];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = random.nextFloat() * 2 - 1;
+            }
+            vectors.add(vector);
+        }
+        return Mono.just(vectors).delayElement(Duration.ofMillis(baseLatencyMs / 4));
+    }
+
+    /**
+     * Детерминированный ответ: зависит только от последнего сообщения пользователя.
+     */
+    private String generate(LlmRequest request) {
+        String lastUserMessage = "";
+        for (LlmMessage message : request.getMessages()) {
+            if ("user".equals(message.getRole())) {
+                lastUserMessage = message.getContent();
+            }
+        }
+        StringBuilder sb = new StringBuilder("Локальный ответ на: ").append(lastUserMessage);
+        Random random = new Random(lastUserMessage.hashCode());
+        while (estimateTokens(sb.toString()) < completionTokens) {
+            sb.append(" слово").append(random.nextInt(1000));
+        }
+        return sb.toString();
+    }
+
+    private int countPromptTokens(LlmRequest request) {
+        int tokens = 0;
+        for (LlmMessage message : request.getMessages()) {
+            // +4 токена служебной разметки на сообщение, как у OpenAI
+            tokens += estimateTokens(message.getContent()) + 4;
+        }
+        return tokens;
+    }
+
+    private static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+}
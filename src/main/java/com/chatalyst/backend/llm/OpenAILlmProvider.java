@@ -0,0 +1,257 @@
+package com.chatalyst.backend.llm;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Провайдер OpenAI Chat Completions / Embeddings API.
+ */
+@Component
+@ConditionalOnProperty(name = "llm.provider", havingValue = "openai", matchIfMissing = true)
+@Slf4j
+public class OpenAILlmProvider implements LlmProvider {
+
+    private static final String STREAM_DONE = "[DONE]";
+    // Запас под служебные поля запроса сверх текста сообщений
+    private static final int BODY_OVERHEAD_BYTES = 256;
+
+    @Value("${openai.api.key}")
+    private String openaiApiKey;
+
+    @Value("${openai.model}")
+    private String openaiModel;
+
+    @Value("${openai.embedding-model:text-embedding-3-small}")
+    private String embeddingModel;
+
+    // Таймаут ответа по умолчанию; длинные запросы (импорт Excel) задают свой в LlmRequest
+    @Value("${openai.response-timeout-ms:60000}")
+    private long responseTimeoutMs;
+
+    private final WebClient openAiWebClient;
+    private final ObjectMapper objectMapper;
+
+    public OpenAILlmProvider(@Qualifier("openAiWebClient") WebClient openAiWebClient, ObjectMapper objectMapper) {
+        this.openAiWebClient = openAiWebClient;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getName() {
+        return "openai";
+    }
+
+    @Override
+    public Mono<LlmResponse> chat(LlmRequest request) {
+        return openAiWebClient.post()
+                .uri("/chat/completions")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + openaiApiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(chatBody(request, false))
+                .httpRequest(httpRequest -> applyResponseTimeout(httpRequest, request.getResponseTimeout()))
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(this::parseChatResponse);
+    }
+
+    @Override
+    public Flux<String> streamChat(LlmRequest request) {
+        return openAiWebClient.post()
+                .uri("/chat/completions")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + openaiApiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(chatBody(request, true))
+                .httpRequest(httpRequest -> applyResponseTimeout(httpRequest, request.getResponseTimeout()))
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                .map(ServerSentEvent::data)
+                .takeWhile(data -> data != null && !STREAM_DONE.equals(data))
+                .map(this::readTree)
+                .map(chunk -> chunk.path("choices").path(0).path("delta").path("content").asText(""))
+                .filter(text -> !text.isEmpty());
+    }
+
+    @Override
+    public Mono<List<float[]>> embed(List<String> inputs) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", embeddingModel);
+        ArrayNode input = body.putArray("input");
+        inputs.forEach(input::add);
+
+        return openAiWebClient.post()
+                .uri("/embeddings")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + openaiApiKey)
+                .bodyValue(body.toString())
+                .httpRequest(httpRequest -> applyResponseTimeout(httpRequest, null))
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(response -> {
+                    List<float[]> vectors = new ArrayList<>();
+                    for (JsonNode item : readTree(response).path("data")) {
+                        JsonNode embedding = item.path("embedding");
+                        float[] vector = new float[embedding.size()];
+                        for (int i = 0; i < vector.length; i++) {
+                            vector[i] = (float) embedding.get(i).asDouble();
+                        }
+                        vectors.add(vector);
+                    }
+                    return vectors;
+                });
+    }
+
+    /**
+     * Задаёт таймаут ответа для одного запроса: общий таймаут клиента ограничил бы и длинные вызовы.
+     */
+    private void applyResponseTimeout(ClientHttpRequest httpRequest, Duration timeout) {
+        HttpClientRequest nativeRequest = httpRequest.getNativeRequest();
+        nativeRequest.responseTimeout(timeout != null ? timeout : Duration.ofMillis(responseTimeoutMs));
+    }
+
+    /**
+     * Тело запроса Chat Completions, которое пишется потоковым JsonGenerator прямо в буфер исходящего запроса,
+     * минуя промежуточное дерево JSON и строку. Буфер создаётся заново при каждой подписке (повтор, хеджирование).
+     */
+    private BodyInserter<Mono<DataBuffer>, ReactiveHttpOutputMessage> chatBody(LlmRequest request, boolean stream) {
+        return (outputMessage, context) ->
+                outputMessage.writeWith(Mono.fromCallable(() -> writeChatBody(outputMessage.bufferFactory(), request, stream)));
+    }
+
+    private DataBuffer writeChatBody(DataBufferFactory bufferFactory, LlmRequest request, boolean stream) throws IOException {
+        DataBuffer buffer = bufferFactory.allocateBuffer(estimateBodySize(request));
+        try (OutputStream out = buffer.asOutputStream();
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("model", request.getModel() != null ? request.getModel() : openaiModel);
+            generator.writeArrayFieldStart("messages");
+            for (LlmMessage message : request.getMessages()) {
+                generator.writeStartObject();
+                generator.writeStringField("role", message.getRole());
+                generator.writeFieldName("content");
+                byte[] encoded = message.getEncodedContent();
+                if (encoded != null) {
+                    // Уже экранированные байты копируются в буфер как есть
+                    generator.writeRawUTF8String(encoded, 0, encoded.length);
+                } else {
+                    generator.writeString(message.getContent());
+                }
+                if (message.getToolCalls() != null && !message.getToolCalls().isEmpty()) {
+                    generator.writeArrayFieldStart("tool_calls");
+                    for (LlmToolCall toolCall : message.getToolCalls()) {
+                        generator.writeStartObject();
+                        generator.writeStringField("id", toolCall.getId());
+                        generator.writeStringField("type", "function");
+                        generator.writeObjectFieldStart("function");
+                        generator.writeStringField("name", toolCall.getName());
+                        generator.writeStringField("arguments", toolCall.getArguments());
+                        generator.writeEndObject();
+                        generator.writeEndObject();
+                    }
+                    generator.writeEndArray();
+                }
+                if (message.getToolCallId() != null) {
+                    generator.writeStringField("tool_call_id", message.getToolCallId());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            if (request.getTools() != null && !request.getTools().isEmpty()) {
+                generator.writeArrayFieldStart("tools");
+                for (LlmTool tool : request.getTools()) {
+                    generator.writeStartObject();
+                    generator.writeStringField("type", "function");
+                    generator.writeObjectFieldStart("function");
+                    generator.writeStringField("name", tool.getName());
+                    generator.writeStringField("description", tool.getDescription());
+                    generator.writeFieldName("parameters");
+                    generator.writeRawValue(tool.getParametersSchema());
+                    generator.writeEndObject();
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                if (request.getToolChoice() != null) {
+                    generator.writeStringField("tool_choice", request.getToolChoice());
+                }
+            }
+            generator.writeNumberField("temperature", request.getTemperature());
+            if (request.getMaxTokens() != null) {
+                generator.writeNumberField("max_tokens", request.getMaxTokens());
+            }
+            if (request.isJsonMode()) {
+                generator.writeObjectFieldStart("response_format");
+                generator.writeStringField("type", "json_object");
+                generator.writeEndObject();
+            }
+            if (stream) {
+                generator.writeBooleanField("stream", true);
+            }
+            generator.writeEndObject();
+        } catch (IOException | RuntimeException e) {
+            DataBufferUtils.release(buffer);
+            throw e;
+        }
+        return buffer;
+    }
+
+    private static int estimateBodySize(LlmRequest request) {
+        int size = BODY_OVERHEAD_BYTES;
+        for (LlmMessage message : request.getMessages()) {
+            // Кириллица в UTF-8 занимает два байта на символ
+            size += message.getEncodedContent() != null
+                    ? message.getEncodedContent().length
+                    : message.getContent() != null ? message.getContent().length() * 2 : 0;
+            size += BODY_OVERHEAD_BYTES / 8;
+        }
+        return size;
+    }
+
+    private LlmResponse parseChatResponse(String responseString) {
+        JsonNode rootNode = readTree(responseString);
+        JsonNode message = rootNode.path("choices").get(0).path("message");
+        // При вызове функций content приходит как null
+        String content = message.path("content").isTextual() ? message.path("content").asText() : null;
+        List<LlmToolCall> toolCalls = new ArrayList<>();
+        for (JsonNode toolCall : message.path("tool_calls")) {
+            JsonNode function = toolCall.path("function");
+            toolCalls.add(new LlmToolCall(toolCall.path("id").asText(), function.path("name").asText(),
+                    function.path("arguments").asText("{}")));
+        }
+        JsonNode usage = rootNode.path("usage");
+        return new LlmResponse(content, usage.path("prompt_tokens").asInt(), usage.path("completion_tokens").asInt(), toolCalls);
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new RuntimeException("Не удалось разобрать ответ OpenAI: " + e.getMessage(), e);
+        }
+    }
+}
@@ -9,7 +9,7 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
 @Entity
-@Table(name = "bots")
+@Table(name = "bots", indexes = @Index(name = "idx_bots_owner_id", columnList = "owner_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
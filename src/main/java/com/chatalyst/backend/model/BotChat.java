@@ -0,0 +1,37 @@
+package com.chatalyst.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Чат, в котором боту писали хотя бы раз. По вставке новой строки определяется, что диалог новый.
+ */
+@Entity
+@Table(name = "bot_chat")
+@IdClass(BotChat.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BotChat {
+
+    @Id
+    private Long botId;
+
+    @Id
+    private Long chatId;
+
+    private LocalDateTime firstMessageAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long botId;
+        private Long chatId;
+    }
+}
@@ -0,0 +1,36 @@
+package com.chatalyst.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Счётчики бота для панели статистики.
+ * Обновляются пачками вместе с записью сообщений и периодически сверяются с chat_message.
+ */
+@Entity
+@Table(name = "bot_stats")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BotStatistics {
+
+    @Id
+    private Long botId;
+
+    // Все сообщения бота, включая перенесённые в холодный архив
+    private long totalMessages;
+
+    // Чаты, в которых было хотя бы одно сообщение
+    private long totalDialogues;
+
+    // Сколько сообщений перенесено в холодный архив (их уже нет в chat_message)
+    private long archivedMessages;
+
+    private LocalDateTime updatedAt;
+}
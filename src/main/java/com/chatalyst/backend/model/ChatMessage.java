@@ -4,10 +4,16 @@ package com.chatalyst.backend.model;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDateTime;
+
 /**
  * Модель для хранения сообщений чата в базе данных.
  */
 @Entity
+@Table(name = "chat_message", indexes = {
+        // История чата всегда читается по боту и чату в порядке ID
+        @Index(name = "idx_chat_message_bot_id_chat_id", columnList = "bot_id, chat_id, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -15,11 +21,15 @@ import lombok.*;
 public class ChatMessage {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Пул из 50 ID на одно обращение к последовательности; с IDENTITY Hibernate не может группировать INSERT в пачки
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chat_message_seq")
+    @SequenceGenerator(name = "chat_message_seq", sequenceName = "chat_message_seq", allocationSize = 50)
     private Long id;
 
-    // Роль отправителя: "user" или "assistant"
-    private String role;
+    // Роль отправителя; хранится кодом smallint
+    @Convert(converter = ChatRoleConverter.class)
+    @Column(name = "role_code")
+    private ChatRole role;
 
     // Содержимое сообщения. Используем TEXT для больших сообщений.
     @Column(columnDefinition = "TEXT")
@@ -28,6 +38,18 @@ public class ChatMessage {
     // Идентификатор чата Telegram.
     private Long chatId;
 
-    // Идентификатор бота, которому принадлежит сообщение.
-    private String botIdentifier;
+    // ID бота, которому принадлежит сообщение (внешний ключ на bots с ON DELETE CASCADE).
+    @Column(name = "bot_id")
+    private Long botId;
+
+    // Время создания; ключ помесячного партиционирования таблицы
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    void prePersist() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.chatalyst.backend.model;
+
+import lombok.Getter;
+
+/**
+ * Роль автора сообщения чата. В БД хранится числовым кодом (smallint) вместо строки.
+ */
+@Getter
+public enum ChatRole {
+    USER((short) 1, "user"),
+    ASSISTANT((short) 2, "assistant"),
+    SYSTEM((short) 3, "system");
+
+    // Код в БД; менять существующие коды нельзя
+    private final short code;
+    // Название роли в API модели
+    private final String value;
+
+    ChatRole(short code, String value) {
+        this.code = code;
+        this.value = value;
+    }
+
+    public static ChatRole fromCode(short code) {
+        for (ChatRole role : values()) {
+            if (role.code == code) {
+                return role;
+            }
+        }
+        throw new RuntimeException("Неизвестный код роли сообщения: " + code);
+    }
+
+    public static ChatRole fromValue(String value) {
+        for (ChatRole role : values()) {
+            if (role.value.equals(value)) {
+                return role;
+            }
+        }
+        throw new RuntimeException("Неизвестная роль сообщения: " + value);
+    }
+}
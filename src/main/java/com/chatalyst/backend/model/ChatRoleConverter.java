@@ -0,0 +1,21 @@
+package com.chatalyst.backend.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Хранит {@link ChatRole} в колонке smallint.
+ */
+@Converter
+public class ChatRoleConverter implements AttributeConverter<ChatRole, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(ChatRole role) {
+        return role != null ? role.getCode() : null;
+    }
+
+    @Override
+    public ChatRole convertToEntityAttribute(Short code) {
+        return code != null ? ChatRole.fromCode(code) : null;
+    }
+}
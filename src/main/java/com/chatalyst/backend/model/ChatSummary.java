@@ -0,0 +1,43 @@
+// src/main/java/com/chatalyst/backend/model/ChatSummary.java
+package com.chatalyst.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Сжатое содержание старой части диалога.
+ * Хранится по одной записи на пару (бот, чат) и дополняется фоновой задачей.
+ */
+@Entity
+@Table(name = "chat_summaries",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"bot_identifier", "chat_id"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Идентификатор бота, которому принадлежит диалог.
+    private String botIdentifier;
+
+    // Идентификатор чата Telegram.
+    private Long chatId;
+
+    // Текст сводки. Используем TEXT, так как сводка может быть длинной.
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    // ID последнего сообщения, уже вошедшего в сводку.
+    private Long lastMessageId;
+
+    private LocalDateTime updatedAt;
+}
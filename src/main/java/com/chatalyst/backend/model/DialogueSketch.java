@@ -0,0 +1,48 @@
+package com.chatalyst.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Оценка HyperLogLog числа различных чатов бота за день, накопленная одним экземпляром приложения.
+ * Каждый экземпляр пишет только свою строку; при чтении строки всех экземпляров объединяются.
+ */
+@Entity
+@Table(name = "dialogue_sketch")
+@IdClass(DialogueSketch.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DialogueSketch {
+
+    @Id
+    private Long botId;
+
+    @Id
+    private LocalDate day;
+
+    @Id
+    @Column(length = 64)
+    private String nodeId;
+
+    // Сериализованная оценка (см. HyperLogLog.toBytes)
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] registers;
+
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long botId;
+        private LocalDate day;
+        private String nodeId;
+    }
+}
@@ -8,6 +8,12 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
+// Имя, которое Spring Boot выводит из OpenAITokenUsage; задано явно, потому что на него ссылаются native-запросы
+@Table(name = "openaitoken_usage", indexes = {
+        @Index(name = "idx_open_aitoken_usage_bot_id_timestamp", columnList = "bot_id, timestamp"),
+        // Для фоновой свёртки в token_usage_rollup по интервалам времени
+        @Index(name = "idx_open_aitoken_usage_timestamp", columnList = "timestamp")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,10 +21,13 @@ import java.time.LocalDateTime;
 public class OpenAITokenUsage {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "open_aitoken_usage_seq")
+    @SequenceGenerator(name = "open_aitoken_usage_seq", sequenceName = "open_aitoken_usage_seq", allocationSize = 50)
     private Long id;
 
-    private String botIdentifier;
+    // ID бота (внешний ключ на bots с ON DELETE CASCADE)
+    @Column(name = "bot_id")
+    private Long botId;
     private Long chatId;
     
     private Integer promptTokens;
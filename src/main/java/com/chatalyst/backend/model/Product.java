@@ -9,14 +9,17 @@ import lombok.AllArgsConstructor;
 import java.math.BigDecimal; // Для точного хранения цен
 
 @Entity
-@Table(name = "products")
+// Товары читаются по боту: каталог, подсчёт товаров на панели владельца
+@Table(name = "products", indexes = @Index(name = "idx_products_bot_id", columnList = "bot_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Последовательность вместо IDENTITY, чтобы импорт товаров сохранялся пачками
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
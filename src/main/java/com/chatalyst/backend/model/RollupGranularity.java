@@ -0,0 +1,38 @@
+package com.chatalyst.backend.model;
+
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Размер корзины предагрегированной статистики.
+ */
+public enum RollupGranularity {
+    MINUTE("minute", ChronoUnit.MINUTES),
+    HOUR("hour", ChronoUnit.HOURS),
+    DAY("day", ChronoUnit.DAYS);
+
+    // Единица для date_trunc в PostgreSQL
+    private final String truncUnit;
+    private final ChronoUnit unit;
+
+    RollupGranularity(String truncUnit, ChronoUnit unit) {
+        this.truncUnit = truncUnit;
+        this.unit = unit;
+    }
+
+    public String getTruncUnit() {
+        return truncUnit;
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    public static RollupGranularity of(String value) {
+        for (RollupGranularity granularity : values()) {
+            if (granularity.truncUnit.equalsIgnoreCase(value.trim())) {
+                return granularity;
+            }
+        }
+        throw new RuntimeException("Неизвестный размер корзины: " + value + ". Допустимые значения: minute, hour, day");
+    }
+}
@@ -0,0 +1,28 @@
+package com.chatalyst.backend.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * До какого момента исходные данные уже свёрнуты в предагрегированную таблицу.
+ */
+@Entity
+@Table(name = "rollup_watermark")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupWatermark {
+
+    // Имя предагрегированной таблицы
+    @Id
+    private String name;
+
+    // Данные с меньшим временем уже свёрнуты; всегда начало часа
+    private LocalDateTime processedUntil;
+}
@@ -0,0 +1,48 @@
+package com.chatalyst.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Расход бота или отдельного чата за сутки для проверки дневных лимитов.
+ * Строка с chatId = 0 — расход бота целиком. Суммы пополняются всеми экземплярами приложения.
+ */
+@Entity
+@Table(name = "spend_quota_usage")
+@IdClass(SpendQuotaUsage.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpendQuotaUsage {
+
+    @Id
+    private Long botId;
+
+    @Id
+    private Long chatId;
+
+    @Id
+    private LocalDate day;
+
+    private long tokens;
+
+    // Стоимость в миллионных долях тенге: целые числа складываются без потери точности
+    private long kztMicros;
+
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long botId;
+        private Long chatId;
+        private LocalDate day;
+    }
+}
@@ -0,0 +1,52 @@
+package com.chatalyst.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Расход токенов бота за минуту, час или сутки. Пересчитывается фоновой задачей из openaitoken_usage,
+ * чтобы статистика за любой период читалась из нескольких строк, а не из всей истории вызовов.
+ */
+@Entity
+@Table(name = "token_usage_rollup", indexes = {
+        @Index(name = "idx_token_usage_rollup_bot_granularity_bucket", columnList = "bot_id, granularity, bucket_start")
+})
+@IdClass(TokenUsageRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenUsageRollup {
+
+    @Id
+    private Long botId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private RollupGranularity granularity;
+
+    // Начало минуты, часа или суток
+    @Id
+    private LocalDateTime bucketStart;
+
+    private long requests;
+    private long promptTokens;
+    private long completionTokens;
+    private long totalTokens;
+    private double usdCost;
+    private double kztCost;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long botId;
+        private RollupGranularity granularity;
+        private LocalDateTime bucketStart;
+    }
+}
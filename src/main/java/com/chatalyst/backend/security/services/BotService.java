@@ -2,7 +2,7 @@ package com.chatalyst.backend.security.services;
 
 import com.chatalyst.backend.Entity.User;
 import com.chatalyst.backend.Repository.BotRepository;
-import com.chatalyst.backend.Repository.ChatMessageRepository;
+import com.chatalyst.backend.Repository.ChatSummaryRepository;
 import com.chatalyst.backend.Repository.UserRepository;
 import com.chatalyst.backend.dto.UpdateBotRequest;
 import com.chatalyst.backend.dto.BotStats;
@@ -36,11 +36,15 @@ import com.chatalyst.backend.dto.ProductResponse;
 public class BotService {
 
     private final BotRepository botRepository;
+    private final ChatSummaryRepository chatSummaryRepository;
     private final UserRepository userRepository;
     private final ObjectMapper objectMapper;
     @Qualifier("telegramWebClient")
     private final WebClient telegramWebClient;
-    private final ChatMessageRepository chatMessageRepository;
+    private final BotStatsService botStatsService;
+    private final DialogueSketchService dialogueSketchService;
+    private final TokenUsageRollupService tokenUsageRollupService;
+    private final SpendQuotaService spendQuotaService;
     private final ProductService productService;
     private final PsObjectStorageService psObjectStorageService;
 
@@ -233,6 +237,22 @@ public class BotService {
         return botRepository.findById(botId);
     }
 
+    /**
+     * Получает бота по ID с проверкой, что он принадлежит пользователю.
+     * @param botId ID бота.
+     * @param userId ID пользователя.
+     * @return Объект Bot.
+     * @throws RuntimeException если бот не найден или пользователь не является владельцем.
+     */
+    public Bot getOwnedBot(Long botId, Long userId) {
+        Bot bot = botRepository.findById(botId)
+                .orElseThrow(() -> new RuntimeException("Бот не найден с ID: " + botId));
+        if (!bot.getOwner().getId().equals(userId)) {
+            throw new RuntimeException("У вас нет прав для доступа к этому боту.");
+        }
+        return bot;
+    }
+
     /**
      * Удаляет бота.
      * @param botId ID бота.
@@ -263,6 +283,13 @@ public class BotService {
         deleteTelegramWebhook(bot.getAccessToken());
 
         botRepository.delete(bot);
+        // Сводки диалогов связаны с ботом только по bot_identifier; иначе их унаследовал бы новый бот с тем же идентификатором
+        long summaries = chatSummaryRepository.deleteByBotIdentifier(bot.getBotIdentifier());
+        log.info("Удалено {} сводок диалогов бота ID {}", summaries, botId);
+        botStatsService.delete(botId);
+        dialogueSketchService.delete(botId);
+        tokenUsageRollupService.delete(botId);
+        spendQuotaService.delete(botId);
         log.info("Бот с ID {} успешно удален.", botId);
     }
 
@@ -302,15 +329,8 @@ public class BotService {
         throw new RuntimeException("У вас нет прав для доступа к статистике этого бота.");
     }
     
-    // 3. Получаем botIdentifier из найденного бота
-    String botIdentifier = bot.getBotIdentifier();
-
-    // 4. Получаем статистику, используя методы репозитория
-    long totalMessages = chatMessageRepository.countByBotIdentifier(botIdentifier);
-    long totalDialogues = chatMessageRepository.countDistinctChatIdsByBotIdentifier(botIdentifier);
-
-    // 5. Возвращаем DTO со статистикой
-    return new BotStats(totalMessages, totalDialogues);
+    // 3. Читаем счётчики из bot_stats: одна строка по ключу вместо подсчёта по chat_message
+    return botStatsService.getStats(botId);
 }
 
     public void updateShopName(Long botId, Long userId, String shopName) {
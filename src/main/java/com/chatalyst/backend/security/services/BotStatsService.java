@@ -0,0 +1,213 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.BotStatisticsRepository;
+import com.chatalyst.backend.dto.BotDashboardItem;
+import com.chatalyst.backend.dto.BotStats;
+import com.chatalyst.backend.model.BotStatistics;
+import com.chatalyst.backend.model.ChatMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Счётчики сообщений и диалогов ботов в таблице bot_stats.
+ * Увеличиваются в той же транзакции, что и пакетная запись сообщений, поэтому чтение статистики —
+ * это одна строка по первичному ключу независимо от объёма истории.
+ * Раз в сутки счётчики сверяются с chat_message.
+ */
+@Service
+@Slf4j
+public class BotStatsService {
+
+    // Число действительно новых чатов по ботам. Считается по RETURNING: при reWriteBatchedInserts
+    // драйвер возвращает для пакетных команд SUCCESS_NO_INFO вместо числа вставленных строк
+    private static final String INSERT_CHATS =
+            "WITH inserted AS (INSERT INTO bot_chat (bot_id, chat_id, first_message_at) " +
+                    "SELECT * FROM unnest(?::bigint[], ?::bigint[], ?::timestamp[]) ON CONFLICT DO NOTHING RETURNING bot_id) " +
+                    "SELECT bot_id, COUNT(*) FROM inserted GROUP BY bot_id";
+    private static final String INCREMENT =
+            "INSERT INTO bot_stats (bot_id, total_messages, total_dialogues, archived_messages, updated_at) VALUES (?, ?, ?, 0, now()) " +
+                    "ON CONFLICT (bot_id) DO UPDATE SET total_messages = bot_stats.total_messages + EXCLUDED.total_messages, " +
+                    "total_dialogues = bot_stats.total_dialogues + EXCLUDED.total_dialogues, updated_at = now()";
+
+    // Все боты владельца со счётчиками, числом товаров и расходом токенов за один запрос.
+    // Расход: посуточные свёртки до границы свёртки и исходные записи после неё (не больше нескольких часов)
+    private static final String DASHBOARD =
+            "WITH w AS (SELECT COALESCE((SELECT processed_until FROM rollup_watermark WHERE name = ?), '-infinity'::timestamp) AS until) " +
+                    "SELECT b.id, b.bot_identifier, b.name, b.shop_name, b.platform, s.bot_id IS NOT NULL AS has_stats, " +
+                    "COALESCE(s.total_messages, 0), COALESCE(s.total_dialogues, 0), p.products, " +
+                    "u.requests, u.tokens, u.usd_cost, u.kzt_cost " +
+                    "FROM bots b CROSS JOIN w " +
+                    "LEFT JOIN bot_stats s ON s.bot_id = b.id " +
+                    "LEFT JOIN LATERAL (SELECT COUNT(*) AS products FROM products WHERE bot_id = b.id) p ON true " +
+                    "LEFT JOIN LATERAL (SELECT COALESCE(SUM(requests), 0) AS requests, COALESCE(SUM(tokens), 0) AS tokens, " +
+                    "COALESCE(SUM(usd_cost), 0) AS usd_cost, COALESCE(SUM(kzt_cost), 0) AS kzt_cost FROM (" +
+                    "SELECT requests, total_tokens AS tokens, usd_cost, kzt_cost FROM token_usage_rollup " +
+                    "WHERE bot_id = b.id AND granularity = 'DAY' AND bucket_start < w.until " +
+                    "UNION ALL SELECT 1, COALESCE(total_tokens, 0), COALESCE(usd_cost, 0), COALESCE(kzt_cost, 0) " +
+                    "FROM openaitoken_usage WHERE bot_id = b.id AND \"timestamp\" >= w.until) parts) u ON true " +
+                    "WHERE b.owner_id = ? ORDER BY b.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BotStatisticsRepository botStatisticsRepository;
+
+    public BotStatsService(JdbcTemplate jdbcTemplate,
+                           BotStatisticsRepository botStatisticsRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.botStatisticsRepository = botStatisticsRepository;
+    }
+
+    /**
+     * Возвращает статистику бота. Если счётчиков ещё нет, они один раз считаются по chat_message.
+     * @param botId ID бота.
+     * @return Количество сообщений и диалогов.
+     */
+    public BotStats getStats(Long botId) {
+        BotStatistics stats = botStatisticsRepository.findById(botId).orElseGet(() -> {
+            reconcile(botId);
+            return botStatisticsRepository.findById(botId).orElse(null);
+        });
+        return stats != null ? new BotStats(stats.getTotalMessages(), stats.getTotalDialogues()) : new BotStats(0, 0);
+    }
+
+    /**
+     * Возвращает всех ботов владельца со статистикой одним запросом вместо запроса на каждого бота.
+     * @param ownerId ID владельца.
+     * @return Боты в порядке создания со счётчиками сообщений и диалогов, числом товаров и расходом токенов.
+     */
+    public List<BotDashboardItem> getDashboard(Long ownerId) {
+        List<BotDashboardItem> items = new ArrayList<>();
+        List<Long> withoutStats = new ArrayList<>();
+        jdbcTemplate.query(DASHBOARD, rs -> {
+            BotDashboardItem item = new BotDashboardItem(rs.getLong(1), rs.getString(2), rs.getString(3),
+                    rs.getString(4), rs.getString(5), rs.getLong(7), rs.getLong(8), rs.getLong(9),
+                    rs.getLong(10), rs.getLong(11), rs.getDouble(12), rs.getDouble(13));
+            if (!rs.getBoolean(6)) {
+                withoutStats.add(item.getBotId());
+            }
+            items.add(item);
+        }, TokenUsageRollupService.WATERMARK, ownerId);
+
+        // Счётчиков нет только у ботов, созданных до их появления: они считаются один раз
+        if (!withoutStats.isEmpty()) {
+            for (BotDashboardItem item : items) {
+                if (withoutStats.contains(item.getBotId())) {
+                    BotStats stats = getStats(item.getBotId());
+                    item.setTotalMessages(stats.getTotalMessages());
+                    item.setTotalDialogues(stats.getTotalDialogues());
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Учитывает пачку только что сохранённых сообщений. Вызывается внутри транзакции записи сообщений.
+     * @param messages Сохранённые сообщения.
+     */
+    public void recordMessages(List<ChatMessage> messages) {
+        // Сортировка по боту и чату: все транзакции блокируют строки в одном порядке
+        Map<Long, Map<Long, LocalDateTime>> chatsByBot = new TreeMap<>();
+        Map<Long, Long> messagesByBot = new TreeMap<>();
+        for (ChatMessage message : messages) {
+            chatsByBot.computeIfAbsent(message.getBotId(), k -> new TreeMap<>())
+                    .putIfAbsent(message.getChatId(), message.getCreatedAt());
+            messagesByBot.merge(message.getBotId(), 1L, Long::sum);
+        }
+
+        List<Long> botIds = new ArrayList<>();
+        List<Long> chatIds = new ArrayList<>();
+        List<Timestamp> firstMessages = new ArrayList<>();
+        chatsByBot.forEach((botId, chats) -> chats.forEach((chatId, createdAt) -> {
+            botIds.add(botId);
+            chatIds.add(chatId);
+            firstMessages.add(createdAt != null ? Timestamp.valueOf(createdAt) : null);
+        }));
+        Map<Long, Long> newChatsByBot = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_CHATS);
+            statement.setArray(1, connection.createArrayOf("bigint", botIds.toArray()));
+            statement.setArray(2, connection.createArrayOf("bigint", chatIds.toArray()));
+            statement.setArray(3, connection.createArrayOf("timestamp", firstMessages.toArray()));
+            return statement;
+        }, (RowCallbackHandler) rs -> newChatsByBot.put(rs.getLong(1), rs.getLong(2)));
+
+        List<Object[]> increments = new ArrayList<>();
+        messagesByBot.forEach((botId, count) -> increments.add(new Object[]{botId, count, newChatsByBot.getOrDefault(botId, 0L)}));
+        jdbcTemplate.batchUpdate(INCREMENT, increments);
+    }
+
+    /**
+     * Учитывает сообщения, перенесённые в холодный архив или отсоединённые вместе с партицией: они остаются в статистике.
+     * @param botId ID бота.
+     * @param count Сколько сообщений перенесено.
+     */
+    public void recordArchived(Long botId, long count) {
+        jdbcTemplate.update("INSERT INTO bot_stats (bot_id, total_messages, total_dialogues, archived_messages, updated_at) " +
+                "VALUES (?, 0, 0, ?, now()) ON CONFLICT (bot_id) DO UPDATE SET " +
+                "archived_messages = bot_stats.archived_messages + EXCLUDED.archived_messages, updated_at = now()", botId, count);
+    }
+
+    /**
+     * Сверяет счётчики всех ботов с фактическими данными.
+     */
+    @Scheduled(cron = "${bot.stats.reconcile-cron:0 15 4 * * *}")
+    public void reconcileAll() {
+        for (Long botId : jdbcTemplate.queryForList("SELECT id FROM bots", Long.class)) {
+            try {
+                reconcile(botId);
+            } catch (Exception e) {
+                log.error("Ошибка сверки статистики бота {}: {}", botId, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Пересчитывает счётчики бота.
+     * Сначала в bot_chat дописываются пропущенные чаты, затем счётчики и фактические данные читаются
+     * одним запросом без блокировок, то есть из одного снимка. Запись сообщений меняет данные и счётчики
+     * в одной транзакции, поэтому расхождение в снимке — это именно ошибка счётчика; она применяется приращением
+     * и не затирает то, что записано после снимка.
+     * @param botId ID бота.
+     */
+    public void reconcile(Long botId) {
+        jdbcTemplate.update("INSERT INTO bot_chat (bot_id, chat_id, first_message_at) " +
+                "SELECT bot_id, chat_id, MIN(created_at) FROM chat_message WHERE bot_id = ? GROUP BY bot_id, chat_id " +
+                "ON CONFLICT DO NOTHING", botId);
+        jdbcTemplate.update("INSERT INTO bot_stats (bot_id, total_messages, total_dialogues, archived_messages, updated_at) " +
+                "VALUES (?, 0, 0, 0, now()) ON CONFLICT DO NOTHING", botId);
+
+        long[] drift = jdbcTemplate.queryForObject(
+                "SELECT (SELECT COUNT(*) FROM chat_message WHERE bot_id = s.bot_id) + s.archived_messages - s.total_messages, " +
+                        "(SELECT COUNT(*) FROM bot_chat WHERE bot_id = s.bot_id) - s.total_dialogues " +
+                        "FROM bot_stats s WHERE s.bot_id = ?",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, botId);
+        if (drift == null || (drift[0] == 0 && drift[1] == 0)) {
+            return;
+        }
+        jdbcTemplate.update("UPDATE bot_stats SET total_messages = total_messages + ?, total_dialogues = total_dialogues + ?, " +
+                "updated_at = now() WHERE bot_id = ?", drift[0], drift[1], botId);
+        log.info("Статистика бота {} исправлена при сверке: сообщений {}{}, диалогов {}{}",
+                botId, drift[0] > 0 ? "+" : "", drift[0], drift[1] > 0 ? "+" : "", drift[1]);
+    }
+
+    /**
+     * Удаляет счётчики бота.
+     * @param botId ID бота.
+     */
+    public void delete(Long botId) {
+        jdbcTemplate.update("DELETE FROM bot_chat WHERE bot_id = ?", botId);
+        jdbcTemplate.update("DELETE FROM bot_stats WHERE bot_id = ?", botId);
+    }
+}
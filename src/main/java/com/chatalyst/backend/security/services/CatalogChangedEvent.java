@@ -0,0 +1,13 @@
+package com.chatalyst.backend.security.services;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Событие об изменении товаров бота. Публикуется ProductService после create/update/delete.
+ */
+@Getter
+@RequiredArgsConstructor
+public class CatalogChangedEvent {
+    private final Long botId;
+}
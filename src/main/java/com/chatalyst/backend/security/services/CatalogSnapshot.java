@@ -0,0 +1,215 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.model.Product;
+import com.chatalyst.backend.util.AhoCorasick;
+import com.chatalyst.backend.util.TextNormalizer;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Неизменяемый снимок каталога бота.
+ * Товары упорядочены детерминированно (каталог, подкаталог, название, ID),
+ * поэтому текст каталога для промпта побайтно совпадает между вызовами одной версии.
+ * Группировки для команд /catalog и /subcategory считаются при сборке, поэтому обработка сообщения
+ * не обращается к таблице товаров.
+ */
+@Getter
+public class CatalogSnapshot {
+
+    private static final Comparator<Item> ITEM_ORDER = Comparator
+            .comparing(Item::getCatalog)
+            .thenComparing(Item::getSubcategory)
+            .thenComparing(Item::getName)
+            .thenComparing(Item::getId);
+
+    private final Long botId;
+    private final long version;
+    private final List<Item> items;
+    private final Map<Long, Item> itemsById;
+    // Непустые названия каталогов в алфавитном порядке
+    private final List<String> catalogs;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, List<String>> subcategoriesByCatalog;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, List<Item>> itemsBySubcategory;
+    // Сколько товаров с изображением: без них ответ AI не нужно разбирать на упоминания
+    private final int imageCount;
+    // Текст каталога для системного промпта, рендерится один раз на версию
+    private final String promptText;
+    // Автомат для поиска упоминаний товаров в тексте; строится один раз на версию
+    @Getter(AccessLevel.NONE)
+    private final AhoCorasick<Item> nameMatcher;
+    private final boolean stemming;
+
+    CatalogSnapshot(Long botId, long version, List<Product> products, boolean stemming) {
+        this.botId = botId;
+        this.version = version;
+        this.items = Collections.unmodifiableList(products.stream()
+                .map(Item::new)
+                .sorted(ITEM_ORDER)
+                .collect(Collectors.toList()));
+        Map<Long, Item> byId = new HashMap<>();
+        this.items.forEach(item -> byId.put(item.getId(), item));
+        this.itemsById = Collections.unmodifiableMap(byId);
+
+        // TreeMap гарантирует стабильный порядок групп, в отличие от groupingBy с HashMap
+        Map<String, Map<String, List<Item>>> grouped = new TreeMap<>();
+        for (Item item : this.items) {
+            grouped.computeIfAbsent(item.getCatalog(), k -> new TreeMap<>())
+                    .computeIfAbsent(item.getSubcategory(), k -> new ArrayList<>())
+                    .add(item);
+        }
+        this.catalogs = grouped.keySet().stream()
+                .filter(c -> !c.isBlank())
+                .collect(Collectors.toUnmodifiableList());
+        Map<String, List<String>> subcategories = new HashMap<>();
+        Map<String, List<Item>> bySubcategory = new HashMap<>();
+        grouped.forEach((catalog, groups) -> {
+            subcategories.put(catalog, groups.keySet().stream()
+                    .filter(sub -> !sub.isBlank())
+                    .collect(Collectors.toUnmodifiableList()));
+            groups.forEach((subcategory, groupItems) -> {
+                if (!subcategory.isBlank()) {
+                    bySubcategory.computeIfAbsent(subcategory, k -> new ArrayList<>()).addAll(groupItems);
+                }
+            });
+        });
+        this.subcategoriesByCatalog = Collections.unmodifiableMap(subcategories);
+        bySubcategory.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        this.itemsBySubcategory = Collections.unmodifiableMap(bySubcategory);
+        this.imageCount = (int) this.items.stream().filter(Item::hasImage).count();
+        this.promptText = render(grouped);
+        this.stemming = stemming;
+        this.nameMatcher = buildNameMatcher(this.items, stemming);
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Возвращает товар по ID.
+     * @param id ID товара.
+     * @return Товар или null, если его нет в этой версии каталога.
+     */
+    public Item getItem(Long id) {
+        return itemsById.get(id);
+    }
+
+    /**
+     * Возвращает непустые подкаталоги каталога в алфавитном порядке.
+     * @param catalog Название каталога.
+     * @return Подкаталоги или пустой список, если такого каталога нет.
+     */
+    public List<String> getSubcategories(String catalog) {
+        return subcategoriesByCatalog.getOrDefault(catalog, List.of());
+    }
+
+    /**
+     * Возвращает товары подкаталога из всех каталогов.
+     * @param subcategory Название подкаталога.
+     * @return Товары или пустой список.
+     */
+    public List<Item> getSubcategoryItems(String subcategory) {
+        return itemsBySubcategory.getOrDefault(subcategory, List.of());
+    }
+
+    public boolean hasImages() {
+        return imageCount > 0;
+    }
+
+    /**
+     * Находит товары, названия которых упоминаются в тексте, за один проход по тексту.
+     * Названия сравниваются целыми словами без учёта регистра и «ё»/«е», при включённом стемминге — по основам слов.
+     * @param text Произвольный текст (например, ответ AI).
+     * @return Упомянутые товары без повторов.
+     */
+    public List<Item> findMentions(String text) {
+        return nameMatcher.findAll(" " + matchForm(text, stemming) + " ");
+    }
+
+    private static AhoCorasick<Item> buildNameMatcher(List<Item> items, boolean stemming) {
+        Map<String, List<Item>> patterns = new HashMap<>();
+        for (Item item : items) {
+            String name = matchForm(item.getName(), stemming);
+            if (!name.isEmpty()) {
+                // Пробелы по краям: совпадение только по границам слов
+                patterns.computeIfAbsent(" " + name + " ", k -> new ArrayList<>()).add(item);
+            }
+        }
+        return new AhoCorasick<>(patterns);
+    }
+
+    private static String matchForm(String text, boolean stemming) {
+        return stemming ? TextNormalizer.normalizeStemmed(text) : TextNormalizer.normalize(text);
+    }
+
+    private static String render(Map<String, Map<String, List<Item>>> grouped) {
+        StringBuilder sb = new StringBuilder();
+        grouped.forEach((catalog, subcategories) -> {
+            if (sb.length() > 0) {
+                sb.append("\n\n");
+            }
+            sb.append("Каталог: ").append(catalog);
+            subcategories.forEach((subcategory, products) -> {
+                sb.append("\n  Подкаталог: ").append(subcategory);
+                for (Item p : products) {
+                    sb.append("\n- [ID ").append(p.getId()).append("] ").append(p.getName())
+                            .append(" (").append(p.getPrice()).append(" тг.): ")
+                            .append(p.getDescription());
+                    if (p.hasImage()) {
+                        sb.append(" [ИЗОБРАЖЕНИЕ: ").append(p.getImageUrl()).append("]");
+                    }
+                }
+            });
+        });
+        return sb.toString();
+    }
+
+    /**
+     * Неизменяемая копия товара, не связанная с сессией Hibernate.
+     */
+    @Getter
+    public static class Item {
+        private final Long id;
+        private final String name;
+        private final BigDecimal price;
+        private final String description;
+        private final String catalog;
+        private final String subcategory;
+        private final String imageUrl;
+        private final boolean inStock;
+        // Нормализованное название для поиска упоминаний в тексте
+        private final String normalizedName;
+        // Основы слов названия, раздела и описания для поиска по запросу
+        private final String searchText;
+
+        Item(Product product) {
+            this.id = product.getId();
+            this.name = product.getName();
+            this.price = product.getPrice();
+            this.description = product.getDescription() != null ? product.getDescription() : "";
+            this.catalog = product.getCatalog() != null ? product.getCatalog() : "";
+            this.subcategory = product.getSubcategory() != null ? product.getSubcategory() : "";
+            this.imageUrl = product.getImageUrl();
+            this.inStock = product.isInStock();
+            this.normalizedName = TextNormalizer.normalize(product.getName());
+            this.searchText = TextNormalizer.normalizeStemmed(
+                    this.name + " " + this.catalog + " " + this.subcategory + " " + this.description);
+        }
+
+        public boolean hasImage() {
+            return imageUrl != null && !imageUrl.isEmpty();
+        }
+    }
+}
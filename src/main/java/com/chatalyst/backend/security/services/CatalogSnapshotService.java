@@ -0,0 +1,128 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.ProductRepository;
+import com.chatalyst.backend.model.Bot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранит версионированные снимки каталогов ботов.
+ * Снимок строится один раз и переиспользуется до изменения товаров бота. После изменения версия
+ * увеличивается, новый снимок собирается в фоне и подменяет старый целиком; до этого сообщения
+ * обслуживаются предыдущей версией, поэтому таблица товаров читается только при первом обращении к боту.
+ */
+@Service
+@Slf4j
+public class CatalogSnapshotService {
+
+    // Сравнивать названия товаров по основам слов при поиске упоминаний
+    @Value("${catalog.matcher.stemming:true}")
+    private boolean stemming;
+
+    private final ProductRepository productRepository;
+    private final Executor executor;
+
+    private final Map<Long, CatalogSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+    // Боты, для которых пересборка снимка стоит в очереди или выполняется
+    private final Set<Long> pendingRebuilds = ConcurrentHashMap.newKeySet();
+
+    public CatalogSnapshotService(ProductRepository productRepository,
+                                  @Qualifier("chatTaskExecutor") Executor executor) {
+        this.productRepository = productRepository;
+        this.executor = executor;
+    }
+
+    /**
+     * Возвращает снимок каталога бота, собирая его при первом обращении.
+     * Если снимок устарел, ставит его пересборку в очередь и до её завершения возвращает предыдущую версию.
+     * @param bot Объект бота.
+     * @return Неизменяемый снимок каталога.
+     */
+    public CatalogSnapshot getSnapshot(Bot bot) {
+        CatalogSnapshot snapshot = snapshots.get(bot.getId());
+        if (snapshot == null) {
+            snapshot = rebuild(bot.getId());
+        }
+        // Каталог мог измениться во время первой сборки, когда invalidate ещё не видел снимка
+        refreshIfStale(bot.getId());
+        return snapshot;
+    }
+
+    /**
+     * Помечает снимок каталога бота устаревшим и ставит его пересборку в очередь.
+     * Снимки ботов, к которым ещё не обращались, собираются при первом сообщении.
+     * @param botId ID бота.
+     */
+    public void invalidate(Long botId) {
+        long version = currentVersion(botId).incrementAndGet();
+        log.info("Каталог бота ID {} изменён, новая версия снимка: {}", botId, version);
+        refreshIfStale(botId);
+    }
+
+    /**
+     * Сбрасывает снимок после фиксации транзакции, изменившей товары.
+     * @param event Событие изменения каталога.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        invalidate(event.getBotId());
+    }
+
+    private void refreshIfStale(Long botId) {
+        CatalogSnapshot snapshot = snapshots.get(botId);
+        if (snapshot == null || snapshot.getVersion() >= currentVersion(botId).get() || !pendingRebuilds.add(botId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    rebuild(botId);
+                } catch (Exception e) {
+                    log.error("Ошибка пересборки снимка каталога бота ID {}: {}", botId, e.getMessage(), e);
+                    dropIfStale(botId);
+                } finally {
+                    pendingRebuilds.remove(botId);
+                }
+                // Изменение во время сборки не могло поставить пересборку, пока эта не завершилась
+                refreshIfStale(botId);
+            });
+        } catch (RejectedExecutionException e) {
+            pendingRebuilds.remove(botId);
+            log.warn("Очередь фоновых задач заполнена, снимок каталога бота ID {} будет собран при следующем обращении", botId);
+            dropIfStale(botId);
+        }
+    }
+
+    private CatalogSnapshot rebuild(Long botId) {
+        // Версию фиксируем до чтения товаров: если каталог изменится во время сборки,
+        // снимок окажется устаревшим и refreshIfStale пересоберёт его ещё раз
+        long version = currentVersion(botId).get();
+        CatalogSnapshot rebuilt = new CatalogSnapshot(botId, version, productRepository.findByBotId(botId), stemming);
+        log.info("Снимок каталога бота ID {} собран: версия {}, товаров {}", botId, version, rebuilt.getItems().size());
+        return snapshots.merge(botId, rebuilt,
+                (existing, candidate) -> existing.getVersion() >= candidate.getVersion() ? existing : candidate);
+    }
+
+    /**
+     * Убирает устаревший снимок, если фоновая пересборка не состоялась: следующее обращение соберёт его заново.
+     */
+    private void dropIfStale(Long botId) {
+        long version = currentVersion(botId).get();
+        snapshots.computeIfPresent(botId, (id, snapshot) -> snapshot.getVersion() < version ? null : snapshot);
+    }
+
+    private AtomicLong currentVersion(Long botId) {
+        return versions.computeIfAbsent(botId, id -> new AtomicLong(1));
+    }
+}
@@ -0,0 +1,167 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.llm.LlmTool;
+import com.chatalyst.backend.llm.LlmToolCall;
+import com.chatalyst.backend.util.TextNormalizer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Функции каталога, которые модель вызывает сама вместо получения всего каталога в промпте:
+ * поиск товаров, список каталогов и карточка товара. Все ответы строятся по снимку каталога в памяти.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogToolService {
+
+    public static final String SEARCH_PRODUCTS = "search_products";
+    public static final String LIST_CATALOGS = "list_catalogs";
+    public static final String GET_PRODUCT = "get_product";
+
+    private static final int DEFAULT_SEARCH_LIMIT = 10;
+    private static final int MAX_SEARCH_LIMIT = 20;
+
+    private static final List<LlmTool> TOOLS = List.of(
+            new LlmTool(SEARCH_PRODUCTS,
+                    "Ищет товары магазина по словам запроса в названии, разделе и описании. " +
+                            "Возвращает ID, название, цену, раздел и наличие.",
+                    "{\"type\":\"object\",\"properties\":{" +
+                            "\"query\":{\"type\":\"string\",\"description\":\"Что ищет покупатель, например: синяя кружка\"}," +
+                            "\"catalog\":{\"type\":\"string\",\"description\":\"Ограничить поиск каталогом (необязательно)\"}," +
+                            "\"limit\":{\"type\":\"integer\",\"description\":\"Сколько товаров вернуть, не больше " + MAX_SEARCH_LIMIT + "\"}}," +
+                            "\"required\":[\"query\"]}"),
+            new LlmTool(LIST_CATALOGS,
+                    "Возвращает каталоги магазина с подкаталогами и количеством товаров в каждом.",
+                    "{\"type\":\"object\",\"properties\":{}}"),
+            new LlmTool(GET_PRODUCT,
+                    "Возвращает полную карточку товара по ID: описание, цену, наличие и наличие фото.",
+                    "{\"type\":\"object\",\"properties\":{" +
+                            "\"id\":{\"type\":\"integer\",\"description\":\"ID товара из результатов поиска\"}}," +
+                            "\"required\":[\"id\"]}")
+    );
+
+    private final ObjectMapper objectMapper;
+
+    public List<LlmTool> getTools() {
+        return TOOLS;
+    }
+
+    /**
+     * Выполняет вызов функции, запрошенный моделью.
+     * Ошибки не выбрасываются, а возвращаются модели текстом, чтобы она могла скорректировать запрос.
+     * @param toolCall Вызов функции.
+     * @param catalog Снимок каталога бота.
+     * @return Результат в виде JSON-строки.
+     */
+    public String execute(LlmToolCall toolCall, CatalogSnapshot catalog) {
+        try {
+            JsonNode arguments = objectMapper.readTree(toolCall.getArguments() != null ? toolCall.getArguments() : "{}");
+            JsonNode result = switch (toolCall.getName()) {
+                case SEARCH_PRODUCTS -> searchProducts(catalog, arguments.path("query").asText(""),
+                        arguments.path("catalog").asText(""), arguments.path("limit").asInt(DEFAULT_SEARCH_LIMIT));
+                case LIST_CATALOGS -> listCatalogs(catalog);
+                case GET_PRODUCT -> getProduct(catalog, arguments.path("id").asLong());
+                default -> error("Неизвестная функция: " + toolCall.getName());
+            };
+            return result.toString();
+        } catch (Exception e) {
+            log.warn("Tool call {} failed: {}", toolCall.getName(), e.getMessage());
+            return error("Некорректные аргументы: " + e.getMessage()).toString();
+        }
+    }
+
+    private JsonNode searchProducts(CatalogSnapshot catalog, String query, String catalogFilter, int limit) {
+        String[] words = TextNormalizer.normalizeStemmed(query).split(" ");
+        String normalizedFilter = TextNormalizer.normalize(catalogFilter);
+        int maxResults = Math.min(Math.max(limit, 1), MAX_SEARCH_LIMIT);
+
+        List<ScoredItem> scored = new ArrayList<>();
+        for (CatalogSnapshot.Item item : catalog.getItems()) {
+            if (!normalizedFilter.isEmpty() && !TextNormalizer.normalize(item.getCatalog()).equals(normalizedFilter)) {
+                continue;
+            }
+            String text = " " + item.getSearchText() + " ";
+            int score = 0;
+            for (String word : words) {
+                if (!word.isEmpty() && text.contains(" " + word)) {
+                    score++;
+                }
+            }
+            if (score > 0) {
+                scored.add(new ScoredItem(item, score));
+            }
+        }
+        scored.sort(Comparator.comparingInt(ScoredItem::score).reversed()
+                .thenComparing(s -> s.item().getName()));
+
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("total", scored.size());
+        ArrayNode products = result.putArray("products");
+        scored.stream().limit(maxResults).forEach(s -> {
+            CatalogSnapshot.Item item = s.item();
+            ObjectNode node = products.addObject();
+            node.put("id", item.getId());
+            node.put("name", item.getName());
+            node.put("price", item.getPrice());
+            node.put("catalog", item.getCatalog());
+            node.put("subcategory", item.getSubcategory());
+            node.put("in_stock", item.isInStock());
+        });
+        return result;
+    }
+
+    private JsonNode listCatalogs(CatalogSnapshot catalog) {
+        Map<String, Map<String, Integer>> counts = new TreeMap<>();
+        for (CatalogSnapshot.Item item : catalog.getItems()) {
+            counts.computeIfAbsent(item.getCatalog(), k -> new TreeMap<>())
+                    .merge(item.getSubcategory(), 1, Integer::sum);
+        }
+        ObjectNode result = objectMapper.createObjectNode();
+        ArrayNode catalogs = result.putArray("catalogs");
+        counts.forEach((name, subcategories) -> {
+            ObjectNode node = catalogs.addObject();
+            node.put("name", name);
+            ObjectNode subcategoryNode = node.putObject("subcategories");
+            subcategories.forEach(subcategoryNode::put);
+        });
+        return result;
+    }
+
+    private JsonNode getProduct(CatalogSnapshot catalog, long id) {
+        CatalogSnapshot.Item item = catalog.getItem(id);
+        if (item == null) {
+            return error("Товар с ID " + id + " не найден");
+        }
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("id", item.getId());
+        node.put("name", item.getName());
+        node.put("price", item.getPrice());
+        node.put("description", item.getDescription());
+        node.put("catalog", item.getCatalog());
+        node.put("subcategory", item.getSubcategory());
+        node.put("in_stock", item.isInStock());
+        node.put("has_image", item.hasImage());
+        return node;
+    }
+
+    private ObjectNode error(String message) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("error", message);
+        return node;
+    }
+
+    private record ScoredItem(CatalogSnapshot.Item item, int score) {
+    }
+}
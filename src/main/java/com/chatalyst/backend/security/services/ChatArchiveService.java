@@ -0,0 +1,199 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.ChatMessageRepository;
+import com.chatalyst.backend.archive.ArchiveStorage;
+import com.chatalyst.backend.archive.ArchivedMessage;
+import com.chatalyst.backend.archive.ChatSegmentCodec;
+import com.chatalyst.backend.model.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Холодный архив истории чатов.
+ * Сообщения старше chat.archive.older-than-days переносятся из PostgreSQL в сжатые колоночные сегменты
+ * (по файлу на пачку сообщений бота) с маленьким индексом по chatId и удаляются из базы.
+ * Архив читается по запросу владельца бота потоком, без загрузки в базу.
+ */
+@Service
+@Slf4j
+public class ChatArchiveService {
+
+    private static final String ROOT = "chat-archive/";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    @Value("${chat.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.archive.older-than-days:180}")
+    private int olderThanDays;
+
+    // Сколько сообщений попадает в один сегмент
+    @Value("${chat.archive.segment-rows:50000}")
+    private int segmentRows;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final BotStatsService botStatsService;
+    private final TransactionTemplate transactionTemplate;
+    private final ArchiveStorage archiveStorage;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    public ChatArchiveService(ChatMessageRepository chatMessageRepository,
+                              BotStatsService botStatsService,
+                              TransactionTemplate transactionTemplate,
+                              ArchiveStorage archiveStorage,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.botStatsService = botStatsService;
+        this.transactionTemplate = transactionTemplate;
+        this.archiveStorage = archiveStorage;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Переносит устаревшие сообщения всех ботов в архив.
+     */
+    @Scheduled(cron = "${chat.archive.cron:0 0 4 * * *}")
+    public synchronized void archive() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(olderThanDays);
+        for (Long botId : chatMessageRepository.findBotIdsWithMessagesBefore(cutoff)) {
+            try {
+                archiveBot(botId, cutoff);
+            } catch (Exception e) {
+                log.error("Ошибка архивации сообщений бота {}: {}", botId, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Переносит в архив сообщения бота, созданные до cutoff.
+     * Сегмент и индекс записываются до удаления строк из базы: при сбое между этими шагами
+     * сообщения попадут в архив повторно, а чтение отбрасывает дубликаты по ID.
+     * @param botId ID бота.
+     * @param cutoff Граница по времени создания.
+     * @return Сколько сообщений перенесено.
+     */
+    public long archiveBot(Long botId, LocalDateTime cutoff) {
+        long archived = 0;
+        while (true) {
+            long started = System.nanoTime();
+            List<ChatMessage> batch = chatMessageRepository.findByBotIdAndCreatedAtBeforeOrderByIdAsc(
+                    botId, cutoff, PageRequest.of(0, segmentRows));
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<ArchivedMessage> rows = batch.stream()
+                    .map(m -> new ArchivedMessage(m.getId(), m.getChatId(), m.getCreatedAt(), m.getRole().getValue(), m.getContent()))
+                    .sorted(Comparator.comparingLong(ArchivedMessage::chatId).thenComparingLong(ArchivedMessage::id))
+                    .toList();
+            ChatSegmentCodec.Encoded encoded = ChatSegmentCodec.encode(rows);
+
+            // Имя сегмента по диапазону ID: лексикографический порядок файлов совпадает с порядком сообщений
+            String key = prefix(botId) + String.format("%019d-%019d",
+                    batch.get(0).getId(), batch.get(batch.size() - 1).getId());
+            archiveStorage.put(key + SEGMENT_SUFFIX, encoded.segment());
+            archiveStorage.put(key + INDEX_SUFFIX, encoded.index());
+            // Перенесённые сообщения остаются в статистике бота
+            transactionTemplate.executeWithoutResult(status -> {
+                chatMessageRepository.deleteAllByIdInBatch(batch.stream().map(ChatMessage::getId).toList());
+                botStatsService.recordArchived(botId, batch.size());
+            });
+
+            archived += batch.size();
+            meterRegistry.counter("chat.archive.messages").increment(batch.size());
+            meterRegistry.timer("chat.archive.segment.duration").record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            log.info("В архив бота {} записан сегмент {}: {} сообщений, {} байт",
+                    botId, key, batch.size(), encoded.segment().length);
+            if (batch.size() < segmentRows) {
+                break;
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Пишет архивные сообщения чата в поток в формате NDJSON (по объекту JSON на строку) в порядке ID.
+     * Читаются только сегменты, в индексе которых есть этот чат.
+     * @param botId ID бота.
+     * @param chatId ID чата.
+     * @param out Поток ответа.
+     */
+    public void writeChat(Long botId, Long chatId, OutputStream out) throws IOException {
+        try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+            long[] lastId = {Long.MIN_VALUE};
+            for (String indexKey : archiveStorage.list(prefix(botId))) {
+                if (!indexKey.endsWith(INDEX_SUFFIX)) {
+                    continue;
+                }
+                ChatSegmentCodec.IndexEntry entry = findChat(indexKey, chatId);
+                if (entry == null) {
+                    continue;
+                }
+                String segmentKey = indexKey.substring(0, indexKey.length() - INDEX_SUFFIX.length()) + SEGMENT_SUFFIX;
+                byte[] segment;
+                try (InputStream in = archiveStorage.get(segmentKey)) {
+                    segment = in.readAllBytes();
+                }
+                ChatSegmentCodec.read(segment, entry.firstRow(), entry.rowCount(), message -> {
+                    if (message.id() <= lastId[0]) {
+                        return;
+                    }
+                    lastId[0] = message.id();
+                    try {
+                        writer.write(message);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Ошибка записи архива чата: " + e.getMessage(), e);
+                    }
+                });
+                writer.flush();
+            }
+        }
+    }
+
+    private ChatSegmentCodec.IndexEntry findChat(String indexKey, Long chatId) throws IOException {
+        List<ChatSegmentCodec.IndexEntry> entries;
+        try (InputStream in = archiveStorage.get(indexKey)) {
+            entries = ChatSegmentCodec.readIndex(in);
+        }
+        // Записи индекса отсортированы по chatId
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midChatId = entries.get(mid).chatId();
+            if (midChatId < chatId) {
+                low = mid + 1;
+            } else if (midChatId > chatId) {
+                high = mid - 1;
+            } else {
+                return entries.get(mid);
+            }
+        }
+        return null;
+    }
+
+    private static String prefix(Long botId) {
+        return ROOT + botId + "/";
+    }
+}
@@ -0,0 +1,215 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.model.ChatRole;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Потоковая выгрузка переписки бота в NDJSON или CSV.
+ * Строки читаются серверным курсором PostgreSQL порциями по fetch-size и сразу пишутся в поток ответа,
+ * поэтому расход памяти не зависит от числа сообщений.
+ */
+@Service
+@Slf4j
+public class ChatExportService {
+
+    public enum Format {
+        NDJSON, CSV;
+
+        public static Format of(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Неизвестный формат выгрузки: " + value + ". Допустимые значения: ndjson, csv");
+            }
+        }
+    }
+
+    private final JdbcTemplate cursorJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ObjectMapper objectMapper;
+
+    public ChatExportService(DataSource dataSource,
+                             PlatformTransactionManager transactionManager,
+                             ChatMessageWriter chatMessageWriter,
+                             ObjectMapper objectMapper,
+                             @Value("${chat.export.fetch-size:1000}") int fetchSize) {
+        // Отдельный JdbcTemplate: fetch size включает курсор и не должен влиять на остальные запросы
+        this.cursorJdbcTemplate = new JdbcTemplate(dataSource);
+        this.cursorJdbcTemplate.setFetchSize(fetchSize);
+        // Драйвер PostgreSQL читает порциями только внутри транзакции (без autocommit)
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.chatMessageWriter = chatMessageWriter;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Пишет сообщения бота в поток в порядке чатов и ID.
+     * @param botId ID бота.
+     * @param format Формат выгрузки.
+     * @param gzip Сжимать ли поток gzip.
+     * @param from Нижняя граница времени создания (включительно), может быть null.
+     * @param to Верхняя граница времени создания (не включительно), может быть null.
+     * @param out Поток ответа.
+     * @return Сколько сообщений выгружено.
+     */
+    public long export(Long botId, Format format, boolean gzip,
+                       LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        // Сообщения из очереди отложенной записи тоже должны попасть в выгрузку
+        chatMessageWriter.flush();
+
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, chat_id, role_code, content, created_at FROM chat_message WHERE bot_id = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(botId);
+        if (from != null) {
+            sql.append(" AND created_at >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND created_at < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        // Порядок совпадает с индексом (bot_id, chat_id, id), сортировка не нужна
+        sql.append(" ORDER BY chat_id, id");
+
+        OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 64 * 1024);
+        RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+        long[] count = {0};
+        try {
+            readOnlyTransaction.executeWithoutResult(status ->
+                    cursorJdbcTemplate.query(sql.toString(), rs -> {
+                        try {
+                            rowWriter.write(rs);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        count[0]++;
+                    }, args.toArray()));
+        } catch (UncheckedIOException e) {
+            // Клиент закрыл соединение: курсор закрывается вместе с транзакцией
+            log.warn("Выгрузка сообщений бота {} прервана после {} строк: {}", botId, count[0], e.getMessage());
+            throw e.getCause();
+        }
+        writer.flush();
+        if (target instanceof GZIPOutputStream gzipStream) {
+            gzipStream.finish();
+        }
+        out.flush();
+        log.info("Выгружено {} сообщений бота {} в формате {}", count[0], botId, format);
+        return count[0];
+    }
+
+    private static String role(ResultSet rs) throws SQLException {
+        short code = rs.getShort("role_code");
+        return rs.wasNull() ? null : ChatRole.fromCode(code).getValue();
+    }
+
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+    }
+
+    /**
+     * По объекту JSON на строку.
+     */
+    private class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            this.generator = objectMapper.getFactory().createGenerator(writer);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // flush() генератора только переносит строку в буфер, а не отправляет её клиенту
+            this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            Timestamp createdAt = rs.getTimestamp("created_at");
+            generator.writeStartObject();
+            generator.writeNumberField("id", rs.getLong("id"));
+            generator.writeNumberField("chatId", rs.getLong("chat_id"));
+            generator.writeStringField("role", role(rs));
+            generator.writeStringField("content", rs.getString("content"));
+            generator.writeStringField("createdAt", createdAt != null ? createdAt.toLocalDateTime().toString() : null);
+            generator.writeEndObject();
+            generator.flush();
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * CSV по RFC 4180 с заголовком.
+     * Текстовые ячейки, которые табличный редактор принял бы за формулу, начинаются с апострофа.
+     */
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write("id,chat_id,role,content,created_at\r\n");
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            Timestamp createdAt = rs.getTimestamp("created_at");
+            writer.write(Long.toString(rs.getLong("id")));
+            writer.write(',');
+            writer.write(Long.toString(rs.getLong("chat_id")));
+            writer.write(',');
+            writeField(role(rs));
+            writer.write(',');
+            writeField(rs.getString("content"));
+            writer.write(',');
+            writeField(createdAt != null ? createdAt.toLocalDateTime().toString() : null);
+            writer.write("\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value != null) {
+                writer.write(csvField(value));
+            }
+        }
+    }
+
+    /**
+     * Кодирует текстовую ячейку CSV.
+     * Сообщения пишут пользователи Telegram, поэтому значение вида =HYPERLINK(...) выполнилось бы
+     * у оператора, открывшего выгрузку в Excel; апостроф заставляет редактор показать его как текст.
+     */
+    static String csvField(String value) {
+        if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
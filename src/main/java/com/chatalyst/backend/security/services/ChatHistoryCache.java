@@ -0,0 +1,236 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.ChatMessageRepository;
+import com.chatalyst.backend.Repository.ChatSummaryRepository;
+import com.chatalyst.backend.dto.ConversationContext;
+import com.chatalyst.backend.model.Bot;
+import com.chatalyst.backend.model.ChatMessage;
+import com.chatalyst.backend.model.ChatRole;
+import com.chatalyst.backend.model.ChatSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Кэш последних сообщений чатов в памяти.
+ * Для каждого чата хранится кольцевой буфер последних реплик в хронологическом порядке и сводка;
+ * буфер загружается из БД один раз, дальше история читается без запросов к базе.
+ * Новые сообщения сохраняются в БД отложенно через {@link ChatMessageWriter}.
+ * Число чатов ограничено, давно неактивные чаты вытесняются (LRU).
+ */
+@Component
+@Slf4j
+public class ChatHistoryCache {
+
+    // Сколько несвёрнутых сообщений допускается до запуска сворачивания; столько же хранит буфер чата
+    @Value("${chat.summary.threshold:16}")
+    private int capacity;
+
+    @Value("${chat.history.cache.max-chats:10000}")
+    private int maxChats;
+
+    // Сообщения старше этого срока в контекст не загружаются (их смысл уже в сводке)
+    @Value("${chat.history.max-age-days:90}")
+    private int maxAgeDays;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatSummaryRepository chatSummaryRepository;
+    private final ChatMessageWriter chatMessageWriter;
+    private final MeterRegistry meterRegistry;
+
+    private Map<String, ChatBuffer> chats;
+
+    public ChatHistoryCache(ChatMessageRepository chatMessageRepository,
+                            ChatSummaryRepository chatSummaryRepository,
+                            ChatMessageWriter chatMessageWriter,
+                            MeterRegistry meterRegistry) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatSummaryRepository = chatSummaryRepository;
+        this.chatMessageWriter = chatMessageWriter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        // accessOrder = true: порядок обхода от давно использованных к недавним
+        chats = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChatBuffer> eldest) {
+                return size() > maxChats;
+            }
+        });
+        Gauge.builder("chat.history.cache.size", this, c -> c.chats.size()).register(meterRegistry);
+    }
+
+    /**
+     * Возвращает контекст диалога: сводку и несвёрнутые сообщения в хронологическом порядке.
+     * @param bot Бот.
+     * @param chatId ID чата.
+     * @return Контекст диалога.
+     */
+    public ConversationContext getContext(Bot bot, Long chatId) {
+        return buffer(bot, chatId).context();
+    }
+
+    /**
+     * Добавляет обмен репликами в историю чата и ставит сообщения в очередь на сохранение.
+     * @param bot Бот.
+     * @param chatId ID чата.
+     * @param userMessage Сообщение пользователя.
+     * @param reply Ответ бота.
+     * @return true, если несвёрнутых сообщений стало больше порога и пора обновить сводку.
+     */
+    public boolean append(Bot bot, Long chatId, String userMessage, String reply) {
+        ChatBuffer buffer = buffer(bot, chatId);
+        chatMessageWriter.write(message(bot.getId(), chatId, ChatRole.USER, userMessage));
+        chatMessageWriter.write(message(bot.getId(), chatId, ChatRole.ASSISTANT, reply));
+        return buffer.add(ChatRole.USER.getValue(), userMessage, ChatRole.ASSISTANT.getValue(), reply) > capacity;
+    }
+
+    /**
+     * Учитывает обновлённую сводку: свёрнутые сообщения больше не попадают в контекст.
+     * @param bot Бот.
+     * @param chatId ID чата.
+     * @param summary Новая сводка.
+     * @param folded Сколько самых старых несвёрнутых сообщений вошло в сводку.
+     */
+    public void onSummarized(Bot bot, Long chatId, String summary, int folded) {
+        ChatBuffer buffer = chats.get(key(bot.getId(), chatId));
+        if (buffer != null) {
+            buffer.summarized(summary, folded);
+        }
+    }
+
+    private ChatBuffer buffer(Bot bot, Long chatId) {
+        String key = key(bot.getId(), chatId);
+        ChatBuffer buffer = chats.get(key);
+        if (buffer != null) {
+            return buffer;
+        }
+        // Загрузка из БД выполняется вне блокировки кэша; при гонке остаётся первый загруженный буфер
+        ChatBuffer loaded = load(bot, chatId);
+        ChatBuffer existing = chats.putIfAbsent(key, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private ChatBuffer load(Bot bot, Long chatId) {
+        meterRegistry.counter("chat.history.cache.loads").increment();
+        Optional<ChatSummary> summary = chatSummaryRepository.findByBotIdentifierAndChatId(bot.getBotIdentifier(), chatId);
+        long lastMessageId = summary.map(ChatSummary::getLastMessageId).orElse(0L);
+
+        // Снимок несохранённых сообщений берётся до чтения из БД: сообщение, сохранённое между снимком и чтением,
+        // попадёт в оба источника (и будет отброшено по ID), но не потеряется
+        List<ChatMessage> pending = chatMessageWriter.pending(bot.getId(), chatId);
+
+        // Ограничение по дате позволяет PostgreSQL читать только свежие партиции
+        LocalDateTime since = LocalDateTime.now().minusDays(maxAgeDays);
+        List<ChatMessage> recent = new ArrayList<>(chatMessageRepository.findByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfterOrderByIdDesc(
+                chatId, bot.getId(), lastMessageId, since, PageRequest.of(0, capacity)));
+        // Репозиторий отдаёт сообщения от новых к старым, буферу нужен хронологический порядок
+        Collections.reverse(recent);
+        long unsummarized = recent.size() < capacity
+                ? recent.size()
+                : chatMessageRepository.countByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfter(chatId, bot.getId(), lastMessageId, since);
+
+        // Сообщения, которые ещё ждали записи в БД на момент снимка
+        Set<Long> loadedIds = new HashSet<>();
+        recent.forEach(message -> loadedIds.add(message.getId()));
+        for (ChatMessage message : pending) {
+            if (message.getId() == null || !loadedIds.contains(message.getId())) {
+                recent.add(message);
+                unsummarized++;
+            }
+        }
+
+        ChatBuffer buffer = new ChatBuffer(capacity, summary.map(ChatSummary::getSummary).orElse(null), unsummarized);
+        for (ChatMessage message : recent) {
+            buffer.restore(message.getRole().getValue(), message.getContent());
+        }
+        return buffer;
+    }
+
+    private static ChatMessage message(Long botId, Long chatId, ChatRole role, String content) {
+        return ChatMessage.builder()
+                .chatId(chatId)
+                .botId(botId)
+                .role(role)
+                .content(content)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    private static String key(Long botId, Long chatId) {
+        return botId + ":" + chatId;
+    }
+
+    /**
+     * Кольцевой буфер последних сообщений одного чата.
+     */
+    private static class ChatBuffer {
+        private final String[][] ring;
+        private int start;
+        private int size;
+        private String summary;
+        // Сообщения после последней сводки (может быть больше размера буфера)
+        private long unsummarized;
+
+        ChatBuffer(int capacity, String summary, long unsummarized) {
+            this.ring = new String[capacity][];
+            this.summary = summary;
+            this.unsummarized = unsummarized;
+        }
+
+        // Используется при загрузке: счётчик несвёрнутых сообщений уже посчитан
+        synchronized void restore(String role, String content) {
+            push(role, content);
+        }
+
+        synchronized long add(String userRole, String userMessage, String replyRole, String reply) {
+            push(userRole, userMessage);
+            push(replyRole, reply);
+            unsummarized += 2;
+            return unsummarized;
+        }
+
+        synchronized void summarized(String newSummary, int folded) {
+            summary = newSummary;
+            unsummarized = Math.max(0, unsummarized - folded);
+        }
+
+        synchronized ConversationContext context() {
+            int count = (int) Math.min(size, unsummarized);
+            List<String[]> messages = new ArrayList<>(count + 1);
+            for (int i = size - count; i < size; i++) {
+                messages.add(ring[(start + i) % ring.length]);
+            }
+            return new ConversationContext(summary, messages);
+        }
+
+        private void push(String role, String content) {
+            if (ring.length == 0) {
+                return;
+            }
+            int index = (start + size) % ring.length;
+            ring[index] = new String[]{role, content};
+            if (size < ring.length) {
+                size++;
+            } else {
+                start = (start + 1) % ring.length;
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.chatalyst.backend.security.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Помесячное партиционирование таблицы chat_message по created_at и хранение старых данных.
+ * При первом включении существующая таблица становится «наследной» партицией со всеми старыми сообщениями,
+ * дальше заранее создаются партиции на ближайшие месяцы, а партиции старше срока хранения
+ * отсоединяются и переименовываются в chat_message_archive_* (или удаляются).
+ */
+@Service
+@Slf4j
+public class ChatMessagePartitionService {
+
+    private static final String TABLE = "chat_message";
+    private static final String LEGACY_PARTITION = "chat_message_legacy";
+    private static final String ARCHIVE_PREFIX = "chat_message_archive_";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("'y'yyyy'm'MM");
+    // Верхняя граница партиции в выводе pg_get_expr: FOR VALUES FROM (...) TO ('2026-11-01 00:00:00')
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+    @Value("${chat.partitioning.enabled:false}")
+    private boolean enabled;
+
+    // На сколько месяцев вперёд создавать партиции
+    @Value("${chat.partitioning.months-ahead:2}")
+    private int monthsAhead;
+
+    // Сколько месяцев хранить сообщения в основной таблице (0 — хранить всё)
+    @Value("${chat.retention.months:12}")
+    private int retentionMonths;
+
+    // Удалять отсоединённые партиции вместо переименования в архивные
+    @Value("${chat.retention.drop-detached:false}")
+    private boolean dropDetached;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatSchemaMigrationService chatSchemaMigrationService;
+    private final BotStatsService botStatsService;
+
+    public ChatMessagePartitionService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                       ChatSchemaMigrationService chatSchemaMigrationService,
+                                       BotStatsService botStatsService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.chatSchemaMigrationService = chatSchemaMigrationService;
+        this.botStatsService = botStatsService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    /**
+     * Создаёт недостающие партиции и отсоединяет устаревшие.
+     */
+    @Scheduled(cron = "${chat.partitioning.cron:0 30 3 * * *}")
+    public synchronized void maintain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            YearMonth current = YearMonth.now();
+            if (!isPartitioned()) {
+                migrate(current);
+            }
+            createPartitions(current.plusMonths(monthsAhead));
+            if (retentionMonths > 0) {
+                detachOlderThan(current.minusMonths(retentionMonths).atDay(1).atStartOfDay());
+            }
+        } catch (Exception e) {
+            log.error("Ошибка обслуживания партиций {}: {}", TABLE, e.getMessage(), e);
+        }
+    }
+
+    private boolean isPartitioned() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid " +
+                        "WHERE c.relname = ? AND pg_table_is_visible(c.oid)", Integer.class, TABLE);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Превращает обычную таблицу в партиционированную.
+     * Старая таблица подключается партицией на диапазон до начала следующего месяца,
+     * поэтому данные не копируются; сообщениям без даты проставляется время миграции.
+     * Даты заполняются пачками до захвата блокировки, под ней остаются только строки, записанные за это время.
+     */
+    private void migrate(YearMonth current) throws InterruptedException {
+        String legacyUpperBound = current.plusMonths(1).atDay(1).toString();
+        chatSchemaMigrationService.backfillCreatedAt();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN ACCESS EXCLUSIVE MODE");
+            int backfilled = jdbcTemplate.update("UPDATE " + TABLE + " SET created_at = now() WHERE created_at IS NULL");
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " RENAME TO " + LEGACY_PARTITION);
+            // Имена индексов уникальны в схеме, освобождаем их для новой таблицы
+            jdbcTemplate.execute("ALTER INDEX IF EXISTS chat_message_pkey RENAME TO chat_message_legacy_pkey");
+            jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_chat_message_bot_id_chat_id RENAME TO idx_chat_message_legacy_bot_id_chat_id");
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN created_at SET NOT NULL");
+            // Ключ партиционирования обязан входить в первичный ключ
+            jdbcTemplate.execute("CREATE TABLE " + TABLE + " (LIKE " + LEGACY_PARTITION + " INCLUDING DEFAULTS, " +
+                    "PRIMARY KEY (id, created_at)) PARTITION BY RANGE (created_at)");
+            jdbcTemplate.execute("CREATE INDEX idx_chat_message_bot_id_chat_id ON " + TABLE + " (bot_id, chat_id, id)");
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + LEGACY_PARTITION +
+                    " FOR VALUES FROM (MINVALUE) TO ('" + legacyUpperBound + "')");
+            log.info("Таблица {} переведена на помесячные партиции; старые данные в {} (до {}), дата проставлена {} сообщениям",
+                    TABLE, LEGACY_PARTITION, legacyUpperBound, backfilled);
+        });
+    }
+
+    /**
+     * Создаёт помесячные партиции подряд после последней существующей, пока не будет покрыт месяц until.
+     */
+    private void createPartitions(YearMonth until) {
+        LocalDateTime end = until.plusMonths(1).atDay(1).atStartOfDay();
+        LocalDateTime next = partitions().stream()
+                .map(Partition::upperBound)
+                .max(LocalDateTime::compareTo)
+                .orElse(YearMonth.now().atDay(1).atStartOfDay());
+        while (next.isBefore(end)) {
+            YearMonth month = YearMonth.from(next);
+            LocalDate from = next.toLocalDate();
+            LocalDate to = month.plusMonths(1).atDay(1);
+            String name = TABLE + "_" + month.format(PARTITION_SUFFIX);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF " + TABLE +
+                    " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+            log.info("Создана партиция {} [{}, {})", name, from, to);
+            next = to.atStartOfDay();
+        }
+    }
+
+    /**
+     * Отсоединяет партиции, все сообщения которых старше cutoff.
+     * Отсоединённые сообщения остаются в статистике ботов так же, как перенесённые в холодный архив:
+     * иначе ночная сверка увидела бы уменьшение chat_message и уменьшила бы счётчики.
+     */
+    private void detachOlderThan(LocalDateTime cutoff) {
+        for (Partition partition : partitions()) {
+            if (partition.upperBound().isAfter(cutoff)) {
+                continue;
+            }
+            Map<Long, Long> detached = new TreeMap<>();
+            transactionTemplate.executeWithoutResult(status -> {
+                // Пока строки считаются, холодный архив не удаляет их из партиции: иначе они учлись бы дважды
+                jdbcTemplate.execute("LOCK TABLE " + partition.name() + " IN SHARE MODE");
+                jdbcTemplate.query("SELECT bot_id, COUNT(*) FROM " + partition.name() + " WHERE bot_id IS NOT NULL GROUP BY bot_id",
+                        (RowCallbackHandler) rs -> detached.put(rs.getLong(1), rs.getLong(2)));
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition.name());
+                detached.forEach(botStatsService::recordArchived);
+            });
+            log.info("Партиция {}: {} сообщений {} ботов учтены в статистике как архивные", partition.name(),
+                    detached.values().stream().mapToLong(Long::longValue).sum(), detached.size());
+            if (dropDetached) {
+                jdbcTemplate.execute("DROP TABLE " + partition.name());
+                log.info("Партиция {} (до {}) отсоединена и удалена", partition.name(), partition.upperBound());
+            } else {
+                String archiveName = ARCHIVE_PREFIX + partition.name().substring(TABLE.length() + 1);
+                jdbcTemplate.execute("ALTER TABLE " + partition.name() + " RENAME TO " + archiveName);
+                log.info("Партиция {} (до {}) отсоединена и сохранена как {}", partition.name(), partition.upperBound(), archiveName);
+            }
+        }
+    }
+
+    private List<Partition> partitions() {
+        List<Partition> result = new ArrayList<>();
+        jdbcTemplate.query(
+                "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i " +
+                        "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+                        "WHERE p.relname = ? AND pg_table_is_visible(p.oid)",
+                rs -> {
+                    Matcher matcher = UPPER_BOUND.matcher(rs.getString(2));
+                    if (matcher.find()) {
+                        result.add(new Partition(rs.getString(1), Timestamp.valueOf(normalizeTimestamp(matcher.group(1))).toLocalDateTime()));
+                    }
+                }, TABLE);
+        return result;
+    }
+
+    // Граница может быть записана датой без времени
+    private static String normalizeTimestamp(String value) {
+        return value.length() == 10 ? value + " 00:00:00" : value;
+    }
+
+    private record Partition(String name, LocalDateTime upperBound) {
+    }
+}
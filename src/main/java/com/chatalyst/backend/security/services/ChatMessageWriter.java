@@ -0,0 +1,213 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.ChatMessageRepository;
+import com.chatalyst.backend.model.ChatMessage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Отложенная запись сообщений чатов.
+ * Сообщения копятся в очереди и сохраняются пачками по расписанию, поэтому ответ пользователю не ждёт INSERT.
+ * Вместе с каждой пачкой в той же транзакции обновляются счётчики bot_stats.
+ * Строки, которые БД не примет никогда (например, сообщения уже удалённого бота), отбрасываются поштучно
+ * и не задерживают остальные.
+ * При остановке приложения очередь сбрасывается полностью.
+ */
+@Component
+@Slf4j
+public class ChatMessageWriter {
+
+    @Value("${chat.history.write-batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.history.write-queue-capacity:20000}")
+    private int queueCapacity;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final BotStatsService botStatsService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private BlockingDeque<ChatMessage> queue;
+    // Пачка, которая сейчас сохраняется: её уже нет в очереди, но ещё нет в БД
+    private volatile List<ChatMessage> inFlight = List.of();
+    // Перенос сообщений из очереди в пачку и обратно атомарен относительно pending():
+    // каждое несохранённое сообщение видно либо в очереди, либо в пачке
+    private final Object pendingLock = new Object();
+
+    public ChatMessageWriter(ChatMessageRepository chatMessageRepository,
+                             BotStatsService botStatsService,
+                             TransactionTemplate transactionTemplate,
+                             MeterRegistry meterRegistry) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.botStatsService = botStatsService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        queue = new LinkedBlockingDeque<>(queueCapacity);
+        Gauge.builder("chat.history.write.queue.size", this, w -> w.queue.size()).register(meterRegistry);
+    }
+
+    /**
+     * Ставит сообщение в очередь на сохранение.
+     * Если очередь переполнена, сброс выполняется в текущем потоке.
+     * @param message Новое сообщение (без ID).
+     */
+    public void write(ChatMessage message) {
+        if (!queue.offerLast(message)) {
+            flush();
+            if (!queue.offerLast(message)) {
+                meterRegistry.counter("chat.history.write.dropped").increment();
+                log.error("Очередь сообщений переполнена, сообщение бота {} в чате {} потеряно",
+                        message.getBotId(), message.getChatId());
+            }
+        }
+    }
+
+    /**
+     * Возвращает ещё не сохранённые сообщения чата в порядке записи.
+     * Нужен при загрузке истории чата из БД, чтобы не потерять последние реплики.
+     * Снимок нужно брать до чтения из БД: сообщение, сохранённое после снимка, окажется в обоих источниках,
+     * и у него уже будет ID, по которому вызывающий код отбрасывает повтор.
+     * @param botId ID бота.
+     * @param chatId ID чата.
+     * @return Несохранённые сообщения чата.
+     */
+    public List<ChatMessage> pending(Long botId, Long chatId) {
+        List<ChatMessage> result = new ArrayList<>();
+        synchronized (pendingLock) {
+            for (ChatMessage message : inFlight) {
+                if (belongsTo(message, botId, chatId)) {
+                    result.add(message);
+                }
+            }
+            for (ChatMessage message : queue) {
+                if (belongsTo(message, botId, chatId)) {
+                    result.add(message);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сохраняет накопленные сообщения пачками.
+     */
+    @Scheduled(fixedDelayString = "${chat.history.flush-interval-ms:500}")
+    public synchronized void flush() {
+        while (true) {
+            List<ChatMessage> batch = new ArrayList<>(batchSize);
+            synchronized (pendingLock) {
+                if (queue.drainTo(batch, batchSize) == 0) {
+                    return;
+                }
+                inFlight = batch;
+            }
+            // Сохранённые и отброшенные сообщения пачки: при сбое в очередь возвращается только остальное
+            Set<ChatMessage> settled = Collections.newSetFromMap(new IdentityHashMap<>());
+            try {
+                save(batch, settled);
+            } catch (Exception e) {
+                List<ChatMessage> unsaved = batch.stream().filter(message -> !settled.contains(message)).toList();
+                log.error("Не удалось сохранить {} сообщений чатов, повтор при следующем сбросе: {}",
+                        unsaved.size(), e.getMessage(), e);
+                synchronized (pendingLock) {
+                    requeue(unsaved);
+                    inFlight = List.of();
+                }
+                return;
+            }
+            // Пачка уже зафиксирована в БД
+            inFlight = List.of();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+        if (!queue.isEmpty()) {
+            log.error("При остановке не сохранено {} сообщений чатов", queue.size());
+        }
+    }
+
+    /**
+     * Сохраняет пачку в одной транзакции.
+     * Если пачку отвергло ограничение БД, она делится пополам, пока не останутся отдельные строки,
+     * которые сохранить нельзя: они отбрасываются и в очередь не возвращаются.
+     * Остальные ошибки (например, недоступность БД) пробрасываются, и несохранённая часть повторяется позже.
+     */
+    private void save(List<ChatMessage> batch, Set<ChatMessage> settled) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                chatMessageRepository.saveAll(batch);
+                botStatsService.recordMessages(batch);
+            });
+            settled.addAll(batch);
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                reject(batch.get(0), e);
+                settled.add(batch.get(0));
+                return;
+            }
+            clearIds(batch);
+            int middle = batch.size() / 2;
+            save(batch.subList(0, middle), settled);
+            save(batch.subList(middle, batch.size()), settled);
+        }
+    }
+
+    // Сообщение пишется в журнал целиком, чтобы его можно было восстановить вручную
+    private void reject(ChatMessage message, DataIntegrityViolationException e) {
+        meterRegistry.counter("chat.history.write.rejected").increment();
+        log.error("БД отклонила сообщение бота {} в чате {}, оно не будет сохранено: {}. Роль: {}, текст: {}",
+                message.getBotId(), message.getChatId(), e.getMostSpecificCause().getMessage(),
+                message.getRole(), message.getContent());
+    }
+
+    private void requeue(List<ChatMessage> batch) {
+        clearIds(batch);
+        // Возвращаем в начало очереди в исходном порядке; что не поместилось — теряется
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (!queue.offerFirst(batch.get(i))) {
+                meterRegistry.counter("chat.history.write.dropped").increment(i + 1);
+                log.error("Очередь сообщений переполнена, потеряно {} сообщений", i + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает ID, выданные в откатившейся транзакции: с ID save() выполнил бы merge вместо INSERT.
+     * Для сверки с историей из БД это безопасно: откатившийся ID в БД не попал и повторно не выдаётся,
+     * а новый ID появится только вместе с зафиксированной строкой.
+     */
+    private static void clearIds(List<ChatMessage> batch) {
+        for (ChatMessage message : batch) {
+            message.setId(null);
+        }
+    }
+
+    private static boolean belongsTo(ChatMessage message, Long botId, Long chatId) {
+        return Objects.equals(message.getChatId(), chatId) && Objects.equals(message.getBotId(), botId);
+    }
+}
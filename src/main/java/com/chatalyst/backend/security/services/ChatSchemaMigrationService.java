@@ -0,0 +1,185 @@
+package com.chatalyst.backend.security.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Перевод chat_message и openaitoken_usage со строкового bot_identifier на числовой bot_id
+ * и со строковой role на код role_code, а также заполнение created_at у старых сообщений.
+ * Новые колонки создаёт Hibernate, старые строки заполняются в фоне короткими пачками по диапазонам ID,
+ * поэтому таблицы не блокируются надолго. После заполнения добавляется внешний ключ на bots
+ * с ON DELETE CASCADE. Старые колонки удаляются отдельным поздним шагом (chat.schema.drop-legacy-columns):
+ * пока они есть, при откате на предыдущий релиз старая история остаётся доступной.
+ */
+@Service
+@Slf4j
+public class ChatSchemaMigrationService {
+
+    private static final String BOTS_TABLE = "bots";
+    private static final String LEGACY_BOT_COLUMN = "bot_identifier";
+    private static final String LEGACY_ROLE_COLUMN = "role";
+    private static final String MESSAGES_TABLE = "chat_message";
+
+    private static final List<MigratedTable> TABLES = List.of(
+            new MigratedTable("chat_message", true),
+            new MigratedTable("openaitoken_usage", false)
+    );
+
+    @Value("${chat.schema.migration.enabled:true}")
+    private boolean enabled;
+
+    // Сколько ID обрабатывает одна команда UPDATE
+    @Value("${chat.schema.backfill-batch-size:10000}")
+    private int batchSize;
+
+    // Пауза между пачками, чтобы не мешать рабочей нагрузке
+    @Value("${chat.schema.backfill-pause-ms:20}")
+    private long pauseMs;
+
+    // Необратимо, по умолчанию выключено: включается после того, как новая версия проверена на рабочем трафике
+    @Value("${chat.schema.drop-legacy-columns:false}")
+    private boolean dropLegacyColumns;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChatSchemaMigrationService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        for (MigratedTable table : TABLES) {
+            try {
+                migrate(table);
+            } catch (Exception e) {
+                log.error("Ошибка миграции таблицы {} на bot_id: {}", table.name(), e.getMessage(), e);
+            }
+        }
+        try {
+            long dated = backfillCreatedAt();
+            if (dated > 0) {
+                log.info("Таблица {}: проставлен created_at для {} строк", MESSAGES_TABLE, dated);
+            }
+        } catch (Exception e) {
+            log.error("Ошибка заполнения created_at в {}: {}", MESSAGES_TABLE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Проставляет created_at сообщениям, записанным до появления колонки, пачками по диапазону ID.
+     * Выборки истории фильтруют по created_at, и строки без даты в них не попадают.
+     * Точное время таких сообщений неизвестно, поэтому ставится время заполнения.
+     */
+    public long backfillCreatedAt() throws InterruptedException {
+        return updateInBatches(MESSAGES_TABLE, "created_at IS NULL",
+                "UPDATE " + MESSAGES_TABLE + " t SET created_at = now() WHERE t.created_at IS NULL AND t.id > ? AND t.id <= ?");
+    }
+
+    private void migrate(MigratedTable table) throws InterruptedException {
+        if (columnExists(table.name(), LEGACY_BOT_COLUMN)) {
+            long updated = backfill(table);
+            // Строки ботов, которых уже нет, внешний ключ не пропустит
+            int orphans = jdbcTemplate.update("DELETE FROM " + table.name() + " t WHERE t.bot_id IS NULL AND NOT EXISTS " +
+                    "(SELECT 1 FROM " + BOTS_TABLE + " b WHERE b.bot_identifier = t." + LEGACY_BOT_COLUMN + ")");
+            log.info("Таблица {}: заполнено bot_id для {} строк, удалено {} строк удалённых ботов", table.name(), updated, orphans);
+        }
+        addForeignKey(table.name());
+        if (dropLegacyColumns && columnExists(table.name(), LEGACY_BOT_COLUMN)) {
+            dropLegacyColumns(table);
+        }
+    }
+
+    /**
+     * Заполняет bot_id (и role_code) у строк, записанных до миграции, пачками по диапазону ID.
+     * Каждая пачка — отдельная короткая транзакция.
+     */
+    private long backfill(MigratedTable table) throws InterruptedException {
+        String roleUpdate = table.hasRole()
+                // До миграции писались только роли user и assistant
+                ? ", role_code = CASE t." + LEGACY_ROLE_COLUMN + " WHEN 'user' THEN 1 ELSE 2 END"
+                : "";
+        String sql = "UPDATE " + table.name() + " t SET bot_id = b.id" + roleUpdate +
+                " FROM " + BOTS_TABLE + " b WHERE b.bot_identifier = t." + LEGACY_BOT_COLUMN +
+                " AND t.bot_id IS NULL AND t.id > ? AND t.id <= ?";
+        return updateInBatches(table.name(), "bot_id IS NULL", sql);
+    }
+
+    /**
+     * Выполняет sql с параметрами (from, to] по диапазону ID строк, подходящих под condition.
+     */
+    private long updateInBatches(String table, String condition, String sql) throws InterruptedException {
+        Long min = jdbcTemplate.queryForObject("SELECT MIN(id) FROM " + table + " WHERE " + condition, Long.class);
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table + " WHERE " + condition, Long.class);
+        if (min == null || max == null) {
+            return 0;
+        }
+        long updated = 0;
+        for (long from = min - 1; from < max; from += batchSize) {
+            updated += jdbcTemplate.update(sql, from, from + batchSize);
+            if (pauseMs > 0) {
+                Thread.sleep(pauseMs);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Добавляет внешний ключ на bots. Для обычной таблицы ключ создаётся NOT VALID и проверяется отдельно:
+     * проверка не блокирует запись. Для партиционированной таблицы PostgreSQL этого не поддерживает.
+     */
+    private void addForeignKey(String table) {
+        String constraint = "fk_" + table + "_bot";
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_constraint c JOIN pg_class t ON t.oid = c.conrelid " +
+                        "WHERE c.conname = ? AND t.relname = ? AND pg_table_is_visible(t.oid)", Integer.class, constraint, table);
+        if (exists != null && exists > 0) {
+            return;
+        }
+        boolean partitioned = "p".equals(jdbcTemplate.queryForObject(
+                "SELECT relkind::text FROM pg_class WHERE relname = ? AND pg_table_is_visible(oid)", String.class, table));
+        String add = "ALTER TABLE " + table + " ADD CONSTRAINT " + constraint +
+                " FOREIGN KEY (bot_id) REFERENCES " + BOTS_TABLE + " (id) ON DELETE CASCADE";
+        if (partitioned) {
+            jdbcTemplate.execute(add);
+        } else {
+            jdbcTemplate.execute(add + " NOT VALID");
+            jdbcTemplate.execute("ALTER TABLE " + table + " VALIDATE CONSTRAINT " + constraint);
+        }
+        log.info("Добавлен внешний ключ {} на {}", constraint, BOTS_TABLE);
+    }
+
+    private void dropLegacyColumns(MigratedTable table) {
+        Long missing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table.name() + " WHERE bot_id IS NULL", Long.class);
+        if (missing != null && missing > 0) {
+            // Строки от ещё не обновлённых экземпляров приложения: заполнятся при следующем запуске
+            log.warn("Таблица {}: {} строк без bot_id, старые колонки пока не удаляются", table.name(), missing);
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE " + table.name() + " ALTER COLUMN bot_id SET NOT NULL");
+        jdbcTemplate.execute("ALTER TABLE " + table.name() + " DROP COLUMN " + LEGACY_BOT_COLUMN);
+        if (table.hasRole()) {
+            jdbcTemplate.execute("ALTER TABLE " + table.name() + " ALTER COLUMN role_code SET NOT NULL");
+            jdbcTemplate.execute("ALTER TABLE " + table.name() + " DROP COLUMN " + LEGACY_ROLE_COLUMN);
+        }
+        log.info("Таблица {}: старые колонки удалены", table.name());
+    }
+
+    private boolean columnExists(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() " +
+                        "AND table_name = ? AND column_name = ?", Integer.class, table, column);
+        return count != null && count > 0;
+    }
+
+    private record MigratedTable(String name, boolean hasRole) {
+    }
+}
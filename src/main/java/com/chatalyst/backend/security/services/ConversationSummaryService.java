@@ -0,0 +1,134 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.ChatMessageRepository;
+import com.chatalyst.backend.Repository.ChatSummaryRepository;
+import com.chatalyst.backend.dto.ConversationContext;
+import com.chatalyst.backend.model.Bot;
+import com.chatalyst.backend.model.ChatMessage;
+import com.chatalyst.backend.model.ChatSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Сервис инкрементальной сводки диалога.
+ * Старые сообщения сворачиваются в сохранённую сводку, а в промпт попадают
+ * только сводка и несколько последних реплик, поэтому размер промпта не растёт с длиной чата.
+ */
+@Service
+@Slf4j
+public class ConversationSummaryService {
+
+    // Максимум сообщений, сворачиваемых за один вызов OpenAI
+    private static final int MAX_FOLD_BATCH = 100;
+
+    // Сколько последних сообщений остаётся «как есть» после сворачивания
+    @Value("${chat.history.recent-messages:6}")
+    private int recentMessages;
+
+    // Сколько несвёрнутых сообщений допускается до запуска сворачивания
+    @Value("${chat.summary.threshold:16}")
+    private int summaryThreshold;
+
+    // Сообщения старше этого срока не сворачиваются и не считаются (читаются только свежие партиции)
+    @Value("${chat.history.max-age-days:90}")
+    private int maxAgeDays;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatSummaryRepository chatSummaryRepository;
+    private final OpenAIService openAIService;
+    private final ChatHistoryCache chatHistoryCache;
+    private final ChatMessageWriter chatMessageWriter;
+
+    // Чаты, для которых сводка сейчас обновляется (защита от параллельного сворачивания)
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    public ConversationSummaryService(ChatMessageRepository chatMessageRepository,
+                                      ChatSummaryRepository chatSummaryRepository,
+                                      OpenAIService openAIService,
+                                      ChatHistoryCache chatHistoryCache,
+                                      ChatMessageWriter chatMessageWriter) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatSummaryRepository = chatSummaryRepository;
+        this.openAIService = openAIService;
+        this.chatHistoryCache = chatHistoryCache;
+        this.chatMessageWriter = chatMessageWriter;
+    }
+
+    /**
+     * Возвращает контекст диалога из кэша истории: сводку и несвёрнутые сообщения (не больше порога).
+     * @param bot Бот.
+     * @param chatId ID чата.
+     * @return Контекст диалога с сообщениями в хронологическом порядке.
+     */
+    public ConversationContext loadContext(Bot bot, Long chatId) {
+        return chatHistoryCache.getContext(bot, chatId);
+    }
+
+    /**
+     * Фоновая задача: если несвёрнутых сообщений больше порога, сворачивает старые из них в сводку.
+     * @param bot Бот.
+     * @param chatId ID чата.
+     */
+    @Async("chatTaskExecutor")
+    public void summarizeIfNeeded(Bot bot, Long chatId) {
+        String botIdentifier = bot.getBotIdentifier();
+        String key = bot.getId() + ":" + chatId;
+        if (!inProgress.add(key)) {
+            return;
+        }
+        try {
+            // Сворачиваем только сохранённые сообщения, поэтому сначала дописываем очередь в БД
+            chatMessageWriter.flush();
+
+            ChatSummary summary = chatSummaryRepository.findByBotIdentifierAndChatId(botIdentifier, chatId)
+                    .orElseGet(() -> ChatSummary.builder()
+                            .botIdentifier(botIdentifier)
+                            .chatId(chatId)
+                            .lastMessageId(0L)
+                            .build());
+
+            LocalDateTime since = LocalDateTime.now().minusDays(maxAgeDays);
+            long pending = chatMessageRepository.countByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfter(
+                    chatId, bot.getId(), summary.getLastMessageId(), since);
+            if (pending <= summaryThreshold) {
+                return;
+            }
+
+            int foldCount = (int) Math.min(pending - recentMessages, MAX_FOLD_BATCH);
+            List<ChatMessage> toFold = chatMessageRepository.findByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfterOrderByIdAsc(
+                    chatId, bot.getId(), summary.getLastMessageId(), since, PageRequest.of(0, foldCount));
+            if (toFold.isEmpty()) {
+                return;
+            }
+
+            List<String[]> messages = toFold.stream()
+                    .map(m -> new String[]{m.getRole().getValue(), m.getContent()})
+                    .collect(Collectors.toList());
+            String newSummary = openAIService.summarizeConversation(summary.getSummary(), messages, bot, chatId);
+            if (newSummary == null || newSummary.isBlank()) {
+                log.warn("Не удалось обновить сводку диалога для бота {} и чата {}", botIdentifier, chatId);
+                return;
+            }
+
+            summary.setSummary(newSummary);
+            summary.setLastMessageId(toFold.get(toFold.size() - 1).getId());
+            summary.setUpdatedAt(LocalDateTime.now());
+            chatSummaryRepository.save(summary);
+            chatHistoryCache.onSummarized(bot, chatId, newSummary, toFold.size());
+            log.info("📝 Сводка диалога обновлена для бота {} и чата {}: свёрнуто {} сообщений", botIdentifier, chatId, toFold.size());
+        } catch (Exception e) {
+            log.error("Ошибка при обновлении сводки диалога для бота {} и чата {}: {}", botIdentifier, chatId, e.getMessage(), e);
+        } finally {
+            inProgress.remove(key);
+        }
+    }
+}
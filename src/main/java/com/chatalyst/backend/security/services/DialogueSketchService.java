@@ -0,0 +1,274 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.dto.DialogueStats;
+import com.chatalyst.backend.util.HyperLogLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Приблизительный подсчёт различных диалогов бота за произвольный период.
+ * На каждое входящее сообщение в памяти обновляется оценка HyperLogLog за текущий день;
+ * раз в chat.dialogues.flush-interval-ms изменённые оценки сохраняются в dialogue_sketch
+ * отдельной строкой на каждый экземпляр приложения. Запрос за период объединяет оценки по дням
+ * и экземплярам, не обращаясь к chat_message.
+ */
+@Service
+@Slf4j
+public class DialogueSketchService {
+
+    private static final String UPSERT =
+            "INSERT INTO dialogue_sketch (bot_id, day, node_id, registers, updated_at) VALUES (?, ?, ?, ?, now()) " +
+                    "ON CONFLICT (bot_id, day, node_id) DO UPDATE SET registers = EXCLUDED.registers, updated_at = now()";
+
+    // Оценки прошедших дней после последнего сброса всех экземпляров уже не меняются
+    private static final long CLOSED_DAY_TTL_MS = 3_600_000;
+
+    @Value("${chat.dialogues.max-range-days:366}")
+    private int maxRangeDays;
+
+    @Value("${chat.dialogues.flush-interval-ms:60000}")
+    private long flushIntervalMs;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+
+    // Оценки этого экземпляра, ещё не сохранённые или за текущие сутки
+    private final ConcurrentHashMap<Key, LocalSketch> local = new ConcurrentHashMap<>();
+
+    // Объединённые по всем экземплярам оценки из БД: LRU-кэш ограниченного размера
+    private final Map<Key, CachedSketch> stored;
+
+    public DialogueSketchService(JdbcTemplate jdbcTemplate,
+                                 @Value("${chat.dialogues.node-id:}") String nodeId,
+                                 @Value("${chat.dialogues.cache-max-sketches:1000}") int cacheMaxSketches) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+        this.stored = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedSketch> eldest) {
+                return size() > cacheMaxSketches;
+            }
+        });
+        log.info("Оценки диалогов сохраняются от имени экземпляра {}", this.nodeId);
+    }
+
+    /**
+     * Учитывает входящее сообщение. Работает только с памятью.
+     * @param botId ID бота.
+     * @param chatId ID чата.
+     */
+    public void record(Long botId, long chatId) {
+        local.computeIfAbsent(new Key(botId, LocalDate.now()), k -> new LocalSketch()).add(chatId);
+    }
+
+    /**
+     * Оценивает число различных диалогов бота за период.
+     * @param botId ID бота.
+     * @param from Первый день (включительно).
+     * @param to Последний день (включительно).
+     * @return Оценка за весь период и по дням.
+     */
+    public DialogueStats estimate(Long botId, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new RuntimeException("Начало периода позже его конца");
+        }
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        if (days > maxRangeDays) {
+            throw new RuntimeException("Период не может быть длиннее " + maxRangeDays + " дней");
+        }
+
+        Map<LocalDate, HyperLogLog> storedByDay = loadStored(botId, from, to);
+        HyperLogLog total = new HyperLogLog();
+        Map<LocalDate, Long> daily = new LinkedHashMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            HyperLogLog dayStored = storedByDay.get(day);
+            LocalSketch dayLocal = local.get(new Key(botId, day));
+            if (dayStored == null && dayLocal == null) {
+                daily.put(day, 0L);
+                continue;
+            }
+            // Оценка из БД может не содержать последних сообщений этого экземпляра: объединение с локальной их добавляет
+            HyperLogLog merged = dayStored != null ? dayStored.copy() : new HyperLogLog();
+            if (dayLocal != null) {
+                dayLocal.mergeInto(merged);
+            }
+            daily.put(day, merged.estimate());
+            total.merge(merged);
+        }
+        return new DialogueStats(from, to, total.estimate(), daily);
+    }
+
+    /**
+     * Сохраняет изменённые оценки этого экземпляра и выгружает из памяти оценки закрытых дней.
+     */
+    @Scheduled(fixedDelayString = "${chat.dialogues.flush-interval-ms:60000}")
+    @PreDestroy
+    public synchronized void flush() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        for (Map.Entry<Key, LocalSketch> entry : local.entrySet()) {
+            Key key = entry.getKey();
+            LocalSketch sketch = entry.getValue();
+            try {
+                if (sketch.isDirty()) {
+                    save(key, sketch);
+                }
+                if (key.day().isBefore(yesterday) && !sketch.isDirty()) {
+                    local.remove(key, sketch);
+                }
+            } catch (Exception e) {
+                log.error("Ошибка сохранения оценки диалогов бота {} за {}: {}", key.botId(), key.day(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Удаляет оценки бота.
+     * @param botId ID бота.
+     */
+    public void delete(Long botId) {
+        local.keySet().removeIf(key -> key.botId().equals(botId));
+        synchronized (stored) {
+            stored.keySet().removeIf(key -> key.botId().equals(botId));
+        }
+        jdbcTemplate.update("DELETE FROM dialogue_sketch WHERE bot_id = ?", botId);
+    }
+
+    private void save(Key key, LocalSketch sketch) {
+        if (!sketch.loaded) {
+            // После перезапуска строка экземпляра уже может быть в БД: её нельзя перезаписать меньшей оценкой
+            List<byte[]> persisted = jdbcTemplate.query(
+                    "SELECT registers FROM dialogue_sketch WHERE bot_id = ? AND day = ? AND node_id = ?",
+                    (rs, i) -> rs.getBytes(1), key.botId(), Date.valueOf(key.day()), nodeId);
+            if (!persisted.isEmpty()) {
+                sketch.merge(HyperLogLog.fromBytes(persisted.get(0)));
+            }
+            sketch.loaded = true;
+        }
+        byte[] bytes = sketch.snapshot();
+        try {
+            jdbcTemplate.update(UPSERT, key.botId(), Date.valueOf(key.day()), nodeId, bytes);
+        } catch (RuntimeException e) {
+            sketch.markDirty();
+            throw e;
+        }
+    }
+
+    /**
+     * Возвращает объединённые оценки из БД по дням периода. Недостающие или устаревшие дни
+     * загружаются одним запросом.
+     */
+    private Map<LocalDate, HyperLogLog> loadStored(Long botId, LocalDate from, LocalDate to) {
+        long now = System.currentTimeMillis();
+        LocalDate lastClosedDay = LocalDate.now().minusDays(2);
+        Map<LocalDate, HyperLogLog> result = new HashMap<>();
+        LocalDate missingFrom = null;
+        LocalDate missingTo = null;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            CachedSketch cached = stored.get(new Key(botId, day));
+            long ttl = day.isAfter(lastClosedDay) ? flushIntervalMs : CLOSED_DAY_TTL_MS;
+            if (cached != null && now - cached.loadedAt() < ttl) {
+                if (cached.sketch() != null) {
+                    result.put(day, cached.sketch());
+                }
+                continue;
+            }
+            if (missingFrom == null) {
+                missingFrom = day;
+            }
+            missingTo = day;
+        }
+        if (missingFrom == null) {
+            return result;
+        }
+
+        Map<LocalDate, HyperLogLog> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT day, registers FROM dialogue_sketch WHERE bot_id = ? AND day BETWEEN ? AND ?", rs -> {
+            LocalDate day = rs.getDate("day").toLocalDate();
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("registers"));
+            loaded.merge(day, sketch, (a, b) -> {
+                a.merge(b);
+                return a;
+            });
+        }, botId, Date.valueOf(missingFrom), Date.valueOf(missingTo));
+        for (LocalDate day = missingFrom; !day.isAfter(missingTo); day = day.plusDays(1)) {
+            HyperLogLog sketch = loaded.get(day);
+            // Пустые дни тоже кэшируются, чтобы не запрашивать их повторно
+            stored.put(new Key(botId, day), new CachedSketch(sketch, now));
+            if (sketch != null) {
+                result.put(day, sketch);
+            }
+        }
+        return result;
+    }
+
+    private static String defaultNodeId() {
+        String hostName = System.getenv("HOSTNAME");
+        if (hostName == null || hostName.isBlank()) {
+            try {
+                hostName = InetAddress.getLocalHost().getHostName();
+            } catch (Exception e) {
+                hostName = UUID.randomUUID().toString();
+            }
+        }
+        return hostName.length() > 64 ? hostName.substring(0, 64) : hostName;
+    }
+
+    private record Key(Long botId, LocalDate day) {
+    }
+
+    private record CachedSketch(HyperLogLog sketch, long loadedAt) {
+    }
+
+    /**
+     * Оценка этого экземпляра за день. HyperLogLog не потокобезопасен, поэтому доступ синхронизирован.
+     */
+    private static class LocalSketch {
+        private final HyperLogLog sketch = new HyperLogLog();
+        private boolean dirty;
+        // Строка экземпляра из БД уже объединена с оценкой
+        private volatile boolean loaded;
+
+        synchronized void add(long chatId) {
+            if (sketch.add(chatId)) {
+                dirty = true;
+            }
+        }
+
+        synchronized void merge(HyperLogLog other) {
+            sketch.merge(other);
+        }
+
+        synchronized void mergeInto(HyperLogLog target) {
+            target.merge(sketch);
+        }
+
+        synchronized boolean isDirty() {
+            return dirty;
+        }
+
+        synchronized void markDirty() {
+            dirty = true;
+        }
+
+        synchronized byte[] snapshot() {
+            dirty = false;
+            return sketch.toBytes();
+        }
+    }
+}
@@ -2,6 +2,9 @@
 package com.chatalyst.backend.security.services;
 
 import com.chatalyst.backend.dto.CreateProductRequest;
+import com.chatalyst.backend.llm.LlmMessage;
+import com.chatalyst.backend.llm.LlmProvider;
+import com.chatalyst.backend.llm.LlmRequest;
 import com.chatalyst.backend.dto.ProductResponse;
 import com.chatalyst.backend.model.Bot;
 import com.chatalyst.backend.Repository.BotRepository;
@@ -13,18 +16,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.time.Duration;
 import java.util.*;
 
 @Service
@@ -35,15 +34,16 @@ public class ExcelProductImportService {
     private final ProductService productService;
     private final BotRepository botRepository;
     private final ObjectMapper objectMapper;
-    private final RestTemplate restTemplate;
+    private final LlmProvider llmProvider;
     private final PsObjectStorageService psObjectStorageService;
-
-    @Value("${openai.api.key}")
-    private String openaiApiKey;
+    private final PipelineMetrics pipelineMetrics;
 
     @Value("${openai.model:gpt-3.5-turbo}")
     private String openaiModel;
 
+    // Маппинг большого файла может генерировать до 4000 токенов, поэтому таймаут больше, чем у чата
+    private static final Duration MAPPING_TIMEOUT = Duration.ofMinutes(2);
+
     /**
      * Импортирует товары из Excel файла с использованием OpenAI для маппинга данных.
      * @param excelFile Excel файл с товарами.
@@ -63,27 +63,35 @@ public class ExcelProductImportService {
             }
 
             // Парсим Excel файл
+            long started = System.nanoTime();
             List<Map<String, Object>> excelData = parseExcelFile(excelFile);
+            pipelineMetrics.record("excel.import.stage", System.nanoTime() - started, "stage", "parse");
             log.info("Извлечено {} строк из Excel файла", excelData.size());
 
             // Используем OpenAI для маппинга данных
-            List<Map<String, Object>> mappedData = mapDataWithOpenAI(excelData);
+            List<Map<String, Object>> mappedData = pipelineMetrics.time("excel.import.stage", () -> mapDataWithOpenAI(excelData), "stage", "mapping");
             log.info("Данные успешно обработаны через OpenAI");
 
-            // Создаем товары
-            List<ProductResponse> createdProducts = new ArrayList<>();
+            // Готовим товары; строки с некорректными данными пропускаем
+            // Этап включает скачивание и загрузку изображений товаров
+            started = System.nanoTime();
+            List<CreateProductRequest> requests = new ArrayList<>();
             for (Map<String, Object> productData : mappedData) {
                 try {
-                    CreateProductRequest request = convertToCreateProductRequest(productData, botId);
-                    ProductResponse product = productService.createProduct(request, userId);
-                    createdProducts.add(product);
-                    log.info("Товар создан: {}", product.getName());
+                    requests.add(convertToCreateProductRequest(productData, botId));
                 } catch (Exception e) {
                     log.error("Ошибка при создании товара: {}", e.getMessage());
                     // Продолжаем обработку остальных товаров
                 }
             }
 
+            pipelineMetrics.record("excel.import.stage", System.nanoTime() - started, "stage", "prepare");
+
+            // Сохраняем все товары одной пачкой
+            List<ProductResponse> createdProducts = pipelineMetrics.time("excel.import.stage",
+                    () -> productService.createProducts(requests, botId, userId), "stage", "save");
+            pipelineMetrics.count("excel.import.products", createdProducts.size());
+
             log.info("Импорт завершен. Создано товаров: {}", createdProducts.size());
             return createdProducts;
 
@@ -259,40 +267,21 @@ public class ExcelProductImportService {
     }
 
     /**
-     * Отправляет запрос к OpenAI API.
+     * Отправляет запрос к LLM-провайдеру.
      * @param prompt Промпт для OpenAI.
      * @return Ответ от OpenAI.
      */
     private String callOpenAI(String prompt) {
         try {
-            String url = "https://api.openai.com/v1/chat/completions";
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(openaiApiKey);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", openaiModel);
-            requestBody.put("max_tokens", 4000);
-            requestBody.put("temperature", 0.1);
-            
-            List<Map<String, String>> messages = new ArrayList<>();
-            Map<String, String> message = new HashMap<>();
-            message.put("role", "user");
-            message.put("content", prompt);
-            messages.add(message);
-            requestBody.put("messages", messages);
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
-            
-            if (!response.getStatusCode().is2xxSuccessful()) {
-                throw new RuntimeException("Ошибка при вызове OpenAI API: " + response.getStatusCode());
-            }
-            
-            // Парсим ответ и извлекаем содержимое
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
-            return responseJson.path("choices").get(0).path("message").path("content").asText();
+            LlmRequest request = LlmRequest.builder()
+                    .model(openaiModel)
+                    .messages(List.of(LlmMessage.user(prompt)))
+                    .maxTokens(4000)
+                    .temperature(0.1)
+                    .responseTimeout(MAPPING_TIMEOUT)
+                    .build();
+
+            return llmProvider.chat(request).block(MAPPING_TIMEOUT).getContent();
             
         } catch (Exception e) {
             log.error("Ошибка при вызове OpenAI API: {}", e.getMessage());
@@ -0,0 +1,247 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.util.NgramNaiveBayes;
+import com.chatalyst.backend.util.TextNormalizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Определяет намерение пользователя и отвечает на простые вопросы о каталоге и ценах без обращения к LLM.
+ * Сначала применяются правила по ключевым фразам, затем — наивный байесовский классификатор,
+ * обученный на размеченных вручную примерах. Всё, что не удалось уверенно разобрать, уходит в LLM.
+ * Правила состоят из фраз, а не отдельных слов вроде «какие» или «покажи»: одиночное слово встречается
+ * и в вопросах о доставке или оплате, которые должен обрабатывать LLM.
+ */
+@Service
+@RequiredArgsConstructor
+public class IntentRouter {
+
+    public enum Intent { PRICE, CATEGORY, CATALOG, OTHER }
+
+    // Длинные сообщения почти всегда открытые вопросы — их отдаём LLM
+    private static final int MAX_WORDS = 12;
+    private static final int MAX_LISTED_ITEMS = 15;
+
+    private static final List<String> PRICE_KEYWORDS = List.of(
+            "цена", "цену", "цены", "стоит", "стоимость", "почем", "прайс", "сколько стоит");
+    private static final List<String> CATEGORY_KEYWORDS = List.of(
+            "что есть", "что у вас есть", "какие есть", "какие у вас есть", "какие товары",
+            "покажи что есть", "покажите что есть", "покажи товары", "покажите товары",
+            "есть ли", "есть у вас", "что из");
+    private static final List<String> CATALOG_KEYWORDS = List.of(
+            "каталог", "категории", "ассортимент", "что продаете", "что вы продаете", "список товаров");
+
+    // Размеченные вручную примеры — единственные обучающие данные классификатора.
+    // Сохранённые сообщения не используются: их метки пришлось бы брать из тех же правил,
+    // и модель лишь повторяла бы их ошибки
+    private static final Map<String, List<String>> SEED_EXAMPLES = new LinkedHashMap<>();
+
+    static {
+        SEED_EXAMPLES.put(Intent.PRICE.name(), List.of(
+                "сколько стоит", "какая цена", "почем", "цена на", "стоимость товара", "за сколько продаете",
+                "сколько будет стоить", "какая стоимость"));
+        SEED_EXAMPLES.put(Intent.CATEGORY.name(), List.of(
+                "что есть из", "какие у вас есть", "покажи что есть в разделе", "есть ли у вас", "что есть в наличии из",
+                "какие товары есть в разделе", "покажите товары из"));
+        SEED_EXAMPLES.put(Intent.CATALOG.name(), List.of(
+                "покажи каталог", "какой у вас ассортимент", "что вы продаете", "какие есть категории", "список категорий",
+                "список товаров"));
+        SEED_EXAMPLES.put(Intent.OTHER.name(), List.of(
+                "привет", "как оформить заказ", "есть доставка", "спасибо", "где вы находитесь",
+                "посоветуйте подарок", "как оплатить", "когда привезете мой заказ",
+                "какие у вас условия доставки", "какие способы оплаты", "покажи где вы находитесь",
+                "какие гарантии", "как вернуть товар", "какой график работы"));
+    }
+
+    @Value("${chat.intent.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.intent.min-confidence:0.85}")
+    private double minConfidence;
+
+    private final MeterRegistry meterRegistry;
+
+    private final NgramNaiveBayes classifier = train();
+
+    /**
+     * Готовый ответ, собранный из каталога без участия LLM.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class LocalAnswer {
+        private final Intent intent;
+        private final String text;
+        // Товар, фото которого стоит отправить вслед за ответом (может быть null)
+        private final CatalogSnapshot.Item product;
+    }
+
+    /**
+     * Пытается ответить на сообщение локально.
+     * @param userMessage Сообщение пользователя.
+     * @param catalog Снимок каталога бота.
+     * @return Готовый ответ или null, если сообщение нужно передать LLM.
+     */
+    public LocalAnswer route(String userMessage, CatalogSnapshot catalog) {
+        if (!enabled || catalog.isEmpty()) {
+            return null;
+        }
+        String text = TextNormalizer.normalize(userMessage);
+        if (text.isEmpty() || text.split(" ").length > MAX_WORDS) {
+            return null;
+        }
+
+        Intent intent = classify(text);
+        LocalAnswer answer = switch (intent) {
+            case PRICE -> answerPrice(text, catalog);
+            case CATEGORY -> answerCategory(text, catalog);
+            case CATALOG -> answerCatalog(catalog);
+            case OTHER -> null;
+        };
+        if (answer != null) {
+            meterRegistry.counter("chat.turns", "route", "local", "intent", answer.getIntent().name()).increment();
+        }
+        return answer;
+    }
+
+    /**
+     * Учитывает ход диалога, переданный LLM, для расчёта доли локальных ответов.
+     */
+    public void recordLlmTurn() {
+        meterRegistry.counter("chat.turns", "route", "llm", "intent", Intent.OTHER.name()).increment();
+    }
+
+    private Intent classify(String text) {
+        Intent intent = ruleIntent(text);
+        if (intent != Intent.OTHER) {
+            return intent;
+        }
+        NgramNaiveBayes.Prediction prediction = classifier.predict(text);
+        if (prediction.getProbability() >= minConfidence) {
+            return Intent.valueOf(prediction.getLabel());
+        }
+        return Intent.OTHER;
+    }
+
+    private static Intent ruleIntent(String text) {
+        if (containsAny(text, PRICE_KEYWORDS)) {
+            return Intent.PRICE;
+        }
+        if (containsAny(text, CATEGORY_KEYWORDS)) {
+            return Intent.CATEGORY;
+        }
+        if (containsAny(text, CATALOG_KEYWORDS)) {
+            return Intent.CATALOG;
+        }
+        return Intent.OTHER;
+    }
+
+    private static NgramNaiveBayes train() {
+        List<String> texts = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        SEED_EXAMPLES.forEach((label, examples) -> examples.forEach(example -> {
+            texts.add(example);
+            labels.add(label);
+        }));
+        return new NgramNaiveBayes(texts, labels);
+    }
+
+    private LocalAnswer answerPrice(String text, CatalogSnapshot catalog) {
+        CatalogSnapshot.Item product = findProduct(text, catalog);
+        if (product == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder()
+                .append(product.getName()).append(" — ").append(product.getPrice()).append(" тг.");
+        if (!product.isInStock()) {
+            sb.append("\nСейчас нет в наличии.");
+        }
+        return new LocalAnswer(Intent.PRICE, sb.toString(), product.hasImage() ? product : null);
+    }
+
+    private LocalAnswer answerCategory(String text, CatalogSnapshot catalog) {
+        List<CatalogSnapshot.Item> matched = new ArrayList<>();
+        String group = null;
+        for (CatalogSnapshot.Item item : catalog.getItems()) {
+            if (mentions(text, TextNormalizer.normalize(item.getSubcategory()))) {
+                group = item.getSubcategory();
+            } else if (mentions(text, TextNormalizer.normalize(item.getCatalog()))) {
+                group = item.getCatalog();
+            } else {
+                continue;
+            }
+            matched.add(item);
+        }
+        if (matched.isEmpty()) {
+            // «Какие у вас есть категории?» без названия раздела — это вопрос о каталоге целиком
+            return containsAny(text, CATALOG_KEYWORDS) ? answerCatalog(catalog) : null;
+        }
+
+        StringBuilder sb = new StringBuilder(matched.size() == 1 ? "Нашлось в разделе \"" : "В разделе \"")
+                .append(group).append("\":\n");
+        matched.stream().limit(MAX_LISTED_ITEMS).forEach(item -> sb.append("\n- ")
+                .append(item.getName()).append(" — ").append(item.getPrice()).append(" тг."));
+        if (matched.size() > MAX_LISTED_ITEMS) {
+            sb.append("\n\nИ ещё ").append(matched.size() - MAX_LISTED_ITEMS).append(" товаров.");
+        }
+        return new LocalAnswer(Intent.CATEGORY, sb.toString(), null);
+    }
+
+    private LocalAnswer answerCatalog(CatalogSnapshot catalog) {
+        if (catalog.getCatalogs().isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("У нас есть следующие каталоги:\n");
+        catalog.getCatalogs().forEach(c -> sb.append("\n/catalog_").append(c));
+        return new LocalAnswer(Intent.CATALOG, sb.toString(), null);
+    }
+
+    /**
+     * Ищет товар, название которого упомянуто в тексте; при нескольких совпадениях берётся самое длинное.
+     */
+    private static CatalogSnapshot.Item findProduct(String text, CatalogSnapshot catalog) {
+        CatalogSnapshot.Item best = null;
+        for (CatalogSnapshot.Item item : catalog.findMentions(text)) {
+            if (best == null || item.getNormalizedName().length() > best.getNormalizedName().length()) {
+                best = item;
+            }
+        }
+        return best;
+    }
+
+    private static boolean mentions(String text, String phrase) {
+        if (phrase.isEmpty()) {
+            return false;
+        }
+        if ((" " + text + " ").contains(" " + phrase + " ")) {
+            return true;
+        }
+        // Однословные названия сравниваем по основе, чтобы «ноутбуки» находили «ноутбук»
+        if (phrase.indexOf(' ') < 0 && phrase.length() >= 5) {
+            String stem = phrase.substring(0, phrase.length() - 1);
+            for (String word : text.split(" ")) {
+                if (word.startsWith(stem) && word.length() - phrase.length() <= 2) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAny(String text, List<String> keywords) {
+        String padded = " " + text + " ";
+        for (String keyword : keywords) {
+            if (padded.contains(" " + keyword + " ")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
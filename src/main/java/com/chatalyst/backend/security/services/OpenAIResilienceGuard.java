@@ -0,0 +1,282 @@
+package com.chatalyst.backend.security.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Защитный слой вокруг вызовов OpenAI:
+ * ограничение параллелизма (глобально и на бота), таймаут, circuit breaker по ошибкам и медленным ответам,
+ * а также опциональный «хеджированный» повтор запроса после задержки p95.
+ */
+@Component
+@Slf4j
+public class OpenAIResilienceGuard {
+
+    private static final String GLOBAL_KEY = "_global";
+    // Минимум замеров задержки, после которого p95 считается достоверным
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final int LATENCY_WINDOW = 200;
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Вызов отклонён без обращения к OpenAI (перегрузка или открытый circuit breaker).
+     */
+    public static class CallRejectedException extends RuntimeException {
+        public CallRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    @Value("${openai.resilience.max-concurrent-calls:32}")
+    private int maxConcurrentCalls;
+
+    @Value("${openai.resilience.max-concurrent-calls-per-bot:4}")
+    private int maxConcurrentCallsPerBot;
+
+    @Value("${openai.resilience.acquire-timeout-ms:2000}")
+    private long acquireTimeoutMs;
+
+    @Value("${openai.resilience.call-timeout-ms:30000}")
+    private long callTimeoutMs;
+
+    @Value("${openai.resilience.slow-call-threshold-ms:15000}")
+    private long slowCallThresholdMs;
+
+    @Value("${openai.resilience.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+
+    @Value("${openai.resilience.window-size:20}")
+    private int windowSize;
+
+    @Value("${openai.resilience.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${openai.resilience.open-duration-ms:30000}")
+    private long openDurationMs;
+
+    @Value("${openai.resilience.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    @Value("${openai.resilience.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${openai.resilience.hedge.min-delay-ms:2000}")
+    private long hedgeMinDelayMs;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Semaphore> botPermits = new ConcurrentHashMap<>();
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount;
+    private int latencyCursor;
+
+    private Semaphore globalPermits;
+    private boolean[] outcomes;
+    private int outcomeCount;
+    private int outcomeCursor;
+    private int badOutcomes;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenIssued;
+    private int halfOpenSucceeded;
+
+    private Timer successTimer;
+    private Timer failureTimer;
+    private Counter hedgeCounter;
+
+    public OpenAIResilienceGuard(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        globalPermits = new Semaphore(maxConcurrentCalls);
+        outcomes = new boolean[windowSize];
+        successTimer = Timer.builder("openai.guard.calls").tag("outcome", "success").register(meterRegistry);
+        failureTimer = Timer.builder("openai.guard.calls").tag("outcome", "failure").register(meterRegistry);
+        hedgeCounter = meterRegistry.counter("openai.guard.hedged");
+        Gauge.builder("openai.guard.circuit.state", this, g -> g.getState().ordinal()).register(meterRegistry);
+        Gauge.builder("openai.guard.in-flight", this, g -> maxConcurrentCalls - g.globalPermits.availablePermits()).register(meterRegistry);
+    }
+
+    /**
+     * Выполняет вызов OpenAI под защитой bulkhead, таймаута и circuit breaker.
+     * @param botIdentifier Идентификатор бота (null для общих вызовов).
+     * @param call Фабрика запроса; может быть вызвана дважды при хеджировании.
+     * @return Результат вызова.
+     * @throws CallRejectedException если вызов отклонён без обращения к OpenAI.
+     */
+    public <T> T execute(String botIdentifier, Supplier<Mono<T>> call) {
+        String key = botIdentifier != null ? botIdentifier : GLOBAL_KEY;
+        Semaphore botSemaphore = botPermits.computeIfAbsent(key, k -> new Semaphore(maxConcurrentCallsPerBot));
+
+        // Сначала разрешение бота, затем общее: запросы одного загруженного бота ждут своей очереди,
+        // не занимая общие разрешения, нужные остальным ботам
+        acquire(botSemaphore, "bot");
+        try {
+            acquire(globalPermits, "global");
+            try {
+                if (!tryAcquirePermission()) {
+                    meterRegistry.counter("openai.guard.rejected", "reason", "circuit_open").increment();
+                    throw new CallRejectedException("OpenAI circuit breaker is open");
+                }
+                return invoke(call);
+            } finally {
+                globalPermits.release();
+            }
+        } finally {
+            botSemaphore.release();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private <T> T invoke(Supplier<Mono<T>> call) {
+        Mono<T> request = Mono.defer(call);
+        long hedgeDelay = hedgeDelayMs();
+        if (hedgeDelay > 0) {
+            Mono<T> hedge = Mono.delay(Duration.ofMillis(hedgeDelay))
+                    .doOnNext(tick -> hedgeCounter.increment())
+                    .then(Mono.defer(call));
+            request = Mono.firstWithValue(request, hedge);
+        }
+
+        long start = System.nanoTime();
+        try {
+            T result = request.timeout(Duration.ofMillis(callTimeoutMs)).block();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            successTimer.record(elapsedMs, TimeUnit.MILLISECONDS);
+            recordLatency(elapsedMs);
+            onResult(elapsedMs <= slowCallThresholdMs);
+            return result;
+        } catch (RuntimeException e) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            failureTimer.record(elapsedMs, TimeUnit.MILLISECONDS);
+            onResult(false);
+            if (e.getCause() instanceof TimeoutException) {
+                log.warn("⏱ OpenAI call timed out after {} ms", elapsedMs);
+            }
+            throw e;
+        }
+    }
+
+    private void acquire(Semaphore semaphore, String scope) {
+        try {
+            if (!semaphore.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                meterRegistry.counter("openai.guard.rejected", "reason", "bulkhead_" + scope).increment();
+                throw new CallRejectedException("Too many concurrent OpenAI calls (" + scope + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CallRejectedException("Interrupted while waiting for OpenAI permit");
+        }
+    }
+
+    private synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenIssued >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenIssued++;
+        }
+        return true;
+    }
+
+    private synchronized void onResult(boolean good) {
+        if (state == State.HALF_OPEN) {
+            if (!good) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            return;
+        }
+
+        if (outcomeCount == windowSize) {
+            if (!outcomes[outcomeCursor]) {
+                badOutcomes--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeCursor] = good;
+        if (!good) {
+            badOutcomes++;
+        }
+        outcomeCursor = (outcomeCursor + 1) % windowSize;
+
+        if (outcomeCount >= minimumCalls && badOutcomes * 100 >= failureRateThreshold * outcomeCount) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State next) {
+        State previous = state;
+        state = next;
+        if (next == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+        if (next == State.HALF_OPEN) {
+            halfOpenIssued = 0;
+            halfOpenSucceeded = 0;
+        }
+        if (next == State.CLOSED) {
+            Arrays.fill(outcomes, true);
+            outcomeCount = 0;
+            outcomeCursor = 0;
+            badOutcomes = 0;
+        }
+        meterRegistry.counter("openai.guard.circuit.transitions", "from", previous.name(), "to", next.name()).increment();
+        log.warn("🔌 OpenAI circuit breaker: {} -> {}", previous, next);
+    }
+
+    private synchronized void recordLatency(long elapsedMs) {
+        latencies[latencyCursor] = elapsedMs;
+        latencyCursor = (latencyCursor + 1) % LATENCY_WINDOW;
+        if (latencyCount < LATENCY_WINDOW) {
+            latencyCount++;
+        }
+    }
+
+    /**
+     * Задержка перед хеджированным повтором: p95 последних успешных вызовов, но не меньше минимума.
+     * @return Задержка в мс или 0, если хеджирование выключено или данных недостаточно.
+     */
+    private synchronized long hedgeDelayMs() {
+        if (!hedgeEnabled || latencyCount < MIN_LATENCY_SAMPLES) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        long p95 = sorted[(int) Math.ceil(latencyCount * 0.95) - 1];
+        return Math.max(p95, hedgeMinDelayMs);
+    }
+}
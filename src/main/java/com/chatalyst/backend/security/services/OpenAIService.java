@@ -1,22 +1,35 @@
 // src/main/java/com/chatalyst/backend/security/services/OpenAIService.java
 package com.chatalyst.backend.security.services;
 
-import com.chatalyst.backend.Repository.OpenAITokenUsageRepository;
+import com.chatalyst.backend.dto.BotReply;
+import com.chatalyst.backend.llm.LlmMessage;
+import com.chatalyst.backend.llm.LlmProvider;
+import com.chatalyst.backend.llm.LlmRequest;
+import com.chatalyst.backend.llm.LlmResponse;
+import com.chatalyst.backend.llm.LlmTool;
+import com.chatalyst.backend.llm.LlmToolCall;
+import com.chatalyst.backend.model.Bot;
 import com.chatalyst.backend.model.OpenAITokenUsage;
+import com.chatalyst.backend.util.SingleFlight;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
@@ -26,22 +39,76 @@ public class OpenAIService {
     private static final double USD_PER_1K_PROMPT_TOKENS = 0.0015;
     private static final double USD_PER_1K_COMPLETION_TOKENS = 0.002;
     private static final double KZT_EXCHANGE_RATE = 540.0; // Курс тенге
-
-    @Value("${openai.api.key}")
-    private String openaiApiKey;
-
-    @Value("${openai.model}")
-    private String openaiModel;
-
-    @Qualifier("openAiWebClient")
-    private final WebClient openAiWebClient;
+    // Оценка длины ответа для резерва лимита, если в запросе не задан maxTokens
+    private static final int ESTIMATED_COMPLETION_TOKENS = 500;
+    private static final int CHARS_PER_TOKEN = 4;
+
+    // Неизменная часть системного промпта; идёт первой, чтобы префикс запроса был стабильным
+    private static final String IMAGE_SUPPORT_INSTRUCTIONS =
+            "Ты — умный Telegram-бот-консультант, который помогает пользователю найти товары в магазине. " +
+                    "Отвечай кратко и по делу, если пользователь что-то просит — предлагай товары по смыслу. " +
+                    "Ты можешь догадываться, что он имеет в виду, даже если формулировка не точная. " +
+                    "Не выдумывай товары — только из каталога. Если ничего не найдено — мягко скажи об этом. " +
+                    "Когда рекомендуешь товары, упоминай их точные названия в своем ответе — это поможет системе автоматически показать изображения товаров пользователю. " +
+                    "Если у товара есть изображение (отмечено как [ИЗОБРАЖЕНИЕ: URL]), то при упоминании этого товара пользователь увидит его фото.\n";
+
+    // Формат ответа при структурированном выводе; ID товаров берутся из пометок [ID n] в каталоге
+    private static final String STRUCTURED_OUTPUT_INSTRUCTIONS =
+            "Отвечай строго JSON-объектом вида {\"reply\": \"текст ответа пользователю\", \"product_ids\": [ID товаров]}. " +
+                    "В product_ids перечисли ID (из пометок [ID n] в каталоге) тех товаров, которые ты рекомендуешь в ответе и фото которых нужно показать; " +
+                    "если таких нет — верни пустой массив. ID в тексте reply не упоминай.\n";
+
+    // Инструкция для режима функций: каталог не передаётся в промпте, модель запрашивает нужные товары сама
+    private static final String TOOLS_INSTRUCTIONS =
+            "Каталог магазина не приведён в сообщении: чтобы узнать, какие товары есть, вызывай функции " +
+                    CatalogToolService.SEARCH_PRODUCTS + ", " + CatalogToolService.LIST_CATALOGS + " и " + CatalogToolService.GET_PRODUCT + ". " +
+                    "Рекомендуй только товары, найденные через эти функции, с их точными названиями и ценами.\n";
+
+    private static final String BUSY_REPLY = "Извините, сейчас слишком много запросов. Попробуйте, пожалуйста, через минуту.";
+    private static final String ERROR_REPLY = "Извините, произошла ошибка при обработке вашего запроса. Попробуйте позже.";
+
+    // Просить у модели JSON с ID товаров вместо поиска названий товаров в тексте ответа
+    @Value("${openai.structured-output.enabled:true}")
+    private boolean structuredOutputEnabled;
+
+    // Для больших каталогов модель получает функции поиска вместо полного каталога в промпте
+    @Value("${openai.tools.enabled:true}")
+    private boolean toolsEnabled;
+
+    // Минимальное число товаров, с которого каталог не передаётся в промпте целиком
+    @Value("${openai.tools.catalog-threshold:100}")
+    private int toolsCatalogThreshold;
+
+    // Максимум раундов вызова функций в одном ответе
+    @Value("${openai.tools.max-rounds:3}")
+    private int maxToolRounds;
+
+    private final LlmProvider llmProvider;
+    private final TokenUsageRecorder tokenUsageRecorder;
+    private final OpenAIResilienceGuard resilienceGuard;
     private final ObjectMapper objectMapper;
-    private final OpenAITokenUsageRepository tokenUsageRepository;
-
-    public OpenAIService(WebClient openAiWebClient, ObjectMapper objectMapper, OpenAITokenUsageRepository tokenUsageRepository) {
-        this.openAiWebClient = openAiWebClient;
+    private final CatalogToolService catalogToolService;
+    private final PipelineMetrics pipelineMetrics;
+    private final SpendQuotaService spendQuotaService;
+    // Одинаковые одновременные запросы (бот + хэш запроса) разделяют один вызов модели
+    private final SingleFlight<String, LlmResponse> inFlightRequests;
+    // Системные промпты с каталогом по ID бота, закодированные один раз на версию каталога
+    private final Map<Long, CatalogPrompt> catalogPrompts = new ConcurrentHashMap<>();
+
+    public OpenAIService(LlmProvider llmProvider, TokenUsageRecorder tokenUsageRecorder,
+                         OpenAIResilienceGuard resilienceGuard, ObjectMapper objectMapper,
+                         CatalogToolService catalogToolService, PipelineMetrics pipelineMetrics,
+                         SpendQuotaService spendQuotaService,
+                         @Value("${openai.single-flight.follower-timeout-ms:45000}") long followerTimeoutMs) {
+        this.llmProvider = llmProvider;
+        this.tokenUsageRecorder = tokenUsageRecorder;
+        this.resilienceGuard = resilienceGuard;
         this.objectMapper = objectMapper;
-        this.tokenUsageRepository = tokenUsageRepository;
+        this.catalogToolService = catalogToolService;
+        this.pipelineMetrics = pipelineMetrics;
+        this.spendQuotaService = spendQuotaService;
+        this.inFlightRequests = new SingleFlight<>(Duration.ofMillis(followerTimeoutMs));
+        log.info("OpenAIService использует LLM-провайдер: {}", llmProvider.getName());
     }
 
     /**
@@ -49,132 +116,375 @@ public class OpenAIService {
      * @param conversationHistory История диалога.
      * @param productCatalogInfo Информация о товарах.
      * @param shopName Название магазина.
-     * @param botIdentifier Идентификатор бота.
+     * @param bot Бот (null для общих вызовов).
      * @param chatId ID чата для сохранения статистики.
      * @return Ответ от AI.
      */
-    public String getBotResponse(List<String[]> chatHistory, String productCatalogInfo, String shopName, String botIdentifier, Long chatId) {
-        ArrayNode messages = objectMapper.createArrayNode();
+    public String getBotResponse(List<String[]> chatHistory, String productCatalogInfo, String shopName, Bot bot, Long chatId) {
+        List<LlmMessage> messages = new ArrayList<>();
 
         // Системное сообщение: инструкция для ассистента
-        ObjectNode systemMessage = objectMapper.createObjectNode();
-        systemMessage.put("role", "system");
-        systemMessage.put("content",
+        messages.add(LlmMessage.system(
                 "Ты — умный Telegram-бот-консультант, который помогает пользователю найти товары в магазине \"" + shopName + "\". " +
                         "Вот информация из каталога: " + productCatalogInfo + ". " +
                         "Отвечай кратко и по делу, если пользователь что-то просит — предлагай товары по смыслу. " +
                         "Ты можешь догадываться, что он имеет в виду, даже если формулировка не точная. " +
                         "Не выдумывай товары — только из каталога. Если ничего не найдено — мягко скажи об этом."
-        );
-        messages.add(systemMessage);
+        ));
 
         // Добавляем историю сообщений (роль: user / assistant)
         for (String[] msg : chatHistory) {
-            ObjectNode messageNode = objectMapper.createObjectNode();
-            messageNode.put("role", msg[0]);
-            messageNode.put("content", msg[1]);
-            messages.add(messageNode);
+            messages.add(new LlmMessage(msg[0], msg[1]));
         }
 
-        return callOpenAI(messages, botIdentifier, chatId);
+        return callOpenAI(messages, bot, chatId);
     }
 
     /**
      * Улучшенный метод для ответа с поддержкой изображений товаров.
+     * Системное сообщение начинается с неизменной инструкции и снимка каталога,
+     * поэтому для одной версии каталога префикс промпта побайтно совпадает и кэшируется на стороне OpenAI.
+     * Большие каталоги в промпт не передаются: модель ищет товары через функции каталога.
      * @param chatHistory История диалога.
-     * @param productCatalogInfo Информация о товарах с URL изображений.
+     * @param conversationSummary Сводка ранней части диалога (может быть null).
+     * @param catalog Снимок каталога бота.
      * @param shopName Название магазина.
-     * @param botIdentifier Идентификатор бота.
+     * @param bot Бот (null для общих вызовов).
      * @param chatId ID чата.
-     * @return Ответ от AI с указаниями о товарах для показа.
+     * @return Текст ответа и ID товаров для показа (null в productIds, если ответ неструктурированный).
      */
-    public String getBotResponseWithImageSupport(List<String[]> chatHistory, String productCatalogInfo, String shopName, String botIdentifier, Long chatId) {
-        ArrayNode messages = objectMapper.createArrayNode();
+    public BotReply getBotResponseWithImageSupport(List<String[]> chatHistory, String conversationSummary, CatalogSnapshot catalog, String shopName, Bot bot, Long chatId) {
+        List<LlmMessage> messages = new ArrayList<>();
+        boolean useTools = toolsEnabled && catalog.getItems().size() >= toolsCatalogThreshold;
 
         // Расширенное системное сообщение с инструкциями по изображениям
-        ObjectNode systemMessage = objectMapper.createObjectNode();
-        systemMessage.put("role", "system");
-        systemMessage.put("content",
-                "Ты — умный Telegram-бот-консультант, который помогает пользователю найти товары в магазине \"" + shopName + "\". " +
-                        "Вот информация из каталога: " + productCatalogInfo + ". " +
-                        "Отвечай кратко и по делу, если пользователь что-то просит — предлагай товары по смыслу. " +
-                        "Ты можешь догадываться, что он имеет в виду, даже если формулировка не точная. " +
-                        "Не выдумывай товары — только из каталога. Если ничего не найдено — мягко скажи об этом. " +
-                        "Когда рекомендуешь товары, упоминай их точные названия в своем ответе — это поможет системе автоматически показать изображения товаров пользователю. " +
-                        "Если у товара есть изображение (отмечено как [ИЗОБРАЖЕНИЕ: URL]), то при упоминании этого товара пользователь увидит его фото."
-        );
-        messages.add(systemMessage);
+        messages.add(useTools
+                ? LlmMessage.system(IMAGE_SUPPORT_INSTRUCTIONS +
+                        (structuredOutputEnabled ? STRUCTURED_OUTPUT_INSTRUCTIONS : "") +
+                        TOOLS_INSTRUCTIONS +
+                        "Магазин: \"" + shopName + "\".")
+                : catalogSystemMessage(catalog, shopName));
+
+        // Сводка ранней части диалога идёт отдельным сообщением после основной инструкции
+        if (conversationSummary != null && !conversationSummary.isBlank()) {
+            messages.add(LlmMessage.system("Краткое содержание предыдущей части диалога: " + conversationSummary));
+        }
 
         // Добавляем историю сообщений
         for (String[] msg : chatHistory) {
-            ObjectNode messageNode = objectMapper.createObjectNode();
-            messageNode.put("role", msg[0]);
-            messageNode.put("content", msg[1]);
-            messages.add(messageNode);
+            messages.add(new LlmMessage(msg[0], msg[1]));
         }
 
-        return callOpenAI(messages, botIdentifier, chatId);
+        try {
+            String content = useTools
+                    ? completeWithTools(messages, catalog, bot, chatId)
+                    : requestCompletion(messages, bot, chatId, 0.7, structuredOutputEnabled);
+            return structuredOutputEnabled ? parseBotReply(content) : new BotReply(content, null);
+        } catch (SpendQuotaService.QuotaExceededException e) {
+            log.warn("💸 OpenAI call skipped for bot {} chat {}: {}", bot.getBotIdentifier(), chatId, e.getMessage());
+            return new BotReply(spendQuotaService.fallbackReply(shopName), List.of());
+        } catch (OpenAIResilienceGuard.CallRejectedException e) {
+            log.warn("⚠️ OpenAI call rejected for bot {}: {}", bot.getBotIdentifier(), e.getMessage());
+            return new BotReply(BUSY_REPLY, List.of());
+        } catch (Exception e) {
+            log.error("❌ OpenAI error: {}", e.getMessage(), e);
+            return new BotReply(ERROR_REPLY, List.of());
+        }
     }
 
     /**
-     * Общий метод для вызова OpenAI API.
-     * @param messages Массив сообщений для отправки.
-     * @param botIdentifier Идентификатор бота.
+     * Запрашивает ответ, выполняя вызовы функций каталога, пока модель их запрашивает.
+     * Число раундов ограничено: в последнем раунде вызов функций запрещается и модель обязана ответить текстом.
+     * @param messages Начальные сообщения диалога.
+     * @param catalog Снимок каталога, по которому выполняются функции.
+     * @param bot Бот (null для общих вызовов).
      * @param chatId ID чата.
-     * @return Ответ от AI.
+     * @return Итоговый текст ответа модели.
      */
-    private String callOpenAI(ArrayNode messages, String botIdentifier, Long chatId) {
-        ObjectNode requestBody = objectMapper.createObjectNode();
-        requestBody.put("model", openaiModel);
-        requestBody.set("messages", messages);
-        requestBody.put("temperature", 0.7);
+    private String completeWithTools(List<LlmMessage> messages, CatalogSnapshot catalog, Bot bot, Long chatId) {
+        List<LlmMessage> conversation = new ArrayList<>(messages);
+        List<LlmTool> tools = catalogToolService.getTools();
+        for (int round = 0; ; round++) {
+            boolean lastRound = round >= maxToolRounds;
+            LlmRequest request = LlmRequest.builder()
+                    .messages(new ArrayList<>(conversation))
+                    .temperature(0.7)
+                    .jsonMode(structuredOutputEnabled)
+                    .tools(tools)
+                    .toolChoice(lastRound ? "none" : "auto")
+                    .build();
+            LlmResponse response = complete(request, bot, chatId);
+            if (lastRound || !response.hasToolCalls()) {
+                return response.getContent() != null ? response.getContent() : "";
+            }
 
-        log.info("⏳ Sending OpenAI request with context for bot: {}", botIdentifier);
+            conversation.add(LlmMessage.assistantToolCalls(response.getContent(), response.getToolCalls()));
+            for (LlmToolCall toolCall : response.getToolCalls()) {
+                log.info("🔧 Tool call {} for bot {}: {}", toolCall.getName(), bot.getBotIdentifier(), toolCall.getArguments());
+                conversation.add(LlmMessage.toolResult(toolCall.getId(), catalogToolService.execute(toolCall, catalog)));
+            }
+        }
+    }
+
+    /**
+     * Возвращает системное сообщение с инструкциями и каталогом.
+     * Сообщение собирается и кодируется в UTF-8 JSON один раз на версию каталога и название магазина,
+     * а при отправке его байты копируются в тело запроса без повторного кодирования.
+     * @param catalog Снимок каталога бота.
+     * @param shopName Название магазина.
+     * @return Системное сообщение с заранее закодированным текстом.
+     */
+    private LlmMessage catalogSystemMessage(CatalogSnapshot catalog, String shopName) {
+        CatalogPrompt cached = catalogPrompts.get(catalog.getBotId());
+        if (cached != null && cached.version == catalog.getVersion() && Objects.equals(cached.shopName, shopName)) {
+            return cached.message;
+        }
+        LlmMessage message = LlmMessage.preEncoded("system", IMAGE_SUPPORT_INSTRUCTIONS +
+                (structuredOutputEnabled ? STRUCTURED_OUTPUT_INSTRUCTIONS : "") +
+                "Магазин: \"" + shopName + "\".\n" +
+                "Каталог магазина:\n" + catalog.getPromptText());
+        catalogPrompts.put(catalog.getBotId(), new CatalogPrompt(catalog.getVersion(), shopName, message));
+        return message;
+    }
 
+    /**
+     * Разбирает JSON-ответ модели; если это не ожидаемый JSON, весь ответ считается текстом.
+     * @param content Ответ модели.
+     * @return Текст ответа и ID товаров без повторов.
+     */
+    private BotReply parseBotReply(String content) {
         try {
-            String responseString = openAiWebClient.post()
-                    .uri("/chat/completions")
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + openaiApiKey)
-                    .bodyValue(requestBody.toString())
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-
-            JsonNode rootNode = objectMapper.readTree(responseString);
-            String assistantResponse = rootNode.path("choices").get(0).path("message").path("content").asText();
-
-            // Извлекаем информацию об использовании токенов и сохраняем ее
-            JsonNode usageNode = rootNode.path("usage");
-            if (usageNode.isObject() && botIdentifier != null && chatId != null) {
-                saveTokenUsage(usageNode, botIdentifier, chatId);
+            JsonNode root = objectMapper.readTree(content);
+            JsonNode reply = root.path("reply");
+            if (reply.isTextual()) {
+                Set<Long> productIds = new LinkedHashSet<>();
+                for (JsonNode id : root.path("product_ids")) {
+                    if (id.canConvertToLong()) {
+                        productIds.add(id.asLong());
+                    }
+                }
+                return new BotReply(reply.asText(), new ArrayList<>(productIds));
             }
+        } catch (Exception e) {
+            log.warn("⚠️ Structured AI response could not be parsed, using it as plain text: {}", e.getMessage());
+        }
+        return new BotReply(content, null);
+    }
 
-            log.info("✅ AI response: {}", assistantResponse);
-            return assistantResponse;
+    /**
+     * Сворачивает сообщения диалога в краткую сводку с учётом предыдущей сводки.
+     * @param previousSummary Предыдущая сводка (может быть null).
+     * @param messages Сообщения для сворачивания в хронологическом порядке: {role, content}.
+     * @param bot Бот (null для общих вызовов).
+     * @param chatId ID чата.
+     * @return Новая сводка или null, если OpenAI вернул ошибку.
+     */
+    public String summarizeConversation(String previousSummary, List<String[]> messages, Bot bot, Long chatId) {
+        StringBuilder transcript = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            transcript.append("Текущая сводка: ").append(previousSummary).append("\n\n");
+        }
+        transcript.append("Новые сообщения:\n");
+        for (String[] msg : messages) {
+            transcript.append("assistant".equals(msg[0]) ? "Бот: " : "Клиент: ").append(msg[1]).append("\n");
+        }
+
+        List<LlmMessage> request = new ArrayList<>();
+        request.add(LlmMessage.system(
+                "Ты сжимаешь историю переписки клиента с ботом магазина. " +
+                        "Объедини текущую сводку и новые сообщения в одну краткую сводку (не более 120 слов). " +
+                        "Сохрани интересы клиента, упомянутые товары, цены, договорённости и открытые вопросы. " +
+                        "Верни только текст сводки."
+        ));
+        request.add(LlmMessage.user(transcript.toString()));
 
+        try {
+            return requestCompletion(request, bot, chatId, 0.2, false);
+        } catch (Exception e) {
+            log.error("❌ OpenAI summary error for bot {}: {}", bot.getBotIdentifier(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Общий метод для вызова OpenAI API.
+     * @param messages Сообщения для отправки.
+     * @param bot Бот (null для общих вызовов).
+     * @param chatId ID чата.
+     * @return Ответ от AI.
+     */
+    private String callOpenAI(List<LlmMessage> messages, Bot bot, Long chatId) {
+        try {
+            return requestCompletion(messages, bot, chatId, 0.7, false);
+        } catch (OpenAIResilienceGuard.CallRejectedException e) {
+            // Быстрый отказ: OpenAI перегружен или circuit breaker открыт, не ждём таймаута сокета
+            log.warn("⚠️ OpenAI call rejected for bot {}: {}", bot != null ? bot.getBotIdentifier() : null, e.getMessage());
+            return BUSY_REPLY;
         } catch (Exception e) {
             log.error("❌ OpenAI error: {}", e.getMessage(), e);
-            return "Извините, произошла ошибка при обработке вашего запроса. Попробуйте позже.";
+            return ERROR_REPLY;
         }
     }
 
     /**
-     * Сохраняет статистику использования токенов.
-     * @param usageNode Узел с информацией об использовании токенов.
-     * @param botIdentifier Идентификатор бота.
+     * Выполняет запрос к модели и сохраняет статистику токенов.
+     * @param messages Сообщения для отправки.
+     * @param bot Бот (null для общих вызовов).
+     * @param chatId ID чата.
+     * @param temperature Температура генерации.
+     * @param jsonMode Требовать ответ в виде JSON-объекта.
+     * @return Текст ответа AI.
+     */
+    private String requestCompletion(List<LlmMessage> messages, Bot bot, Long chatId, double temperature, boolean jsonMode) {
+        LlmRequest request = LlmRequest.builder()
+                .messages(messages)
+                .temperature(temperature)
+                .jsonMode(jsonMode)
+                .build();
+        return complete(request, bot, chatId).getContent();
+    }
+
+    /**
+     * Выполняет запрос к модели (с объединением одинаковых запросов и защитой вызова) и сохраняет статистику токенов.
+     * Для вызовов в чате бота перед запросом резервируется оценка расхода в дневных лимитах.
+     * @param request Запрос.
+     * @param bot Бот (null для общих вызовов).
      * @param chatId ID чата.
+     * @return Ответ модели.
      */
-    private void saveTokenUsage(JsonNode usageNode, String botIdentifier, Long chatId) {
-        int promptTokens = usageNode.path("prompt_tokens").asInt();
-        int completionTokens = usageNode.path("completion_tokens").asInt();
-        int totalTokens = usageNode.path("total_tokens").asInt();
+    private LlmResponse complete(LlmRequest request, Bot bot, Long chatId) {
+        String botIdentifier = bot != null ? bot.getBotIdentifier() : null;
+        log.info("⏳ Sending OpenAI request with context for bot: {}", botIdentifier);
 
-        double usdCost = (promptTokens / 1000.0) * USD_PER_1K_PROMPT_TOKENS +
+        SpendQuotaService.Reservation reservation = null;
+        if (bot != null && chatId != null) {
+            int promptTokens = estimatePromptTokens(request);
+            int completionTokens = request.getMaxTokens() != null ? request.getMaxTokens() : ESTIMATED_COMPLETION_TOKENS;
+            reservation = spendQuotaService.reserve(bot.getId(), chatId, promptTokens + completionTokens,
+                    kztCost(promptTokens, completionTokens));
+        }
+
+        String botTag = pipelineMetrics.botTag(bot != null ? bot.getId() : null);
+        SingleFlight.Shared<LlmResponse> shared;
+        try {
+            shared = pipelineMetrics.time("openai.request",
+                    () -> inFlightRequests.execute(botIdentifier + ":" + requestKey(request),
+                            () -> resilienceGuard.execute(botIdentifier, () -> llmProvider.chat(request))),
+                    "bot", botTag, "provider", llmProvider.getName());
+        } catch (RuntimeException e) {
+            spendQuotaService.release(reservation);
+            throw e;
+        }
+        if (shared.getParticipants() > 1) {
+            log.info("🔗 OpenAI response shared by {} identical requests for bot {}", shared.getParticipants(), botIdentifier);
+        }
+
+        LlmResponse response = shared.getValue();
+        // Токены общего ответа учитываются один раз — у ведущего запроса
+        if (shared.getIndex() == 0) {
+            pipelineMetrics.count("openai.tokens", response.getPromptTokens(), "bot", botTag, "type", "prompt");
+            pipelineMetrics.count("openai.tokens", response.getCompletionTokens(), "bot", botTag, "type", "completion");
+        }
+        if (bot != null && chatId != null) {
+            saveTokenUsage(response, bot, chatId, shared.getIndex(), shared.getParticipants(), reservation);
+        }
+
+        log.info("✅ AI response: {}", response.getContent());
+        return response;
+    }
+
+    /**
+     * Грубая оценка числа токенов запроса по длине текста — для резерва лимита до ответа модели.
+     */
+    private static int estimatePromptTokens(LlmRequest request) {
+        int tokens = 0;
+        for (LlmMessage message : request.getMessages()) {
+            int length = message.getContent() != null ? message.getContent().length()
+                    : message.getEncodedContent() != null ? message.getEncodedContent().length : 0;
+            // +4 токена служебной разметки на сообщение
+            tokens += (length + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN + 4;
+        }
+        return tokens;
+    }
+
+    private static double kztCost(int promptTokens, int completionTokens) {
+        return usdCost(promptTokens, completionTokens) * KZT_EXCHANGE_RATE;
+    }
+
+    private static double usdCost(int promptTokens, int completionTokens) {
+        return (promptTokens / 1000.0) * USD_PER_1K_PROMPT_TOKENS +
                 (completionTokens / 1000.0) * USD_PER_1K_COMPLETION_TOKENS;
+    }
+
+    /**
+     * Хэш запроса для объединения одинаковых одновременных вызовов.
+     */
+    private static String requestKey(LlmRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Double.toString(request.getTemperature()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) (request.isJsonMode() ? 1 : 0));
+            if (request.getTools() != null) {
+                for (LlmTool tool : request.getTools()) {
+                    update(digest, tool.getName());
+                }
+                update(digest, request.getToolChoice());
+            }
+            for (LlmMessage message : request.getMessages()) {
+                update(digest, message.getRole());
+                // Для заранее закодированных сообщений хэшируем готовые байты, не кодируя текст заново
+                if (message.getEncodedContent() != null) {
+                    digest.update((byte) 0);
+                    digest.update(message.getEncodedContent());
+                } else {
+                    update(digest, message.getContent());
+                }
+                if (message.getToolCalls() != null) {
+                    for (LlmToolCall toolCall : message.getToolCalls()) {
+                        update(digest, toolCall.getId());
+                        update(digest, toolCall.getName());
+                        update(digest, toolCall.getArguments());
+                    }
+                }
+                update(digest, message.getToolCallId());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // Разделитель не даёт соседним полям склеиться в одинаковую последовательность байтов
+        digest.update((byte) 0);
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Сохраняет статистику использования токенов.
+     * Если ответ разделён между несколькими одинаковыми запросами, токены делятся между их чатами поровну,
+     * остаток достаётся ведущему запросу — сумма по чатам совпадает с фактическим расходом.
+     * @param response Ответ модели с количеством токенов.
+     * @param bot Бот (null для общих вызовов).
+     * @param chatId ID чата.
+     * @param shareIndex Номер участника общего запроса (0 — ведущий).
+     * @param participants Количество чатов, разделивших запрос.
+     * @param reservation Резерв дневного лимита, заменяемый фактическим расходом (может быть null).
+     */
+    private void saveTokenUsage(LlmResponse response, Bot bot, Long chatId, int shareIndex, int participants,
+                                SpendQuotaService.Reservation reservation) {
+        int promptTokens = share(response.getPromptTokens(), shareIndex, participants);
+        int completionTokens = share(response.getCompletionTokens(), shareIndex, participants);
+        int totalTokens = promptTokens + completionTokens;
+
+        double usdCost = usdCost(promptTokens, completionTokens);
         double kztCost = usdCost * KZT_EXCHANGE_RATE;
+        spendQuotaService.commit(reservation, totalTokens, kztCost);
 
         OpenAITokenUsage tokenUsage = OpenAITokenUsage.builder()
-                .botIdentifier(botIdentifier)
+                .botId(bot.getId())
                 .chatId(chatId)
                 .promptTokens(promptTokens)
                 .completionTokens(completionTokens)
@@ -184,9 +494,15 @@ public class OpenAIService {
                 .timestamp(LocalDateTime.now())
                 .build();
 
-        tokenUsageRepository.save(tokenUsage);
-        log.info("📊 Saved token usage for bot {}: prompt={} completion={} cost=${:.6f} (₸{:.2f})",
-                botIdentifier, promptTokens, completionTokens, usdCost, kztCost);
+        // Запись в БД выполняется фоновым писателем пачками
+        tokenUsageRecorder.record(tokenUsage);
+        log.info("📊 Recorded token usage for bot {}: prompt={} completion={} cost=${:.6f} (₸{:.2f})",
+                bot.getBotIdentifier(), promptTokens, completionTokens, usdCost, kztCost);
+    }
+
+    private static int share(int tokens, int shareIndex, int participants) {
+        int part = tokens / participants;
+        return shareIndex == 0 ? part + tokens % participants : part;
     }
 
     /**
@@ -194,17 +510,9 @@ public class OpenAIService {
      */
     public String getBotResponse(String userMessage) {
         try {
-            ArrayNode messages = objectMapper.createArrayNode();
-
-            ObjectNode systemMessage = objectMapper.createObjectNode();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", "Ты — вежливый помощник Telegram-бота. Отвечай понятно и дружелюбно.");
-            messages.add(systemMessage);
-
-            ObjectNode userMsg = objectMapper.createObjectNode();
-            userMsg.put("role", "user");
-            userMsg.put("content", userMessage);
-            messages.add(userMsg);
+            List<LlmMessage> messages = new ArrayList<>();
+            messages.add(LlmMessage.system("Ты — вежливый помощник Telegram-бота. Отвечай понятно и дружелюбно."));
+            messages.add(LlmMessage.user(userMessage));
 
             return callOpenAI(messages, null, null);
 
@@ -213,6 +521,16 @@ public class OpenAIService {
             return "Извините, произошла ошибка при обработке вашего запроса.";
         }
     }
-}
 
+    private static class CatalogPrompt {
+        private final long version;
+        private final String shopName;
+        private final LlmMessage message;
 
+        CatalogPrompt(long version, String shopName, LlmMessage message) {
+            this.version = version;
+            this.shopName = shopName;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.chatalyst.backend.security.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Таймеры и счётчики этапов обработки сообщений (вебхук, поиск бота, история, каталог, OpenAI, Telegram, S3, импорт Excel).
+ * Значения тегов ограничены: ID бота попадает в тег только у первых metrics.bot-tags.max ботов,
+ * остальные учитываются как other, поэтому число временных рядов в Prometheus не растёт с числом ботов.
+ */
+@Service
+public class PipelineMetrics {
+
+    public static final String OTHER_BOT = "other";
+    public static final String NO_BOT = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final int maxTaggedBots;
+    private final Set<Long> taggedBots = ConcurrentHashMap.newKeySet();
+
+    public PipelineMetrics(MeterRegistry meterRegistry,
+                           @Value("${metrics.bot-tags.max:20}") int maxTaggedBots) {
+        this.meterRegistry = meterRegistry;
+        this.maxTaggedBots = maxTaggedBots;
+    }
+
+    /**
+     * Значение тега bot: ID бота или other, если лимит ботов с собственным тегом исчерпан.
+     * @param botId ID бота, может быть null.
+     */
+    public String botTag(Long botId) {
+        if (botId == null) {
+            return NO_BOT;
+        }
+        if (taggedBots.contains(botId)) {
+            return botId.toString();
+        }
+        synchronized (taggedBots) {
+            if (taggedBots.size() < maxTaggedBots) {
+                taggedBots.add(botId);
+                return botId.toString();
+            }
+        }
+        return OTHER_BOT;
+    }
+
+    /**
+     * Выполняет вызов и записывает его длительность с тегом outcome (success или error).
+     * @param name Имя таймера.
+     * @param call Вызов.
+     * @param tags Дополнительные теги парами ключ-значение.
+     * @return Результат вызова.
+     */
+    public <T> T time(String name, Supplier<T> call, String... tags) {
+        long started = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = call.get();
+            outcome = "success";
+            return result;
+        } finally {
+            record(name, System.nanoTime() - started, Tags.of(tags).and("outcome", outcome));
+        }
+    }
+
+    public void time(String name, Runnable call, String... tags) {
+        time(name, () -> {
+            call.run();
+            return null;
+        }, tags);
+    }
+
+    /**
+     * Записывает длительность, измеренную вызывающим кодом.
+     * @param name Имя таймера.
+     * @param nanos Длительность в наносекундах.
+     * @param tags Теги парами ключ-значение.
+     */
+    public void record(String name, long nanos, String... tags) {
+        record(name, nanos, Tags.of(tags));
+    }
+
+    public void count(String name, long amount, String... tags) {
+        if (amount > 0) {
+            meterRegistry.counter(name, Tags.of(tags)).increment(amount);
+        }
+    }
+
+    private void record(String name, long nanos, Tags tags) {
+        meterRegistry.timer(name, tags).record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
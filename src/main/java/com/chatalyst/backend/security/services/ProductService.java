@@ -12,9 +12,11 @@ import com.chatalyst.backend.model.Bot;
 import com.chatalyst.backend.model.Product;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -28,6 +30,7 @@ public class ProductService {
     private final BotRepository botRepository;
     private final UserRepository userRepository;
     private final PsObjectStorageService psObjectStorageService; // Изменено: используем PsObjectStorageService
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Создает новый товар и привязывает его к указанному боту.
@@ -57,10 +60,49 @@ public class ProductService {
 
         Product savedProduct = productRepository.save(product);
         log.info("Товар создан: {} для бота {}", savedProduct.getName(), bot.getBotIdentifier());
+        eventPublisher.publishEvent(new CatalogChangedEvent(bot.getId()));
         
         return convertToResponse(savedProduct);
     }
 
+    /**
+     * Создает несколько товаров одного бота за одну пачку INSERT (используется при импорте).
+     * @param requests DTO с данными товаров; все товары должны относиться к одному боту.
+     * @param botId ID бота.
+     * @param userId ID пользователя, создающего товары (для проверки прав).
+     * @return Созданные товары.
+     * @throws RuntimeException если бот не найден или пользователь не является владельцем бота.
+     */
+    @Transactional
+    public List<ProductResponse> createProducts(List<CreateProductRequest> requests, Long botId, Long userId) {
+        Bot bot = botRepository.findById(botId)
+                .orElseThrow(() -> new RuntimeException("Бот не найден с ID: " + botId));
+
+        if (!bot.getOwner().getId().equals(userId)) {
+            throw new RuntimeException("У вас нет прав для добавления товаров в этого бота.");
+        }
+
+        List<Product> products = new ArrayList<>(requests.size());
+        for (CreateProductRequest request : requests) {
+            Product product = new Product();
+            product.setName(request.getName());
+            product.setPrice(request.getPrice());
+            product.setDescription(request.getDescription());
+            product.setCatalog(request.getCatalog());
+            product.setSubcategory(request.getSubcategory());
+            product.setImageUrl(request.getImageUrl());
+            product.setInStock(request.isInStock());
+            product.setBot(bot);
+            products.add(product);
+        }
+
+        List<Product> savedProducts = productRepository.saveAll(products);
+        log.info("Создано товаров: {} для бота {}", savedProducts.size(), bot.getBotIdentifier());
+        eventPublisher.publishEvent(new CatalogChangedEvent(bot.getId()));
+
+        return savedProducts.stream().map(this::convertToResponse).collect(Collectors.toList());
+    }
+
     /**
      * Обновляет существующий товар.
      * @param productId ID товара для обновления.
@@ -97,6 +139,7 @@ public class ProductService {
 
         Product updatedProduct = productRepository.save(product);
         log.info("Товар обновлен: {} для бота {}", updatedProduct.getName(), product.getBot().getBotIdentifier());
+        eventPublisher.publishEvent(new CatalogChangedEvent(product.getBot().getId()));
         
         return convertToResponse(updatedProduct);
     }
@@ -129,6 +172,7 @@ public class ProductService {
 
         productRepository.delete(product);
         log.info("Товар удален: {} (ID: {})", product.getName(), productId);
+        eventPublisher.publishEvent(new CatalogChangedEvent(product.getBot().getId()));
     }
 
     // ========================================================================
@@ -165,6 +209,7 @@ public class ProductService {
         // Затем удаляем сами товары
         productRepository.deleteAll(productsToDelete);
         log.info("Удалено {} товаров из каталога '{}' для бота ID {}", productsToDelete.size(), catalog, botId);
+        eventPublisher.publishEvent(new CatalogChangedEvent(botId));
 
         return productsToDelete.size();
     }
@@ -201,6 +246,7 @@ public class ProductService {
         productRepository.deleteAll(productsToDelete);
         log.info("Удалено {} товаров из подкатегории '{}' в каталоге '{}' для бота ID {}", 
                 productsToDelete.size(), subcategory, catalog, botId);
+        eventPublisher.publishEvent(new CatalogChangedEvent(botId));
 
         return productsToDelete.size();
     }
@@ -24,10 +24,12 @@ public class PsObjectStorageService {
     private String endpointUrl;
 
     private final S3Client s3Client;
+    private final PipelineMetrics pipelineMetrics;
 
     // Внедряем только S3Client через конструктор (без S3Presigner)
-    public PsObjectStorageService(S3Client s3Client) {
+    public PsObjectStorageService(S3Client s3Client, PipelineMetrics pipelineMetrics) {
         this.s3Client = s3Client;
+        this.pipelineMetrics = pipelineMetrics;
         log.info("PsObjectStorageService инициализирован с S3Client.");
     }
 
@@ -62,7 +64,8 @@ public class PsObjectStorageService {
                     .contentType(contentType)
                     .build();
 
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
+            byte[] content = file.getBytes();
+            pipelineMetrics.time("storage.upload", () -> s3Client.putObject(putObjectRequest, RequestBody.fromBytes(content)));
 
             log.info("Изображение успешно загружено в S3: {}", key);
             
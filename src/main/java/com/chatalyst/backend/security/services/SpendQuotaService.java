@@ -0,0 +1,333 @@
+package com.chatalyst.backend.security.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Дневные лимиты расхода токенов и тенге на бота и на отдельный чат.
+ * Перед вызовом модели резервируется оценка расхода; после ответа резерв заменяется фактическим расходом.
+ * Счётчики хранятся в памяти, раз в chat.quota.sync-interval-ms приращения добавляются
+ * в spend_quota_usage, а в ответ приходит общий расход всех экземпляров приложения.
+ * Проверка лимита и резерв выполняются атомарно, поэтому одновременные вызовы на одном экземпляре
+ * лимит не превышают. Превышение возможно на разницу между оценкой и фактическим расходом
+ * и на расход других экземпляров за один интервал синхронизации.
+ */
+@Service
+@Slf4j
+public class SpendQuotaService {
+
+    private static final long BOT_TOTAL = 0L;
+    private static final double MICROS = 1_000_000.0;
+
+    private static final String UPSERT =
+            "INSERT INTO spend_quota_usage (bot_id, chat_id, day, tokens, kzt_micros, updated_at) VALUES (?, ?, ?, ?, ?, now()) " +
+                    "ON CONFLICT (bot_id, chat_id, day) DO UPDATE SET tokens = spend_quota_usage.tokens + EXCLUDED.tokens, " +
+                    "kzt_micros = spend_quota_usage.kzt_micros + EXCLUDED.kzt_micros, updated_at = now() " +
+                    "RETURNING tokens, kzt_micros";
+
+    /**
+     * Лимит исчерпан: вызов модели не выполняется.
+     */
+    public static class QuotaExceededException extends RuntimeException {
+        public QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Резерв под один вызов модели.
+     */
+    public record Reservation(Counter bot, Counter chat, long tokens, long kztMicros) {
+    }
+
+    @Value("${chat.quota.enabled:true}")
+    private boolean enabled;
+
+    // 0 — без ограничения
+    @Value("${chat.quota.bot.daily-tokens:2000000}")
+    private long botDailyTokens;
+
+    @Value("${chat.quota.bot.daily-kzt:5000}")
+    private double botDailyKzt;
+
+    @Value("${chat.quota.chat.daily-tokens:50000}")
+    private long chatDailyTokens;
+
+    @Value("${chat.quota.chat.daily-kzt:150}")
+    private double chatDailyKzt;
+
+    // Счётчики чатов без обращений дольше этого выгружаются из памяти
+    @Value("${chat.quota.idle-evict-ms:3600000}")
+    private long idleEvictMs;
+
+    @Value("${chat.quota.fallback-reply:Сейчас я могу ответить только на простые вопросы о товарах и ценах. Посмотреть каталог магазина «%s» можно командой /catalog.}")
+    private String fallbackReply;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PipelineMetrics pipelineMetrics;
+    private final ConcurrentHashMap<Key, Counter> counters = new ConcurrentHashMap<>();
+
+    public SpendQuotaService(JdbcTemplate jdbcTemplate, PipelineMetrics pipelineMetrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * Резервирует оценку расхода перед вызовом модели.
+     * @param botId ID бота.
+     * @param chatId ID чата.
+     * @param tokens Оценка числа токенов (запрос и ответ).
+     * @param kztCost Оценка стоимости в тенге.
+     * @return Резерв, который нужно подтвердить или отменить; null, если лимиты выключены.
+     * @throws QuotaExceededException если после вызова лимит бота или чата будет превышен.
+     */
+    public Reservation reserve(Long botId, Long chatId, long tokens, double kztCost) {
+        if (!enabled) {
+            return null;
+        }
+        LocalDate today = LocalDate.now();
+        long kztMicros = toMicros(kztCost);
+        while (true) {
+            Counter bot = counter(new Key(botId, BOT_TOTAL, today));
+            Counter chat = counter(new Key(botId, chatId, today));
+            // Счётчики всегда блокируются в порядке бот, затем чат: проверка и резерв по обоим атомарны
+            synchronized (bot) {
+                synchronized (chat) {
+                    if (bot.evicted || chat.evicted) {
+                        // Счётчик выгружен между получением и блокировкой: резерв в нём не попал бы в БД
+                        continue;
+                    }
+                    check(bot, botId, "bot", tokens, kztMicros, botDailyTokens, botDailyKzt);
+                    check(chat, botId, "chat", tokens, kztMicros, chatDailyTokens, chatDailyKzt);
+                    bot.reserve(tokens, kztMicros);
+                    chat.reserve(tokens, kztMicros);
+                    return new Reservation(bot, chat, tokens, kztMicros);
+                }
+            }
+        }
+    }
+
+    /**
+     * Заменяет резерв фактическим расходом.
+     */
+    public void commit(Reservation reservation, long tokens, double kztCost) {
+        if (reservation == null) {
+            return;
+        }
+        long tokensDelta = tokens - reservation.tokens();
+        long kztDelta = toMicros(kztCost) - reservation.kztMicros();
+        reservation.bot().settle(tokensDelta, kztDelta);
+        reservation.chat().settle(tokensDelta, kztDelta);
+    }
+
+    /**
+     * Отменяет резерв, если вызов модели не состоялся.
+     */
+    public void release(Reservation reservation) {
+        if (reservation == null) {
+            return;
+        }
+        reservation.bot().settle(-reservation.tokens(), -reservation.kztMicros());
+        reservation.chat().settle(-reservation.tokens(), -reservation.kztMicros());
+    }
+
+    /**
+     * Проверяет без резервирования, исчерпан ли уже дневной лимит бота или чата.
+     */
+    public boolean isExhausted(Long botId, Long chatId) {
+        if (!enabled) {
+            return false;
+        }
+        LocalDate today = LocalDate.now();
+        return exhausted(counter(new Key(botId, BOT_TOTAL, today)), botDailyTokens, botDailyKzt)
+                || exhausted(counter(new Key(botId, chatId, today)), chatDailyTokens, chatDailyKzt);
+    }
+
+    /**
+     * Шаблонный ответ вместо ответа модели, когда лимит исчерпан.
+     * @param shopName Название магазина.
+     */
+    public String fallbackReply(String shopName) {
+        return String.format(fallbackReply, shopName != null ? shopName : "");
+    }
+
+    /**
+     * Добавляет накопленные приращения в БД и обновляет счётчики общим расходом всех экземпляров.
+     * Счётчики ботов обновляются при каждой синхронизации, чтобы учитывать расход на других экземплярах.
+     * Счётчик с открытыми резервами не выгружается даже после смены суток: подтверждение резерва,
+     * пришедшее после полуночи, попадёт в БД за тот день, когда резерв был сделан.
+     */
+    @Scheduled(fixedDelayString = "${chat.quota.sync-interval-ms:5000}")
+    public void sync() {
+        LocalDate today = LocalDate.now();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Key, Counter> entry : counters.entrySet()) {
+            Key key = entry.getKey();
+            Counter counter = entry.getValue();
+            try {
+                if (counter.hasPending() || (key.chatId() == BOT_TOTAL && key.day().equals(today))) {
+                    sync(key, counter);
+                }
+                boolean stale = !key.day().equals(today) || now - counter.lastAccess > idleEvictMs;
+                if (stale && counter.evictIfIdle()) {
+                    counters.remove(key, counter);
+                }
+            } catch (Exception e) {
+                log.error("Ошибка синхронизации расхода бота {} (чат {}) за {}: {}",
+                        key.botId(), key.chatId(), key.day(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Удаляет счётчики бота.
+     * @param botId ID бота.
+     */
+    public void delete(Long botId) {
+        counters.keySet().removeIf(key -> key.botId().equals(botId));
+        jdbcTemplate.update("DELETE FROM spend_quota_usage WHERE bot_id = ?", botId);
+    }
+
+    private void check(Counter counter, Long botId, String scope, long tokens, long kztMicros,
+                       long tokenLimit, double kztLimit) {
+        boolean tokensExceeded = tokenLimit > 0 && counter.tokens() + tokens > tokenLimit;
+        boolean kztExceeded = kztLimit > 0 && counter.kztMicros() + kztMicros > toMicros(kztLimit);
+        if (tokensExceeded || kztExceeded) {
+            pipelineMetrics.count("chat.quota.exceeded", 1, "bot", pipelineMetrics.botTag(botId), "scope", scope);
+            throw new QuotaExceededException("Дневной лимит " + (tokensExceeded ? "токенов" : "расходов") +
+                    " исчерпан (" + scope + ")");
+        }
+    }
+
+    private static boolean exhausted(Counter counter, long tokenLimit, double kztLimit) {
+        return (tokenLimit > 0 && counter.tokens() >= tokenLimit)
+                || (kztLimit > 0 && counter.kztMicros() >= toMicros(kztLimit));
+    }
+
+    private Counter counter(Key key) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            // Расход, уже записанный в БД (другими экземплярами или до перезапуска), читается вне блокировки карты
+            Counter loaded = new Counter();
+            List<long[]> rows = jdbcTemplate.query(
+                    "SELECT tokens, kzt_micros FROM spend_quota_usage WHERE bot_id = ? AND chat_id = ? AND day = ?",
+                    (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)},
+                    key.botId(), key.chatId(), Date.valueOf(key.day()));
+            if (!rows.isEmpty()) {
+                loaded.syncedTokens = rows.get(0)[0];
+                loaded.syncedKztMicros = rows.get(0)[1];
+            }
+            Counter existing = counters.putIfAbsent(key, loaded);
+            counter = existing != null ? existing : loaded;
+        }
+        counter.lastAccess = System.currentTimeMillis();
+        return counter;
+    }
+
+    private void sync(Key key, Counter counter) {
+        long[] taken = counter.takePending();
+        try {
+            long[] total = jdbcTemplate.queryForObject(UPSERT, (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)},
+                    key.botId(), key.chatId(), Date.valueOf(key.day()), taken[0], taken[1]);
+            counter.setSynced(total[0], total[1]);
+        } catch (RuntimeException e) {
+            counter.restorePending(taken);
+            throw e;
+        }
+    }
+
+    private static long toMicros(double kzt) {
+        return Math.round(kzt * MICROS);
+    }
+
+    private record Key(Long botId, Long chatId, LocalDate day) {
+    }
+
+    /**
+     * Расход за сутки: подтверждённый БД и ещё не синхронизированный.
+     * Все поля, кроме lastAccess, меняются под блокировкой счётчика.
+     */
+    static class Counter {
+        private long pendingTokens;
+        private long pendingKztMicros;
+        private long syncedTokens;
+        private long syncedKztMicros;
+        // Резервы, ещё не подтверждённые и не отменённые: пока они есть, счётчик не выгружается
+        private int openReservations;
+        // Счётчик удалён из карты; новые резервы в нём не делаются
+        private boolean evicted;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        synchronized void reserve(long tokens, long kztMicros) {
+            add(tokens, kztMicros);
+            openReservations++;
+        }
+
+        synchronized void settle(long tokensDelta, long kztDelta) {
+            add(tokensDelta, kztDelta);
+            openReservations--;
+        }
+
+        synchronized long tokens() {
+            return syncedTokens + pendingTokens;
+        }
+
+        synchronized long kztMicros() {
+            return syncedKztMicros + pendingKztMicros;
+        }
+
+        synchronized boolean hasPending() {
+            return pendingTokens != 0 || pendingKztMicros != 0;
+        }
+
+        /**
+         * Забирает несинхронизированный расход. Пока идёт запрос к БД, он учитывается как синхронизированный,
+         * чтобы проверка лимита его не теряла.
+         */
+        synchronized long[] takePending() {
+            long[] taken = {pendingTokens, pendingKztMicros};
+            syncedTokens += pendingTokens;
+            syncedKztMicros += pendingKztMicros;
+            pendingTokens = 0;
+            pendingKztMicros = 0;
+            return taken;
+        }
+
+        synchronized void setSynced(long tokens, long kztMicros) {
+            syncedTokens = tokens;
+            syncedKztMicros = kztMicros;
+        }
+
+        synchronized void restorePending(long[] taken) {
+            syncedTokens -= taken[0];
+            syncedKztMicros -= taken[1];
+            add(taken[0], taken[1]);
+        }
+
+        /**
+         * Помечает счётчик выгруженным, если в нём нет ни несинхронизированного расхода, ни открытых резервов.
+         * @return true, если счётчик можно удалить из карты.
+         */
+        synchronized boolean evictIfIdle() {
+            if (hasPending() || openReservations > 0) {
+                return false;
+            }
+            evicted = true;
+            return true;
+        }
+
+        private void add(long tokens, long kztMicros) {
+            pendingTokens += tokens;
+            pendingKztMicros += kztMicros;
+        }
+    }
+}
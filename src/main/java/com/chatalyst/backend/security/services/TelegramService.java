@@ -2,9 +2,9 @@
 package com.chatalyst.backend.security.services;
 
 import com.chatalyst.backend.Repository.*;
+import com.chatalyst.backend.dto.BotReply;
+import com.chatalyst.backend.dto.ConversationContext;
 import com.chatalyst.backend.model.Bot;
-import com.chatalyst.backend.model.Product;
-import com.chatalyst.backend.model.ChatMessage;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -17,9 +17,9 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * Сервис для взаимодействия с Telegram Bot API.
@@ -34,25 +34,41 @@ public class TelegramService {
     private final ObjectMapper objectMapper;
     private final OpenAIService openAIService;
     private final BotRepository botRepository;
-    private final ProductRepository productRepository;
-    private final ChatMessageRepository chatMessageRepository;
+    private final ChatHistoryCache chatHistoryCache;
     private final PsObjectStorageService psObjectStorageService; // Добавлено: PsObjectStorageService
+    private final ConversationSummaryService conversationSummaryService;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final IntentRouter intentRouter;
+    private final DialogueSketchService dialogueSketchService;
+    private final PipelineMetrics pipelineMetrics;
+    private final SpendQuotaService spendQuotaService;
 
     @Qualifier("telegramWebClient")
     private final WebClient telegramWebClient;
 
     public TelegramService(ObjectMapper objectMapper, OpenAIService openAIService,
-                           BotRepository botRepository, ProductRepository productRepository,
-                           ChatMessageRepository chatMessageRepository,
+                           BotRepository botRepository,
+                           ChatHistoryCache chatHistoryCache,
                            WebClient telegramWebClient,
-                           PsObjectStorageService psObjectStorageService) { // Добавлено в конструктор
+                           PsObjectStorageService psObjectStorageService, // Добавлено в конструктор
+                           ConversationSummaryService conversationSummaryService,
+                           CatalogSnapshotService catalogSnapshotService,
+                           IntentRouter intentRouter,
+                           DialogueSketchService dialogueSketchService,
+                           PipelineMetrics pipelineMetrics,
+                           SpendQuotaService spendQuotaService) {
         this.objectMapper = objectMapper;
         this.openAIService = openAIService;
         this.botRepository = botRepository;
-        this.productRepository = productRepository;
-        this.chatMessageRepository = chatMessageRepository;
+        this.chatHistoryCache = chatHistoryCache;
         this.telegramWebClient = telegramWebClient;
         this.psObjectStorageService = psObjectStorageService; // Инициализация
+        this.conversationSummaryService = conversationSummaryService;
+        this.catalogSnapshotService = catalogSnapshotService;
+        this.intentRouter = intentRouter;
+        this.dialogueSketchService = dialogueSketchService;
+        this.pipelineMetrics = pipelineMetrics;
+        this.spendQuotaService = spendQuotaService;
     }
 
     /**
@@ -86,7 +102,7 @@ public class TelegramService {
     private void handleCommand(String botIdentifier, long chatId, String command) {
         log.info("Processing command for bot {}: {}", botIdentifier, command);
 
-        Optional<Bot> botOptional = botRepository.findByBotIdentifier(botIdentifier);
+        Optional<Bot> botOptional = findBot(botIdentifier);
         if (botOptional.isEmpty()) {
             sendMessage(chatId, "Бот с таким идентификатором не найден.", defaultBotToken);
             return;
@@ -112,18 +128,17 @@ public class TelegramService {
         }
     }
 
+    private Optional<Bot> findBot(String botIdentifier) {
+        return pipelineMetrics.time("chat.bot.lookup", () -> botRepository.findByBotIdentifier(botIdentifier));
+    }
+
     /**
      * Отправляет список доступных каталогов.
      * @param chatId ID чата.
      * @param bot Объект бота.
      */
     private void sendCatalogList(long chatId, Bot bot) {
-        List<String> catalogs = productRepository.findByBot(bot)
-                .stream()
-                .map(Product::getCatalog)
-                .filter(c -> c != null && !c.isBlank())
-                .distinct()
-                .collect(Collectors.toList());
+        List<String> catalogs = catalogSnapshotService.getSnapshot(bot).getCatalogs();
 
         if (catalogs.isEmpty()) {
             sendMessage(chatId, "В магазине нет доступных каталогов.", bot.getAccessToken());
@@ -142,12 +157,7 @@ public class TelegramService {
      * @param catalog Название каталога.
      */
     private void sendSubcategoriesFromCatalog(long chatId, Bot bot, String catalog) {
-        List<String> subcategories = productRepository.findByBotAndCatalog(bot, catalog)
-                .stream()
-                .map(Product::getSubcategory)
-                .filter(s -> s != null && !s.isBlank())
-                .distinct()
-                .collect(Collectors.toList());
+        List<String> subcategories = catalogSnapshotService.getSnapshot(bot).getSubcategories(catalog);
 
         if (subcategories.isEmpty()) {
             sendMessage(chatId, "В каталоге \"" + catalog + "\" нет подкаталогов.", bot.getAccessToken());
@@ -166,20 +176,20 @@ public class TelegramService {
      * @param subcategory Название подкаталога.
      */
     private void sendSubcategoryProducts(long chatId, Bot bot, String subcategory) {
-        List<Product> products = productRepository.findByBotAndSubcategory(bot, subcategory);
+        List<CatalogSnapshot.Item> products = catalogSnapshotService.getSnapshot(bot).getSubcategoryItems(subcategory);
         if (products.isEmpty()) {
             sendMessage(chatId, "В подкаталоге \"" + subcategory + "\" нет товаров.", bot.getAccessToken());
             return;
         }
 
         // Отправляем каждый товар отдельным сообщением с изображением (если есть)
-        for (Product product : products) {
+        for (CatalogSnapshot.Item product : products) {
             String productInfo = String.format("📦 %s\n💰 %s тг.\n📝 %s", 
                     product.getName(), 
                     product.getPrice(), 
-                    product.getDescription() != null ? product.getDescription() : "Описание отсутствует");
+                    !product.getDescription().isEmpty() ? product.getDescription() : "Описание отсутствует");
             
-            if (product.getImageUrl() != null && !product.getImageUrl().isEmpty()) {
+            if (product.hasImage()) {
                 // Отправляем фото с описанием
                 sendPhoto(chatId, product.getImageUrl(), productInfo, bot.getAccessToken());
             } else {
@@ -193,106 +203,121 @@ public class TelegramService {
      * Обрабатывает сообщения пользователя через OpenAI и отправляет ответ с возможными изображениями товаров.
      */
     private void sendOpenAIResponse(String botIdentifier, long chatId, String userMessage) {
-        Optional<Bot> botOptional = botRepository.findByBotIdentifier(botIdentifier);
+        Optional<Bot> botOptional = findBot(botIdentifier);
         if (botOptional.isEmpty()) {
             sendMessage(chatId, "Бот с таким идентификатором не найден.", defaultBotToken);
             return;
         }
         Bot bot = botOptional.get();
 
-        // 1. Получаем историю диалога
-        List<ChatMessage> history = chatMessageRepository.findTop30ByChatIdAndBotIdentifierOrderByIdDesc(chatId, botIdentifier);
+        String botTag = pipelineMetrics.botTag(bot.getId());
 
-        // 2. Формируем список истории для AI
-        List<String[]> chatHistory = history.stream()
-                .map(m -> new String[]{m.getRole(), m.getContent()})
-                .collect(Collectors.toList());
+        // 1. Берём снимок каталога (собирается один раз на версию каталога)
+        CatalogSnapshot catalog = pipelineMetrics.time("chat.catalog.snapshot", () -> catalogSnapshotService.getSnapshot(bot), "bot", botTag);
+
+        // 2. Простые вопросы о ценах и разделах каталога отвечаем сами, без обращения к AI
+        IntentRouter.LocalAnswer localAnswer = intentRouter.route(userMessage, catalog);
+        if (localAnswer != null) {
+            saveExchange(bot, chatId, userMessage, localAnswer.getText());
+            sendMessage(chatId, localAnswer.getText(), bot.getAccessToken());
+            CatalogSnapshot.Item product = localAnswer.getProduct();
+            if (product != null) {
+                sendPhoto(chatId, product.getImageUrl(), product.getName(), bot.getAccessToken());
+            }
+            return;
+        }
+        // Дневной лимит расходов исчерпан: отвечаем шаблоном, не обращаясь к AI
+        if (spendQuotaService.isExhausted(bot.getId(), chatId)) {
+            String reply = spendQuotaService.fallbackReply(bot.getShopName());
+            saveExchange(bot, chatId, userMessage, reply);
+            sendMessage(chatId, reply, bot.getAccessToken());
+            return;
+        }
+        intentRouter.recordLlmTurn();
+
+        // 3. Получаем контекст диалога: сводку старых сообщений и последние реплики
+        ConversationContext context = pipelineMetrics.time("chat.history.load", () -> conversationSummaryService.loadContext(bot, chatId), "bot", botTag);
+
+        // 4. Формируем список истории для AI (в хронологическом порядке)
+        List<String[]> chatHistory = context.getRecentMessages();
 
         // Добавляем текущее сообщение пользователя в конец истории
         chatHistory.add(new String[]{"user", userMessage});
 
-        // 3. Формируем информацию о товарах для AI с URL изображений
-        String productCatalogInfo = productRepository.findByBot(bot).stream()
-                .collect(Collectors.groupingBy(Product::getCatalog))
-                .entrySet().stream()
-                .map(entry -> {
-                    String catalog = entry.getKey();
-                    return "Каталог: " + catalog + "\n" +
-                            entry.getValue().stream()
-                                    .collect(Collectors.groupingBy(Product::getSubcategory))
-                                    .entrySet().stream()
-                                    .map(subEntry -> {
-                                        String subcategory = subEntry.getKey();
-                                        String products = subEntry.getValue().stream()
-                                                .map(p -> {
-                                                    String productInfo = "- " + p.getName() + " (" + p.getPrice() + " тг.): " + p.getDescription();
-                                                    if (p.getImageUrl() != null && !p.getImageUrl().isEmpty()) {
-                                                        productInfo += " [ИЗОБРАЖЕНИЕ: " + p.getImageUrl() + "]";
-                                                    }
-                                                    return productInfo;
-                                                })
-                                                .collect(Collectors.joining("\n"));
-                                        return "  Подкаталог: " + subcategory + "\n" + products;
-                                    }).collect(Collectors.joining("\n"));
-                }).collect(Collectors.joining("\n\n"));
-
-        // 4. Получаем ответ от AI с инструкциями о том, какие товары показать
-        String aiResponse = openAIService.getBotResponseWithImageSupport(chatHistory, productCatalogInfo, bot.getShopName(), botIdentifier, chatId);
-
-        // 5. Сохраняем новое сообщение в историю
-        ChatMessage userMsg = ChatMessage.builder()
-                .chatId(chatId)
-                .botIdentifier(botIdentifier)
-                .role("user")
-                .content(userMessage)
-                .build();
-
-        ChatMessage aiMsg = ChatMessage.builder()
-                .chatId(chatId)
-                .botIdentifier(botIdentifier)
-                .role("assistant")
-                .content(aiResponse)
-                .build();
-
-        chatMessageRepository.save(userMsg);
-        chatMessageRepository.save(aiMsg);
-
-        // 6. Парсим ответ AI и отправляем сообщение с изображениями, если нужно
-        sendAIResponseWithImages(chatId, aiResponse, bot);
+        // 5. Получаем ответ от AI вместе с ID товаров, которые нужно показать
+        BotReply aiReply = openAIService.getBotResponseWithImageSupport(chatHistory, context.getSummary(), catalog, bot.getShopName(), bot, chatId);
+
+        // 6. Сохраняем новое сообщение в историю
+        saveExchange(bot, chatId, userMessage, aiReply.getText());
+
+        // 7. Отправляем ответ и фотографии товаров
+        sendAIResponseWithImages(chatId, aiReply, catalog, bot);
+    }
+
+    /**
+     * Сохраняет сообщение пользователя и ответ бота в историю и при необходимости обновляет сводку диалога.
+     * @param bot Бот.
+     * @param chatId ID чата.
+     * @param userMessage Сообщение пользователя.
+     * @param reply Ответ бота.
+     */
+    private void saveExchange(Bot bot, long chatId, String userMessage, String reply) {
+        dialogueSketchService.record(bot.getId(), chatId);
+
+        // Сообщения попадают в кэш истории сразу, а в БД записываются пачками в фоне
+        boolean needsSummary = chatHistoryCache.append(bot, chatId, userMessage, reply);
+
+        // Старые сообщения сворачиваются в сводку в фоне, не задерживая ответ
+        if (needsSummary) {
+            conversationSummaryService.summarizeIfNeeded(bot, chatId);
+        }
     }
 
     /**
-     * Отправляет ответ AI с изображениями товаров, если они упоминаются в ответе.
+     * Отправляет ответ AI и изображения рекомендованных товаров.
+     * Товары берутся по ID из структурированного ответа; если ответ неструктурированный,
+     * ищутся упоминания названий товаров в тексте.
      * @param chatId ID чата.
-     * @param aiResponse Ответ от AI.
+     * @param aiReply Ответ от AI.
+     * @param catalog Снимок каталога бота.
      * @param bot Объект бота.
      */
-    private void sendAIResponseWithImages(long chatId, String aiResponse, Bot bot) {
-        // Ищем упоминания товаров в ответе AI и отправляем их изображения
-        List<Product> allProducts = productRepository.findByBot(bot);
-        
+    private void sendAIResponseWithImages(long chatId, BotReply aiReply, CatalogSnapshot catalog, Bot bot) {
         // Отправляем основной текстовый ответ
-        sendMessage(chatId, aiResponse, bot.getAccessToken());
-        
-        // Ищем товары, которые упоминаются в ответе AI
-        for (Product product : allProducts) {
-            if (aiResponse.toLowerCase().contains(product.getName().toLowerCase()) && 
-                product.getImageUrl() != null && !product.getImageUrl().isEmpty()) {
-                
-                String productCaption = String.format("📦 %s\n💰 %s тг.\n📝 %s", 
-                        product.getName(), 
-                        product.getPrice(), 
-                        product.getDescription() != null ? product.getDescription() : "");
-                
-                sendPhoto(chatId, product.getImageUrl(), productCaption, bot.getAccessToken());
-                
-                // Небольшая задержка между отправкой изображений
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+        sendMessage(chatId, aiReply.getText(), bot.getAccessToken());
+        if (!catalog.hasImages()) {
+            return;
+        }
+
+        List<CatalogSnapshot.Item> products = new ArrayList<>();
+        if (aiReply.getProductIds() != null) {
+            for (Long productId : aiReply.getProductIds()) {
+                CatalogSnapshot.Item item = catalog.getItem(productId);
+                if (item != null) {
+                    products.add(item);
                 }
             }
+        } else {
+            products.addAll(catalog.findMentions(aiReply.getText()));
+        }
+
+        for (CatalogSnapshot.Item product : products) {
+            if (!product.hasImage()) {
+                continue;
+            }
+            String productCaption = String.format("📦 %s\n💰 %s тг.\n📝 %s",
+                    product.getName(),
+                    product.getPrice(),
+                    product.getDescription());
+
+            sendPhoto(chatId, product.getImageUrl(), productCaption, bot.getAccessToken());
+
+            // Небольшая задержка между отправкой изображений
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -309,6 +334,8 @@ public class TelegramService {
 
         log.info("Sending message to Telegram chat {} with text: '{}' using bot token: {}", chatId, text, botAccessToken);
 
+        long started = System.nanoTime();
+        String outcome = "error";
         try {
             Mono<String> responseMono = telegramWebClient.post()
                     .uri(String.format("/bot%s/sendMessage", botAccessToken))
@@ -320,14 +347,18 @@ public class TelegramService {
             JsonNode rootNode = objectMapper.readTree(responseString);
 
             if (!rootNode.path("ok").asBoolean()) {
+                outcome = "api_error";
                 log.error("Failed to send message to Telegram chat {}: {}", chatId, rootNode.path("description").asText());
             } else {
+                outcome = "success";
                 log.info("Message sent successfully to chat {}", chatId);
             }
         } catch (WebClientResponseException e) {
             log.error("Failed to send message to Telegram chat {}: {} - Response body: {}", chatId, e.getStatusCode(), e.getResponseBodyAsString(), e);
         } catch (Exception e) {
             log.error("Failed to send message to Telegram chat {}: {}", chatId, e.getMessage(), e);
+        } finally {
+            pipelineMetrics.record("telegram.send", System.nanoTime() - started, "method", "sendMessage", "outcome", outcome);
         }
     }
 
@@ -348,6 +379,8 @@ public class TelegramService {
         
         log.info("Sending photo to Telegram chat {} with URL: {} using bot token: {}", chatId, photoUrl, botAccessToken);
         
+        long started = System.nanoTime();
+        String outcome = "error";
         try {
             Mono<String> responseMono = telegramWebClient.post()
                     .uri(String.format("/bot%s/sendPhoto", botAccessToken))
@@ -359,14 +392,18 @@ public class TelegramService {
             JsonNode rootNode = objectMapper.readTree(responseString);
             
             if (!rootNode.path("ok").asBoolean()) {
+                outcome = "api_error";
                 log.error("Failed to send photo to Telegram chat {}: {}", chatId, rootNode.path("description").asText());
             } else {
+                outcome = "success";
                 log.info("Photo sent successfully to chat {}", chatId);
             }
         } catch (WebClientResponseException e) {
             log.error("Failed to send photo to Telegram chat {}: {} - Response body: {}", chatId, e.getStatusCode(), e.getResponseBodyAsString(), e);
         } catch (Exception e) {
             log.error("Failed to send photo to Telegram chat {}: {}", chatId, e.getMessage(), e);
+        } finally {
+            pipelineMetrics.record("telegram.send", System.nanoTime() - started, "method", "sendPhoto", "outcome", outcome);
         }
     }
 }
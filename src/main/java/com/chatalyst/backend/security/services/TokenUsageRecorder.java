@@ -0,0 +1,129 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.OpenAITokenUsageRepository;
+import com.chatalyst.backend.model.OpenAITokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Асинхронная запись статистики токенов.
+ * Записи копятся в очереди в памяти и сбрасываются фоновым писателем пачками (JDBC batch)
+ * каждые N мс или при накоплении M записей, поэтому вызов модели не ждёт базу данных.
+ * При остановке приложения очередь сбрасывается полностью.
+ */
+@Component
+@Slf4j
+public class TokenUsageRecorder {
+
+    @Value("${openai.usage.batch-size:200}")
+    private int batchSize;
+
+    @Value("${openai.usage.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private final OpenAITokenUsageRepository tokenUsageRepository;
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
+    // Не даёт запускать несколько досрочных сбросов одновременно
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private BlockingDeque<OpenAITokenUsage> queue;
+    private Counter flushedCounter;
+    private Counter droppedCounter;
+
+    public TokenUsageRecorder(OpenAITokenUsageRepository tokenUsageRepository,
+                              @Qualifier("chatTaskExecutor") Executor executor,
+                              MeterRegistry meterRegistry) {
+        this.tokenUsageRepository = tokenUsageRepository;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        queue = new LinkedBlockingDeque<>(queueCapacity);
+        flushedCounter = meterRegistry.counter("openai.usage.flushed");
+        droppedCounter = meterRegistry.counter("openai.usage.dropped");
+        Gauge.builder("openai.usage.queue.size", this, r -> r.queue.size()).register(meterRegistry);
+    }
+
+    /**
+     * Ставит запись в очередь на сохранение.
+     * Если очередь переполнена (база недоступна или не успевает), сброс выполняется в текущем потоке.
+     * @param usage Статистика одного вызова модели.
+     */
+    public void record(OpenAITokenUsage usage) {
+        if (!queue.offerLast(usage)) {
+            flush();
+            if (!queue.offerLast(usage)) {
+                droppedCounter.increment();
+                log.error("Token usage queue is full, dropping record for bot {}", usage.getBotId());
+                return;
+            }
+        }
+        if (queue.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    flush();
+                } finally {
+                    flushScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Сбрасывает накопленные записи в базу пачками по batchSize строк.
+     */
+    @Scheduled(fixedDelayString = "${openai.usage.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        List<OpenAITokenUsage> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            try {
+                tokenUsageRepository.saveAll(batch);
+                flushedCounter.increment(batch.size());
+            } catch (Exception e) {
+                log.error("Failed to save {} token usage records, will retry: {}", batch.size(), e.getMessage(), e);
+                requeue(batch);
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+        if (!queue.isEmpty()) {
+            log.error("{} token usage records were not saved on shutdown", queue.size());
+        }
+    }
+
+    private void requeue(List<OpenAITokenUsage> batch) {
+        // Возвращаем в начало очереди в исходном порядке; что не поместилось — теряется
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            OpenAITokenUsage usage = batch.get(i);
+            usage.setId(null);
+            if (!queue.offerFirst(usage)) {
+                droppedCounter.increment(i + 1);
+                log.error("Token usage queue is full, dropping {} records", i + 1);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.model.RollupGranularity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Свёртка openaitoken_usage в поминутные, почасовые и посуточные корзины token_usage_rollup.
+ * Закрытые часы (старше chat.token-usage.rollup.lag-minutes) пересчитываются целиком
+ * и записываются с заменой, поэтому повторный запуск безопасен. Несколько последних часов
+ * пересчитываются заново, чтобы учесть записи, сохранённые с опозданием.
+ * Граница обработанного хранится в rollup_watermark. Поминутные корзины хранятся
+ * chat.token-usage.rollup.minute-retention-days и нужны только для графиков за короткий период.
+ */
+@Service
+@Slf4j
+public class TokenUsageRollupService {
+
+    public static final String WATERMARK = "token_usage_rollup";
+
+    // Ключ pg_advisory_lock: свёртку выполняет один экземпляр приложения за раз
+    private static final long LOCK_KEY = 0x544F4B524F4C4CL; // "TOKROLL"
+
+    private static final String COLUMNS =
+            "bot_id, granularity, bucket_start, requests, prompt_tokens, completion_tokens, total_tokens, usd_cost, kzt_cost";
+    private static final String ON_CONFLICT =
+            " ON CONFLICT (bot_id, granularity, bucket_start) DO UPDATE SET requests = EXCLUDED.requests, " +
+                    "prompt_tokens = EXCLUDED.prompt_tokens, completion_tokens = EXCLUDED.completion_tokens, " +
+                    "total_tokens = EXCLUDED.total_tokens, usd_cost = EXCLUDED.usd_cost, kzt_cost = EXCLUDED.kzt_cost";
+
+    private static final String ROLLUP_HOURS = rollupFromUsage(RollupGranularity.HOUR);
+    private static final String ROLLUP_MINUTES = rollupFromUsage(RollupGranularity.MINUTE);
+
+    // Сутки пересчитываются из всех своих часов, поэтому частично обработанные сутки дополняются при следующем запуске
+    private static final String ROLLUP_DAYS =
+            "INSERT INTO token_usage_rollup (" + COLUMNS + ") " +
+                    "SELECT bot_id, 'DAY', date_trunc('day', bucket_start), SUM(requests), SUM(prompt_tokens), " +
+                    "SUM(completion_tokens), SUM(total_tokens), SUM(usd_cost), SUM(kzt_cost) " +
+                    "FROM token_usage_rollup WHERE granularity = 'HOUR' AND bucket_start >= ? AND bucket_start < ? " +
+                    "GROUP BY bot_id, date_trunc('day', bucket_start)" + ON_CONFLICT;
+
+    // Запись моложе этого может ещё находиться в очереди TokenUsageRecorder
+    @Value("${chat.token-usage.rollup.lag-minutes:5}")
+    private long lagMinutes;
+
+    @Value("${chat.token-usage.rollup.lookback-hours:1}")
+    private long lookbackHours;
+
+    @Value("${chat.token-usage.rollup.minute-retention-days:7}")
+    private long minuteRetentionDays;
+
+    // Сколько часов истории обрабатывает одна транзакция при первичном заполнении
+    @Value("${chat.token-usage.rollup.chunk-hours:168}")
+    private long chunkHours;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public TokenUsageRollupService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(initialDelayString = "${chat.token-usage.rollup.initial-delay-ms:30000}",
+            fixedDelayString = "${chat.token-usage.rollup.interval-ms:300000}")
+    public void rollup() {
+        try {
+            LocalDateTime until = LocalDateTime.now().minusMinutes(lagMinutes).truncatedTo(ChronoUnit.HOURS);
+            LocalDateTime from = start();
+            if (from == null) {
+                return;
+            }
+            jdbcTemplate.update("DELETE FROM token_usage_rollup WHERE granularity = 'MINUTE' AND bucket_start < ?",
+                    Timestamp.valueOf(minuteRetentionStart()));
+            while (from.isBefore(until)) {
+                LocalDateTime chunkEnd = min(from.plusHours(chunkHours), until);
+                if (!rollup(from, chunkEnd)) {
+                    return;
+                }
+                from = chunkEnd;
+            }
+        } catch (Exception e) {
+            log.error("Ошибка свёртки статистики токенов: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Граница обработанного: до неё данные уже в token_usage_rollup. null — исходных данных ещё нет.
+     */
+    public LocalDateTime getWatermark() {
+        List<Timestamp> rows = jdbcTemplate.queryForList(
+                "SELECT processed_until FROM rollup_watermark WHERE name = ?", Timestamp.class, WATERMARK);
+        return rows.isEmpty() || rows.get(0) == null ? null : rows.get(0).toLocalDateTime();
+    }
+
+    /**
+     * @return С какого момента хранятся поминутные корзины.
+     */
+    public LocalDateTime minuteRetentionStart() {
+        return LocalDateTime.now().minusDays(minuteRetentionDays).truncatedTo(ChronoUnit.HOURS);
+    }
+
+    /**
+     * Удаляет свёрнутую статистику бота.
+     * @param botId ID бота.
+     */
+    public void delete(Long botId) {
+        jdbcTemplate.update("DELETE FROM token_usage_rollup WHERE bot_id = ?", botId);
+    }
+
+    private LocalDateTime start() {
+        LocalDateTime watermark = getWatermark();
+        if (watermark != null) {
+            return watermark.minusHours(lookbackHours);
+        }
+        Timestamp first = jdbcTemplate.queryForObject("SELECT MIN(\"timestamp\") FROM openaitoken_usage", Timestamp.class);
+        return first != null ? first.toLocalDateTime().truncatedTo(ChronoUnit.HOURS) : null;
+    }
+
+    /**
+     * Пересчитывает часы [from, to) и сутки, в которые они попадают, и сдвигает границу.
+     * @return false, если свёртку сейчас выполняет другой экземпляр.
+     */
+    private boolean rollup(LocalDateTime from, LocalDateTime to) {
+        Boolean done = transactionTemplate.execute(status -> {
+            Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_KEY);
+            if (!Boolean.TRUE.equals(locked)) {
+                return false;
+            }
+            int hours = jdbcTemplate.update(ROLLUP_HOURS, Timestamp.valueOf(from), Timestamp.valueOf(to));
+            LocalDateTime minutesFrom = max(from, minuteRetentionStart());
+            if (minutesFrom.isBefore(to)) {
+                jdbcTemplate.update(ROLLUP_MINUTES, Timestamp.valueOf(minutesFrom), Timestamp.valueOf(to));
+            }
+            int days = jdbcTemplate.update(ROLLUP_DAYS,
+                    Timestamp.valueOf(from.truncatedTo(ChronoUnit.DAYS)), Timestamp.valueOf(to));
+            // Граница только растёт: пересчёт последних часов её не сдвигает назад
+            jdbcTemplate.update("INSERT INTO rollup_watermark (name, processed_until) VALUES (?, ?) " +
+                    "ON CONFLICT (name) DO UPDATE SET processed_until = GREATEST(rollup_watermark.processed_until, EXCLUDED.processed_until)",
+                    WATERMARK, Timestamp.valueOf(to));
+            log.debug("Статистика токенов свёрнута за [{}, {}): {} часовых и {} суточных корзин", from, to, hours, days);
+            return true;
+        });
+        return Boolean.TRUE.equals(done);
+    }
+
+    private static String rollupFromUsage(RollupGranularity granularity) {
+        String bucket = "date_trunc('" + granularity.getTruncUnit() + "', \"timestamp\")";
+        return "INSERT INTO token_usage_rollup (" + COLUMNS + ") " +
+                "SELECT bot_id, '" + granularity.name() + "', " + bucket + ", COUNT(*), COALESCE(SUM(prompt_tokens), 0), " +
+                "COALESCE(SUM(completion_tokens), 0), COALESCE(SUM(total_tokens), 0), COALESCE(SUM(usd_cost), 0), COALESCE(SUM(kzt_cost), 0) " +
+                "FROM openaitoken_usage WHERE \"timestamp\" >= ? AND \"timestamp\" < ? AND bot_id IS NOT NULL " +
+                "GROUP BY bot_id, " + bucket + ON_CONFLICT;
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -1,28 +1,286 @@
 package com.chatalyst.backend.security.services;
 
-import com.chatalyst.backend.Repository.OpenAITokenUsageRepository;
+import com.chatalyst.backend.Repository.BotRepository;
+import com.chatalyst.backend.dto.TokenUsagePointDTO;
+import com.chatalyst.backend.dto.TokenUsageSeriesDTO;
 import com.chatalyst.backend.dto.TokenUsageStatsDTO;
-import com.chatalyst.backend.model.OpenAITokenUsage;
+import com.chatalyst.backend.model.Bot;
+import com.chatalyst.backend.model.RollupGranularity;
+import com.chatalyst.backend.util.Lttb;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Статистика расхода токенов ботом за период.
+ * Период раскладывается на целые сутки и часы, которые читаются из token_usage_rollup,
+ * и неполные часы по краям и после границы свёртки, которые суммируются по openaitoken_usage.
+ * Все части считаются одним запросом; объём читаемых строк не зависит от длины истории.
+ * Временные ряды для графиков строятся так же и прореживаются до запрошенного числа точек.
+ */
 @Service
 @RequiredArgsConstructor
 public class TokenUsageService {
 
-    private final OpenAITokenUsageRepository tokenUsageRepository;
+    private static final String ROLLUP_PART =
+            "SELECT requests, prompt_tokens, completion_tokens, usd_cost, kzt_cost FROM token_usage_rollup " +
+                    "WHERE bot_id = ? AND granularity = ?";
+    private static final String RAW_PART =
+            "SELECT COUNT(*) AS requests, COALESCE(SUM(prompt_tokens), 0) AS prompt_tokens, " +
+                    "COALESCE(SUM(completion_tokens), 0) AS completion_tokens, COALESCE(SUM(usd_cost), 0) AS usd_cost, " +
+                    "COALESCE(SUM(kzt_cost), 0) AS kzt_cost FROM openaitoken_usage WHERE bot_id = ?";
 
-    public TokenUsageStatsDTO getBotTokenUsageStats(String botIdentifier) {
-        List<OpenAITokenUsage> usages = tokenUsageRepository.findByBotIdentifier(botIdentifier);
+    // Сколько корзин может содержать ряд до прореживания
+    @Value("${chat.token-usage.series.max-buckets:20000}")
+    private int maxBuckets;
 
-        long totalRequests = usages.size();
-        long totalPromptTokens = usages.stream().mapToLong(OpenAITokenUsage::getPromptTokens).sum();
-        long totalCompletionTokens = usages.stream().mapToLong(OpenAITokenUsage::getCompletionTokens).sum();
-        double totalUsdCost = usages.stream().mapToDouble(OpenAITokenUsage::getUsdCost).sum();
-        double totalKztCost = usages.stream().mapToDouble(OpenAITokenUsage::getKztCost).sum();
+    @Value("${chat.token-usage.series.max-points:2000}")
+    private int maxPoints;
 
-        return new TokenUsageStatsDTO(botIdentifier, totalRequests, totalPromptTokens, totalCompletionTokens, totalUsdCost, totalKztCost);
+    private final BotRepository botRepository;
+    private final TokenUsageRollupService tokenUsageRollupService;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Возвращает расход токенов бота за период [from, to).
+     * @param botIdentifier Идентификатор бота.
+     * @param from Начало периода (включительно), null — с начала истории.
+     * @param to Конец периода (не включительно), null — по текущий момент.
+     * @return Число запросов, токены и стоимость.
+     */
+    public TokenUsageStatsDTO getBotTokenUsageStats(String botIdentifier, LocalDateTime from, LocalDateTime to) {
+        Long botId = botRepository.findByBotIdentifier(botIdentifier).map(Bot::getId).orElse(null);
+        if (botId == null || (from != null && to != null && !from.isBefore(to))) {
+            return new TokenUsageStatsDTO(botIdentifier, 0L, 0L, 0L, 0.0, 0.0, from, to);
+        }
+
+        Query query = new Query(botId);
+        LocalDateTime watermark = tokenUsageRollupService.getWatermark();
+        if (watermark == null) {
+            query.raw(from, to);
+        } else {
+            LocalDateTime rolledTo = to == null || to.isAfter(watermark) ? watermark : to;
+            if (from == null || from.isBefore(rolledTo)) {
+                addRolled(query, from, rolledTo);
+            }
+            // Данные после границы свёртки: не больше нескольких часов
+            LocalDateTime tailFrom = from == null || from.isBefore(watermark) ? watermark : from;
+            if (to == null || tailFrom.isBefore(to)) {
+                query.raw(tailFrom, to);
+            }
+        }
+
+        return jdbcTemplate.queryForObject("SELECT COALESCE(SUM(requests), 0), COALESCE(SUM(prompt_tokens), 0), " +
+                        "COALESCE(SUM(completion_tokens), 0), COALESCE(SUM(usd_cost), 0), COALESCE(SUM(kzt_cost), 0) " +
+                        "FROM (" + String.join(" UNION ALL ", query.parts) + ") parts",
+                (rs, i) -> new TokenUsageStatsDTO(botIdentifier, rs.getLong(1), rs.getLong(2), rs.getLong(3),
+                        rs.getDouble(4), rs.getDouble(5), from, to),
+                query.args.toArray());
+    }
+
+    /**
+     * Возвращает временной ряд расхода токенов бота, прореженный до points точек.
+     * Корзины читаются из token_usage_rollup, хвост после границы свёртки группируется по openaitoken_usage.
+     * Пустые корзины заполняются нулями.
+     * @param botIdentifier Идентификатор бота.
+     * @param granularity Размер корзины.
+     * @param from Начало периода (включительно), округляется вниз до корзины.
+     * @param to Конец периода (не включительно), округляется вверх до корзины; null — текущий момент.
+     * @param points Сколько точек вернуть.
+     * @param downsampling lttb — сохранить форму графика по стоимости; max — максимум каждого показателя в группе корзин.
+     * @return Ряд точек в порядке времени.
+     */
+    public TokenUsageSeriesDTO getBotTokenUsageSeries(String botIdentifier, RollupGranularity granularity,
+                                                      LocalDateTime from, LocalDateTime to, int points, String downsampling) {
+        if (!"lttb".equalsIgnoreCase(downsampling) && !"max".equalsIgnoreCase(downsampling)) {
+            throw new RuntimeException("Неизвестный способ прореживания: " + downsampling + ". Допустимые значения: lttb, max");
+        }
+        if (points < 3 || points > maxPoints) {
+            throw new RuntimeException("Число точек должно быть от 3 до " + maxPoints);
+        }
+        ChronoUnit unit = granularity.getUnit();
+        LocalDateTime start = from.truncatedTo(unit);
+        LocalDateTime end = ceil(to != null ? to : LocalDateTime.now(), unit);
+        if (!start.isBefore(end)) {
+            throw new RuntimeException("Начало периода должно быть раньше его конца");
+        }
+        long bucketCount = unit.between(start, end);
+        if (bucketCount > maxBuckets) {
+            throw new RuntimeException("Слишком длинный период для корзин " + granularity.getTruncUnit() +
+                    ": " + bucketCount + " корзин, допустимо " + maxBuckets);
+        }
+        if (granularity == RollupGranularity.MINUTE && start.isBefore(tokenUsageRollupService.minuteRetentionStart())) {
+            throw new RuntimeException("Поминутная статистика хранится только за последние дни, выберите корзины hour или day");
+        }
+
+        Long botId = botRepository.findByBotIdentifier(botIdentifier)
+                .map(Bot::getId)
+                .orElseThrow(() -> new RuntimeException("Бот не найден: " + botIdentifier));
+        Map<LocalDateTime, TokenUsagePointDTO> buckets = loadBuckets(botId, granularity, start, end);
+
+        List<TokenUsagePointDTO> series = new ArrayList<>((int) bucketCount);
+        for (LocalDateTime bucket = start; bucket.isBefore(end); bucket = bucket.plus(1, unit)) {
+            TokenUsagePointDTO point = buckets.get(bucket);
+            series.add(point != null ? point : new TokenUsagePointDTO(bucket, 0, 0, 0, 0, 0));
+        }
+
+        String applied = "none";
+        List<TokenUsagePointDTO> result = series;
+        if (series.size() > points) {
+            applied = downsampling.toLowerCase();
+            result = "max".equals(applied)
+                    ? bucketMax(series, points)
+                    : Lttb.downsample(series, points, p -> p.getBucketStart().toEpochSecond(ZoneOffset.UTC), TokenUsagePointDTO::getKztCost);
+        }
+        return new TokenUsageSeriesDTO(botIdentifier, granularity.getTruncUnit(), start, end, series.size(), applied, result);
+    }
+
+    private Map<LocalDateTime, TokenUsagePointDTO> loadBuckets(Long botId, RollupGranularity granularity,
+                                                               LocalDateTime start, LocalDateTime end) {
+        Map<LocalDateTime, TokenUsagePointDTO> buckets = new HashMap<>();
+        LocalDateTime watermark = tokenUsageRollupService.getWatermark();
+        LocalDateTime tailFrom = start;
+        if (watermark != null) {
+            jdbcTemplate.query("SELECT bucket_start, requests, prompt_tokens, completion_tokens, usd_cost, kzt_cost " +
+                            "FROM token_usage_rollup WHERE bot_id = ? AND granularity = ? AND bucket_start >= ? AND bucket_start < ?",
+                    rs -> {
+                        addTo(buckets, rs.getTimestamp(1).toLocalDateTime(), rs.getLong(2), rs.getLong(3), rs.getLong(4),
+                                rs.getDouble(5), rs.getDouble(6));
+                    },
+                    botId, granularity.name(), Timestamp.valueOf(start), Timestamp.valueOf(end));
+            tailFrom = watermark.isAfter(start) ? watermark : start;
+        }
+        if (tailFrom.isBefore(end)) {
+            // Сутки, на которые приходится граница, уже частично свёрнуты: хвост добавляется к ним
+            String bucket = "date_trunc('" + granularity.getTruncUnit() + "', \"timestamp\")";
+            jdbcTemplate.query("SELECT " + bucket + ", COUNT(*), COALESCE(SUM(prompt_tokens), 0), COALESCE(SUM(completion_tokens), 0), " +
+                            "COALESCE(SUM(usd_cost), 0), COALESCE(SUM(kzt_cost), 0) FROM openaitoken_usage " +
+                            "WHERE bot_id = ? AND \"timestamp\" >= ? AND \"timestamp\" < ? GROUP BY " + bucket,
+                    rs -> {
+                        addTo(buckets, rs.getTimestamp(1).toLocalDateTime(), rs.getLong(2), rs.getLong(3), rs.getLong(4),
+                                rs.getDouble(5), rs.getDouble(6));
+                    },
+                    botId, Timestamp.valueOf(tailFrom), Timestamp.valueOf(end));
+        }
+        return buckets;
+    }
+
+    private static void addTo(Map<LocalDateTime, TokenUsagePointDTO> buckets, LocalDateTime bucket, long requests,
+                              long promptTokens, long completionTokens, double usdCost, double kztCost) {
+        TokenUsagePointDTO point = buckets.computeIfAbsent(bucket, b -> new TokenUsagePointDTO(b, 0, 0, 0, 0, 0));
+        point.setRequests(point.getRequests() + requests);
+        point.setPromptTokens(point.getPromptTokens() + promptTokens);
+        point.setCompletionTokens(point.getCompletionTokens() + completionTokens);
+        point.setUsdCost(point.getUsdCost() + usdCost);
+        point.setKztCost(point.getKztCost() + kztCost);
+    }
+
+    /**
+     * Делит ряд на points групп подряд идущих корзин и берёт максимум каждого показателя в группе.
+     */
+    private static List<TokenUsagePointDTO> bucketMax(List<TokenUsagePointDTO> series, int points) {
+        List<TokenUsagePointDTO> result = new ArrayList<>(points);
+        for (int group = 0; group < points; group++) {
+            int from = (int) ((long) group * series.size() / points);
+            int to = (int) ((long) (group + 1) * series.size() / points);
+            TokenUsagePointDTO max = new TokenUsagePointDTO(series.get(from).getBucketStart(), 0, 0, 0, 0, 0);
+            for (int i = from; i < to; i++) {
+                TokenUsagePointDTO point = series.get(i);
+                max.setRequests(Math.max(max.getRequests(), point.getRequests()));
+                max.setPromptTokens(Math.max(max.getPromptTokens(), point.getPromptTokens()));
+                max.setCompletionTokens(Math.max(max.getCompletionTokens(), point.getCompletionTokens()));
+                max.setUsdCost(Math.max(max.getUsdCost(), point.getUsdCost()));
+                max.setKztCost(Math.max(max.getKztCost(), point.getKztCost()));
+            }
+            result.add(max);
+        }
+        return result;
+    }
+
+    /**
+     * Раскладывает уже свёрнутый период [from, to) на неполные часы по краям, целые часы и целые сутки.
+     * @param from Начало периода, null — с начала истории.
+     * @param to Конец периода, не позже границы свёртки.
+     */
+    private void addRolled(Query query, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime firstHour = from == null ? null : ceil(from, ChronoUnit.HOURS);
+        LocalDateTime lastHour = to.truncatedTo(ChronoUnit.HOURS);
+        if (firstHour != null && !firstHour.isBefore(lastHour)) {
+            // Период не содержит ни одного целого часа
+            query.raw(from, to);
+            return;
+        }
+        if (from != null && from.isBefore(firstHour)) {
+            query.raw(from, firstHour);
+        }
+        if (lastHour.isBefore(to)) {
+            query.raw(lastHour, to);
+        }
+
+        LocalDateTime firstDay = firstHour == null ? null : ceil(firstHour, ChronoUnit.DAYS);
+        LocalDateTime lastDay = lastHour.truncatedTo(ChronoUnit.DAYS);
+        if (firstDay != null && !firstDay.isBefore(lastDay)) {
+            query.rolled(RollupGranularity.HOUR, firstHour, lastHour);
+            return;
+        }
+        if (firstHour != null && firstHour.isBefore(firstDay)) {
+            query.rolled(RollupGranularity.HOUR, firstHour, firstDay);
+        }
+        query.rolled(RollupGranularity.DAY, firstDay, lastDay);
+        if (lastDay.isBefore(lastHour)) {
+            query.rolled(RollupGranularity.HOUR, lastDay, lastHour);
+        }
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+
+    /**
+     * Части запроса, объединяемые через UNION ALL, и их параметры.
+     */
+    private static class Query {
+        private final Long botId;
+        private final List<String> parts = new ArrayList<>();
+        private final List<Object> args = new ArrayList<>();
+
+        Query(Long botId) {
+            this.botId = botId;
+        }
+
+        void rolled(RollupGranularity granularity, LocalDateTime from, LocalDateTime to) {
+            args.add(botId);
+            args.add(granularity.name());
+            parts.add(ROLLUP_PART + range("bucket_start", from, to));
+        }
+
+        void raw(LocalDateTime from, LocalDateTime to) {
+            args.add(botId);
+            parts.add(RAW_PART + range("\"timestamp\"", from, to));
+        }
+
+        private String range(String column, LocalDateTime from, LocalDateTime to) {
+            StringBuilder sql = new StringBuilder();
+            if (from != null) {
+                sql.append(" AND ").append(column).append(" >= ?");
+                args.add(Timestamp.valueOf(from));
+            }
+            if (to != null) {
+                sql.append(" AND ").append(column).append(" < ?");
+                args.add(Timestamp.valueOf(to));
+            }
+            return sql.toString();
+        }
     }
-}
\ No newline at end of file
+}
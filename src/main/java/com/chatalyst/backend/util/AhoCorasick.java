@@ -0,0 +1,123 @@
+// src/main/java/com/chatalyst/backend/util/AhoCorasick.java
+package com.chatalyst.backend.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Автомат Ахо–Корасик: находит все вхождения набора строк в тексте за один линейный проход.
+ * После построения объект неизменяем и безопасен для чтения из нескольких потоков.
+ * @param <T> Тип значения, связанного со строкой-образцом.
+ */
+public class AhoCorasick<T> {
+
+    private static final int ROOT = 0;
+
+    // Переходы всех узлов в одной таблице: ключ — (узел << 16) | символ
+    private final Map<Long, Integer> transitions = new HashMap<>();
+    // Значения образцов, заканчивающихся в узле (null, если узел не конечный)
+    private final List<List<T>> values = new ArrayList<>();
+    private final int[] fail;
+    // Ближайший конечный узел по цепочке fail-ссылок (-1, если его нет)
+    private final int[] outputLink;
+
+    /**
+     * Строит автомат.
+     * @param patterns Образцы и связанные с ними значения; пустые образцы игнорируются.
+     */
+    public AhoCorasick(Map<String, List<T>> patterns) {
+        List<Integer> parents = new ArrayList<>();
+        List<Character> edges = new ArrayList<>();
+        List<List<Integer>> children = new ArrayList<>();
+        values.add(null);
+        parents.add(ROOT);
+        edges.add('\0');
+        children.add(new ArrayList<>());
+
+        patterns.forEach((pattern, patternValues) -> {
+            if (pattern.isEmpty()) {
+                return;
+            }
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                Integer next = transitions.get(key(node, c));
+                if (next == null) {
+                    next = values.size();
+                    values.add(null);
+                    parents.add(node);
+                    edges.add(c);
+                    children.add(new ArrayList<>());
+                    children.get(node).add(next);
+                    transitions.put(key(node, c), next);
+                }
+                node = next;
+            }
+            if (values.get(node) == null) {
+                values.set(node, new ArrayList<>());
+            }
+            values.get(node).addAll(patternValues);
+        });
+
+        int size = values.size();
+        fail = new int[size];
+        outputLink = new int[size];
+        outputLink[ROOT] = -1;
+
+        // Обход в ширину: fail-ссылка узла всегда ведёт в узел меньшей глубины
+        List<Integer> queue = new ArrayList<>(children.get(ROOT));
+        for (int head = 0; head < queue.size(); head++) {
+            int node = queue.get(head);
+            int parent = parents.get(node);
+            char c = edges.get(node);
+            if (parent == ROOT) {
+                fail[node] = ROOT;
+            } else {
+                int state = fail[parent];
+                Integer next = transitions.get(key(state, c));
+                while (next == null && state != ROOT) {
+                    state = fail[state];
+                    next = transitions.get(key(state, c));
+                }
+                fail[node] = next != null ? next : ROOT;
+            }
+            int target = fail[node];
+            outputLink[node] = values.get(target) != null ? target : outputLink[target];
+            queue.addAll(children.get(node));
+        }
+    }
+
+    /**
+     * Находит значения всех образцов, входящих в текст.
+     * @param text Текст (в той же нормализации, что и образцы).
+     * @return Значения без повторов в порядке окончания вхождений.
+     */
+    public List<T> findAll(String text) {
+        Set<T> found = new LinkedHashSet<>();
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next = transitions.get(key(state, c));
+            while (next == null && state != ROOT) {
+                state = fail[state];
+                next = transitions.get(key(state, c));
+            }
+            state = next != null ? next : ROOT;
+
+            int output = values.get(state) != null ? state : outputLink[state];
+            while (output > 0) {
+                found.addAll(values.get(output));
+                output = outputLink[output];
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static long key(int node, char c) {
+        return ((long) node << 16) | c;
+    }
+}
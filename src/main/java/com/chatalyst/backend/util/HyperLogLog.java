@@ -0,0 +1,155 @@
+package com.chatalyst.backend.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Вероятностная оценка числа различных значений (HyperLogLog).
+ * При точности 14 занимает 16 КБ и ошибается в среднем на 0,8% независимо от числа значений.
+ * Оценки объединяются без потерь: объединение оценок двух множеств равно оценке их объединения,
+ * поэтому оценки по дням и с разных экземпляров приложения можно складывать.
+ * Не потокобезопасен: вызывающий код синхронизирует доступ сам.
+ */
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Точность HyperLogLog должна быть от 4 до 18: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Учитывает значение.
+     * @param value Значение (например, ID чата).
+     * @return true, если оценка могла измениться.
+     */
+    public boolean add(long value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - precision));
+        // Ранг — позиция первой единицы в оставшихся битах; ограничитель не даёт ранг больше 64 - precision + 1
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Добавляет к оценке все значения другой оценки.
+     * @param other Оценка той же точности.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Нельзя объединить оценки разной точности: " + precision + " и " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return Оценка числа различных значений.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Double.longBitsToDouble((1023L - register) << 52); // 2^-register
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // На малых множествах точнее линейный подсчёт по пустым регистрам
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        System.arraycopy(registers, 0, copy.registers, 0, registers.length);
+        return copy;
+    }
+
+    /**
+     * Сериализует оценку: версия, точность и сжатые регистры.
+     * Оценка небольшого множества почти вся состоит из нулей и сжимается до сотен байт.
+     */
+    public byte[] toBytes() {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(registers);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            out.write(FORMAT_VERSION);
+            out.write(precision);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != FORMAT_VERSION) {
+            throw new RuntimeException("Неизвестный формат оценки HyperLogLog");
+        }
+        HyperLogLog hll = new HyperLogLog(bytes[1]);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 2, bytes.length - 2);
+            int read = 0;
+            while (read < hll.registers.length && !inflater.finished()) {
+                int n = inflater.inflate(hll.registers, read, hll.registers.length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != hll.registers.length) {
+                throw new RuntimeException("Повреждённая оценка HyperLogLog");
+            }
+            return hll;
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Повреждённая оценка HyperLogLog: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Финальное перемешивание MurmurHash3: последовательные ID чатов дают равномерные хеши
+    private static long hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
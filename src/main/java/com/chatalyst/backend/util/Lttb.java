@@ -0,0 +1,69 @@
+package com.chatalyst.backend.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Прореживание временного ряда методом Largest-Triangle-Three-Buckets.
+ * Ряд делится на threshold - 2 корзины, и из каждой берётся точка, образующая треугольник наибольшей площади
+ * с точкой, выбранной в предыдущей корзине, и средним следующей. Пики и провалы сохраняются,
+ * поэтому прореженный график выглядит почти так же, как исходный.
+ */
+public final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * @param data Точки в порядке возрастания x.
+     * @param threshold Сколько точек оставить (не меньше 3).
+     * @param x Координата по оси времени.
+     * @param y Значение.
+     * @return Подмножество исходных точек; первая и последняя сохраняются.
+     */
+    public static <T> List<T> downsample(List<T> data, int threshold, ToDoubleFunction<T> x, ToDoubleFunction<T> y) {
+        int size = data.size();
+        if (threshold >= size || threshold < 3) {
+            return data;
+        }
+        List<T> sampled = new ArrayList<>(threshold);
+        double every = (double) (size - 2) / (threshold - 2);
+
+        int selected = 0;
+        sampled.add(data.get(0));
+        for (int i = 0; i < threshold - 2; i++) {
+            // Среднее следующей корзины — третья вершина треугольника
+            int nextStart = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += x.applyAsDouble(data.get(j));
+                avgY += y.applyAsDouble(data.get(j));
+            }
+            int nextCount = nextEnd - nextStart;
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            int start = (int) Math.floor(i * every) + 1;
+            int end = (int) Math.floor((i + 1) * every) + 1;
+            double ax = x.applyAsDouble(data.get(selected));
+            double ay = y.applyAsDouble(data.get(selected));
+            double maxArea = -1;
+            int next = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - avgX) * (y.applyAsDouble(data.get(j)) - ay)
+                        - (ax - x.applyAsDouble(data.get(j))) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled.add(data.get(next));
+            selected = next;
+        }
+        sampled.add(data.get(size - 1));
+        return sampled;
+    }
+}
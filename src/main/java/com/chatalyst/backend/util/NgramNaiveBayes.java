@@ -0,0 +1,132 @@
+// src/main/java/com/chatalyst/backend/util/NgramNaiveBayes.java
+package com.chatalyst.backend.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Мультиномиальный наивный байесовский классификатор коротких текстов.
+ * Признаки — слова и символьные триграммы слов, поэтому он устойчив к опечаткам и словоформам.
+ * После обучения объект неизменяем и безопасен для чтения из нескольких потоков.
+ */
+public class NgramNaiveBayes {
+
+    private final List<String> labels = new ArrayList<>();
+    private final double[] logPriors;
+    private final List<Map<String, Double>> logLikelihoods = new ArrayList<>();
+    private final double[] unknownLogLikelihood;
+
+    /**
+     * Обучает классификатор.
+     * @param texts Тексты обучающей выборки.
+     * @param textLabels Метки в том же порядке, что и тексты.
+     */
+    public NgramNaiveBayes(List<String> texts, List<String> textLabels) {
+        Map<String, Integer> labelIndex = new HashMap<>();
+        for (String label : textLabels) {
+            labelIndex.computeIfAbsent(label, l -> {
+                labels.add(l);
+                return labels.size() - 1;
+            });
+        }
+
+        int classes = labels.size();
+        int[] documents = new int[classes];
+        long[] featureTotals = new long[classes];
+        List<Map<String, Integer>> counts = new ArrayList<>();
+        for (int i = 0; i < classes; i++) {
+            counts.add(new HashMap<>());
+        }
+        Map<String, Boolean> vocabulary = new HashMap<>();
+
+        for (int i = 0; i < texts.size(); i++) {
+            int c = labelIndex.get(textLabels.get(i));
+            documents[c]++;
+            for (String feature : features(texts.get(i))) {
+                counts.get(c).merge(feature, 1, Integer::sum);
+                featureTotals[c]++;
+                vocabulary.put(feature, Boolean.TRUE);
+            }
+        }
+
+        logPriors = new double[classes];
+        unknownLogLikelihood = new double[classes];
+        for (int c = 0; c < classes; c++) {
+            logPriors[c] = Math.log((double) documents[c] / texts.size());
+            // Сглаживание Лапласа
+            double denominator = featureTotals[c] + vocabulary.size() + 1.0;
+            Map<String, Double> likelihoods = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : counts.get(c).entrySet()) {
+                likelihoods.put(entry.getKey(), Math.log((entry.getValue() + 1.0) / denominator));
+            }
+            logLikelihoods.add(likelihoods);
+            unknownLogLikelihood[c] = Math.log(1.0 / denominator);
+        }
+    }
+
+    /**
+     * Предсказывает метку текста.
+     * @param text Текст.
+     * @return Наиболее вероятная метка и её апостериорная вероятность.
+     */
+    public Prediction predict(String text) {
+        List<String> features = features(text);
+        double[] scores = new double[labels.size()];
+        for (int c = 0; c < scores.length; c++) {
+            double score = logPriors[c];
+            Map<String, Double> likelihoods = logLikelihoods.get(c);
+            for (String feature : features) {
+                score += likelihoods.getOrDefault(feature, unknownLogLikelihood[c]);
+            }
+            scores[c] = score;
+        }
+
+        int best = 0;
+        for (int c = 1; c < scores.length; c++) {
+            if (scores[c] > scores[best]) {
+                best = c;
+            }
+        }
+        // softmax по логарифмам для получения вероятности лучшего класса
+        double sum = 0;
+        for (double score : scores) {
+            sum += Math.exp(score - scores[best]);
+        }
+        return new Prediction(labels.get(best), 1.0 / sum);
+    }
+
+    private static List<String> features(String text) {
+        List<String> features = new ArrayList<>();
+        for (String word : TextNormalizer.normalize(text).split(" ")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            features.add("w:" + word);
+            String padded = "^" + word + "$";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                features.add(padded.substring(i, i + 3));
+            }
+        }
+        return features;
+    }
+
+    public static class Prediction {
+        private final String label;
+        private final double probability;
+
+        Prediction(String label, double probability) {
+            this.label = label;
+            this.probability = probability;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public double getProbability() {
+            return probability;
+        }
+    }
+}
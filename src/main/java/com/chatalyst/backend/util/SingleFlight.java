@@ -0,0 +1,134 @@
+// src/main/java/com/chatalyst/backend/util/SingleFlight.java
+package com.chatalyst.backend.util;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Объединяет одновременные одинаковые вызовы: пока вызов с ключом K выполняется,
+ * остальные вызовы с тем же ключом ждут его результат вместо повторного выполнения.
+ * Результат не кэшируется — после завершения вызова следующий запрос выполнится заново.
+ * Присоединившиеся вызовы ждут не дольше followerTimeout, поэтому зависший ведущий вызов не блокирует их навсегда.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final Duration followerTimeout;
+
+    /**
+     * @param followerTimeout Сколько присоединившийся вызов ждёт результат ведущего.
+     */
+    public SingleFlight(Duration followerTimeout) {
+        this.followerTimeout = followerTimeout;
+    }
+
+    /**
+     * Выполняет задачу или присоединяется к уже выполняющейся задаче с тем же ключом.
+     * @param key Ключ вызова.
+     * @param task Задача, выполняемая только «ведущим» вызовом.
+     * @return Общий результат с порядковым номером участника и общим числом участников.
+     * @throws FlightTimeoutException если ведущий вызов не завершился за followerTimeout.
+     */
+    public Shared<V> execute(K key, Supplier<V> task) {
+        Flight<V> candidate = new Flight<>();
+        int[] index = new int[1];
+        // Присоединение происходит под блокировкой корзины map, поэтому после remove() счётчик участников окончателен
+        Flight<V> flight = flights.compute(key, (k, existing) -> {
+            if (existing == null) {
+                return candidate;
+            }
+            index[0] = existing.participants.getAndIncrement();
+            return existing;
+        });
+
+        if (flight != candidate) {
+            return await(flight, index[0]);
+        }
+
+        V value;
+        try {
+            value = task.get();
+        } catch (Throwable e) {
+            // Любая ошибка ведущего, включая Error и необъявленные checked-исключения, передаётся ожидающим
+            flights.remove(key, candidate);
+            candidate.future.completeExceptionally(e);
+            throw e;
+        }
+        flights.remove(key, candidate);
+        Shared<V> result = new Shared<>(value, 0, candidate.participants.get());
+        candidate.future.complete(result);
+        return result;
+    }
+
+    private Shared<V> await(Flight<V> flight, int index) {
+        try {
+            Shared<V> leaderResult = flight.future.get(followerTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            return new Shared<>(leaderResult.value, index, leaderResult.participants);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new FlightFailedException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new FlightTimeoutException(followerTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlightFailedException(e);
+        }
+    }
+
+    /**
+     * Ведущий вызов завершился ошибкой, которую нельзя передать ожидающим как есть, или ожидание прервано.
+     */
+    public static class FlightFailedException extends RuntimeException {
+        public FlightFailedException(Throwable cause) {
+            super("Общий вызов завершился ошибкой: " + cause, cause);
+        }
+    }
+
+    /**
+     * Ведущий вызов не завершился за отведённое время.
+     */
+    public static class FlightTimeoutException extends RuntimeException {
+        public FlightTimeoutException(Duration timeout) {
+            super("Общий вызов не завершился за " + timeout.toMillis() + " мс");
+        }
+    }
+
+    private static class Flight<V> {
+        private final CompletableFuture<Shared<V>> future = new CompletableFuture<>();
+        // Ведущий вызов — участник с номером 0
+        private final AtomicInteger participants = new AtomicInteger(1);
+    }
+
+    /**
+     * Результат, разделённый между участниками вызова.
+     */
+    public static class Shared<V> {
+        private final V value;
+        private final int index;
+        private final int participants;
+
+        Shared(V value, int index, int participants) {
+            this.value = value;
+            this.index = index;
+            this.participants = participants;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        // Порядковый номер участника: 0 — ведущий вызов
+        public int getIndex() {
+            return index;
+        }
+
+        public int getParticipants() {
+            return participants;
+        }
+    }
+}
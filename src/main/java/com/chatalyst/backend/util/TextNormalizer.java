@@ -0,0 +1,85 @@
+// src/main/java/com/chatalyst/backend/util/TextNormalizer.java
+package com.chatalyst.backend.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Нормализация текста для сопоставления: нижний регистр, «ё» → «е»,
+ * все символы, кроме букв и цифр, заменяются пробелом, пробелы схлопываются.
+ */
+public final class TextNormalizer {
+
+    // Частые окончания русских слов, от длинных к коротким
+    private static final String[] ENDINGS = Arrays.stream(new String[]{
+            "ами", "ями", "ого", "его", "ому", "ему", "ыми", "ими", "ых", "их",
+            "ой", "ей", "ий", "ый", "ая", "яя", "ое", "ее", "ые", "ие", "ую", "юю",
+            "ам", "ям", "ах", "ях", "ом", "ем", "ов", "ев",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь"
+    }).sorted(Comparator.comparingInt(String::length).reversed()).toArray(String[]::new);
+
+    // Минимальная длина основы после отбрасывания окончания
+    private static final int MIN_STEM_LENGTH = 3;
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Нормализует текст и отбрасывает окончания слов, чтобы разные словоформы совпадали
+     * («синюю кружку» и «синяя кружка»).
+     * @param text Исходный текст.
+     * @return Нормализованный текст из основ слов.
+     */
+    public static String normalizeStemmed(String text) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return normalized;
+        }
+        StringBuilder sb = new StringBuilder(normalized.length());
+        for (String word : normalized.split(" ")) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(stem(word));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Грубый стемминг: отбрасывает самое длинное подходящее окончание.
+     * @param word Нормализованное слово.
+     * @return Основа слова.
+     */
+    public static String stem(String word) {
+        for (String ending : ENDINGS) {
+            if (word.endsWith(ending) && word.length() - ending.length() >= MIN_STEM_LENGTH) {
+                return word.substring(0, word.length() - ending.length());
+            }
+        }
+        return word;
+    }
+
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.append(c);
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return sb.toString();
+    }
+}
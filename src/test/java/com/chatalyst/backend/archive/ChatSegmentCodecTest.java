@@ -0,0 +1,102 @@
+package com.chatalyst.backend.archive;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatSegmentCodecTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 12, 0, 0, 123_000_000);
+
+    @Test
+    void segmentRoundTripsAllColumns() {
+        List<ArchivedMessage> messages = List.of(
+                new ArchivedMessage(1_000_005, -42, START, "user", "Привет! Есть ли кроссовки 42 размера? 👟"),
+                new ArchivedMessage(1_000_007, -42, START.plusSeconds(3), "assistant", null),
+                // ID нового чата меньше предыдущего: разности бывают отрицательными
+                new ArchivedMessage(17, 5, START.minusDays(30), "user", ""),
+                new ArchivedMessage(900_000_000_000L, 5, START.plusYears(1), "assistant", "x".repeat(100_000)));
+
+        ChatSegmentCodec.Encoded encoded = ChatSegmentCodec.encode(messages);
+
+        assertThat(encoded.rowCount()).isEqualTo(4);
+        assertThat(readAll(encoded.segment(), 0, 4)).isEqualTo(messages);
+    }
+
+    @Test
+    void indexDescribesEachChat() {
+        List<ArchivedMessage> messages = List.of(
+                new ArchivedMessage(1, 10, START.plusMinutes(5), "user", "a"),
+                new ArchivedMessage(2, 10, START, "assistant", "b"),
+                new ArchivedMessage(3, 10, START.plusMinutes(9), "user", "c"),
+                new ArchivedMessage(4, 20, START.plusHours(1), "user", "d"));
+
+        List<ChatSegmentCodec.IndexEntry> index = ChatSegmentCodec.readIndex(
+                new ByteArrayInputStream(ChatSegmentCodec.encode(messages).index()));
+
+        assertThat(index).containsExactly(
+                new ChatSegmentCodec.IndexEntry(10, 0, 3, START, START.plusMinutes(9)),
+                new ChatSegmentCodec.IndexEntry(20, 3, 1, START.plusHours(1), START.plusHours(1)));
+    }
+
+    @Test
+    void readReturnsOnlyRequestedRows() {
+        List<ArchivedMessage> messages = new ArrayList<>();
+        for (int chat = 0; chat < 50; chat++) {
+            for (int i = 0; i < 20; i++) {
+                messages.add(new ArchivedMessage(chat * 1_000L + i, 100 + chat, START.plusSeconds(chat * 60L + i),
+                        i % 2 == 0 ? "user" : "assistant", "сообщение " + chat + "/" + i));
+            }
+        }
+        ChatSegmentCodec.Encoded encoded = ChatSegmentCodec.encode(messages);
+        ChatSegmentCodec.IndexEntry entry = ChatSegmentCodec.readIndex(new ByteArrayInputStream(encoded.index())).get(37);
+
+        assertThat(readAll(encoded.segment(), entry.firstRow(), entry.rowCount()))
+                .isEqualTo(messages.subList(37 * 20, 38 * 20));
+        // Запрос за пределами сегмента обрезается по числу строк
+        assertThat(readAll(encoded.segment(), 990, 100)).isEqualTo(messages.subList(990, 1_000));
+    }
+
+    @Test
+    void similarRowsCompressWell() {
+        List<ArchivedMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            messages.add(new ArchivedMessage(i, 7, START.plusSeconds(i), i % 2 == 0 ? "user" : "assistant",
+                    i % 2 == 0 ? "Сколько стоит доставка?" : "Доставка по городу бесплатная."));
+        }
+        long raw = messages.stream().mapToLong(m -> 8 + 8 + 8 + m.role().length() + m.content().length() * 2L).sum();
+
+        byte[] segment = ChatSegmentCodec.encode(messages).segment();
+
+        assertThat(segment.length).isLessThan((int) (raw / 20));
+    }
+
+    @Test
+    void emptySegmentHasNoRowsAndNoIndexEntries() {
+        ChatSegmentCodec.Encoded encoded = ChatSegmentCodec.encode(List.of());
+
+        assertThat(readAll(encoded.segment(), 0, 10)).isEmpty();
+        assertThat(ChatSegmentCodec.readIndex(new ByteArrayInputStream(encoded.index()))).isEmpty();
+    }
+
+    @Test
+    void unknownFormatIsRejected() {
+        ChatSegmentCodec.Encoded encoded = ChatSegmentCodec.encode(List.of(new ArchivedMessage(1, 1, START, "user", "a")));
+
+        assertThatThrownBy(() -> readAll(encoded.index(), 0, 1)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> ChatSegmentCodec.readIndex(new ByteArrayInputStream(encoded.segment())))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    private static List<ArchivedMessage> readAll(byte[] segment, int firstRow, int rowCount) {
+        List<ArchivedMessage> result = new ArrayList<>();
+        ChatSegmentCodec.read(segment, firstRow, rowCount, result::add);
+        return result;
+    }
+}
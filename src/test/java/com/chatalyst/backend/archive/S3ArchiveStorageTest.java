@@ -0,0 +1,32 @@
+package com.chatalyst.backend.archive;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class S3ArchiveStorageTest {
+
+    private final S3Client s3Client = mock(S3Client.class);
+
+    @Test
+    void bucketIsRequired() {
+        assertThatThrownBy(() -> new S3ArchiveStorage(s3Client, "", "chatalyst-products"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("chat.archive.s3.bucket");
+    }
+
+    @Test
+    void publicProductBucketIsRejected() {
+        assertThatThrownBy(() -> new S3ArchiveStorage(s3Client, "chatalyst-products", "chatalyst-products"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void dedicatedBucketIsAccepted() {
+        assertThatCode(() -> new S3ArchiveStorage(s3Client, "chatalyst-chat-archive", "chatalyst-products"))
+                .doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,125 @@
+package com.chatalyst.backend.config;
+
+import jakarta.persistence.Entity;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.enhanced.PooledOptimizer;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.ClassUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SequenceAlignerTest {
+
+    @Test
+    void batchedEntitiesUsePooledSequencesKnownToRunner() {
+        Map<String, String> pooled = new HashMap<>();
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DIALECT, PostgreSQLDialect.class.getName())
+                // Метамодель строится без подключения к БД
+                .applySetting("hibernate.boot.allow_jdbc_metadata_access", "false")
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "none")
+                // Те же стратегии имён, что применяет Spring Boot
+                .applySetting(AvailableSettings.PHYSICAL_NAMING_STRATEGY, CamelCaseToUnderscoresNamingStrategy.class.getName())
+                .applySetting(AvailableSettings.IMPLICIT_NAMING_STRATEGY, SpringImplicitNamingStrategy.class.getName())
+                .build();
+        MetadataSources sources = new MetadataSources(registry);
+        entityClasses().forEach(sources::addAnnotatedClass);
+        try (SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) sources.buildMetadata().buildSessionFactory()) {
+            sessionFactory.getMappingMetamodel().forEachEntityDescriptor(persister -> {
+                if (persister.getGenerator() instanceof SequenceStyleGenerator generator) {
+                    // saveAll получает ID из пула в памяти: одно обращение к последовательности на ALLOCATION_SIZE строк
+                    assertThat(generator.getOptimizer()).isInstanceOf(PooledOptimizer.class);
+                    assertThat(generator.getOptimizer().getIncrementSize()).isEqualTo(SequenceAligner.ALLOCATION_SIZE);
+                    pooled.put(((AbstractEntityPersister) persister).getTableName(),
+                            generator.getDatabaseStructure().getPhysicalName().render());
+                }
+            });
+        }
+
+        assertThat(pooled).isEqualTo(SequenceAligner.SEQUENCES);
+    }
+
+    @Test
+    void sequenceIsMovedPastMaxId() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(0L);
+        when(jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM chat_message", Long.class)).thenReturn(1_000L);
+        when(jdbcTemplate.queryForObject("SELECT last_value FROM chat_message_seq", Long.class)).thenReturn(1L);
+
+        new SequenceAligner(jdbcTemplate).afterPropertiesSet();
+
+        // Pooled-оптимизатор считает значение последовательности верхней границей пула,
+        // поэтому запас в ALLOCATION_SIZE гарантирует, что первый пул начнётся после MAX(id)
+        verify(jdbcTemplate).queryForObject("SELECT setval(?, ?)", Long.class, "chat_message_seq",
+                1_000L + SequenceAligner.ALLOCATION_SIZE);
+    }
+
+    @Test
+    void sequenceAheadOfDataIsLeftAlone() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(10_000L);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COALESCE"), eq(Long.class))).thenReturn(100L);
+
+        new SequenceAligner(jdbcTemplate).afterPropertiesSet();
+
+        verify(jdbcTemplate, never()).queryForObject(eq("SELECT setval(?, ?)"), eq(Long.class), any(Object[].class));
+    }
+
+    @Test
+    void failureStopsStartup() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(0L);
+        when(jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM chat_message", Long.class))
+                .thenThrow(new DataAccessResourceFailureException("relation does not exist"));
+
+        assertThatThrownBy(() -> new SequenceAligner(jdbcTemplate).afterPropertiesSet())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("chat_message_seq");
+    }
+
+    @Test
+    void alignmentRunsBeforeTrafficAfterSchemaIsCreated() {
+        // Бин создаётся вместе с остальными синглтонами, до старта веб-сервера и @Scheduled-задач,
+        // но после EntityManagerFactory, которая создаёт последовательности при ddl-auto=update
+        assertThat(SequenceAligner.class).isAssignableTo(InitializingBean.class);
+        assertThat(SequenceAligner.class.getAnnotation(DependsOn.class).value()).containsExactly("entityManagerFactory");
+    }
+
+    private static List<Class<?>> entityClasses() {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Entity.class));
+        return scanner.findCandidateComponents("com.chatalyst.backend").stream()
+                .map(BeanDefinition::getBeanClassName)
+                .<Class<?>>map(name -> ClassUtils.resolveClassName(name, null))
+                .toList();
+    }
+}
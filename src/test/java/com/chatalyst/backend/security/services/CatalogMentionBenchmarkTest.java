@@ -0,0 +1,73 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.model.Product;
+import com.chatalyst.backend.util.TextNormalizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Грубая проверка времени поиска упоминаний автоматом против прежнего перебора названий (не JMH-бенчмарк).
+ * На каталоге в 10 000 товаров автомат должен быть быстрее перебора.
+ * Запускается вручную: mvn test -Dtest=CatalogMentionBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CatalogMentionBenchmarkTest {
+
+    private static final String[] WORDS = {
+            "чайник", "тостер", "кружка", "синий", "белый", "стальной", "bosch", "philips", "мини", "про",
+            "набор", "чашка", "плед", "лампа", "подушка", "зеркало", "коврик", "ваза", "часы", "рамка"};
+    private static final int ITERATIONS = 2_000;
+    private static final int LARGEST_CATALOG = 10_000;
+
+    @Test
+    void automatonFindsSameMentionsAsNaiveScan() {
+        Random random = new Random(42);
+        for (int size : new int[]{100, 1_000, 5_000, LARGEST_CATALOG}) {
+            List<Product> products = new ArrayList<>();
+            for (long id = 1; id <= size; id++) {
+                String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+                products.add(CatalogSnapshotTest.product(id, name, "Каталог", "Раздел", null));
+            }
+            CatalogSnapshot snapshot = new CatalogSnapshot(1L, 1, products, false);
+            String reply = "Могу предложить " + products.get(size / 2).getName() + ", а также "
+                    + products.get(size - 1).getName() + ". " + "Отличный выбор для дома и офиса. ".repeat(20);
+
+            assertThat(new LinkedHashSet<>(snapshot.findMentions(reply))).isEqualTo(naive(snapshot, reply));
+
+            if (size == LARGEST_CATALOG) {
+                // Автомат проходит ответ один раз, перебор сравнивает ответ с каждым названием
+                assertThat(time(() -> snapshot.findMentions(reply))).isLessThan(time(() -> naive(snapshot, reply)));
+            }
+        }
+    }
+
+    private static Set<CatalogSnapshot.Item> naive(CatalogSnapshot snapshot, String text) {
+        String normalized = " " + TextNormalizer.normalize(text) + " ";
+        Set<CatalogSnapshot.Item> found = new LinkedHashSet<>();
+        for (CatalogSnapshot.Item item : snapshot.getItems()) {
+            if (normalized.contains(" " + item.getNormalizedName() + " ")) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    private static long time(Runnable task) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        return System.nanoTime() - started;
+    }
+}
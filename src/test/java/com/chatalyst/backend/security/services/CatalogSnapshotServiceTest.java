@@ -0,0 +1,125 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.ProductRepository;
+import com.chatalyst.backend.model.Bot;
+import com.chatalyst.backend.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import static com.chatalyst.backend.security.services.CatalogSnapshotTest.product;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CatalogSnapshotServiceTest {
+
+    private static final long BOT_ID = 1L;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private ProductRepository productRepository;
+    private CatalogSnapshotService service;
+    private Bot bot;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        // Фоновые задачи выполняются вручную, чтобы управлять порядком
+        service = new CatalogSnapshotService(productRepository, tasks::add);
+        bot = new Bot();
+        bot.setId(BOT_ID);
+    }
+
+    @Test
+    void snapshotIsBuiltOnceAndReused() {
+        when(productRepository.findByBotId(BOT_ID)).thenReturn(List.of(product(1L, "Чайник", "Кухня", "Техника", null)));
+
+        CatalogSnapshot first = service.getSnapshot(bot);
+
+        assertThat(service.getSnapshot(bot)).isSameAs(first);
+        assertThat(tasks).isEmpty();
+        verify(productRepository, times(1)).findByBotId(BOT_ID);
+    }
+
+    @Test
+    void changeServesPreviousVersionUntilRebuilt() {
+        List<Product> before = List.of(product(1L, "Чайник", "Кухня", "Техника", null));
+        List<Product> after = List.of(product(1L, "Чайник", "Кухня", "Техника", null), product(2L, "Тостер", "Кухня", "Техника", null));
+        when(productRepository.findByBotId(BOT_ID)).thenReturn(before, after);
+        CatalogSnapshot first = service.getSnapshot(bot);
+
+        service.invalidate(BOT_ID);
+        service.invalidate(BOT_ID);
+
+        assertThat(service.getSnapshot(bot)).isSameAs(first);
+        // Несколько изменений подряд собираются одной пересборкой
+        assertThat(tasks).hasSize(1);
+        runTasks();
+        assertThat(service.getSnapshot(bot).getItems()).hasSize(2);
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void changeDuringFirstBuildIsNotLost() {
+        List<Product> after = List.of(product(2L, "Тостер", "Кухня", "Техника", null));
+        when(productRepository.findByBotId(BOT_ID))
+                .thenAnswer(invocation -> {
+                    // Товар изменён, пока первая сборка читает каталог: снимка ещё нет
+                    service.invalidate(BOT_ID);
+                    return List.of(product(1L, "Чайник", "Кухня", "Техника", null));
+                })
+                .thenReturn(after);
+
+        CatalogSnapshot stale = service.getSnapshot(bot);
+
+        assertThat(stale.getItems()).hasSize(1);
+        runTasks();
+        CatalogSnapshot fresh = service.getSnapshot(bot);
+        assertThat(fresh.getVersion()).isGreaterThan(stale.getVersion());
+        assertThat(fresh.getItems()).extracting(CatalogSnapshot.Item::getName).containsExactly("Тостер");
+    }
+
+    @Test
+    void changeDuringBackgroundRebuildTriggersAnotherRebuild() {
+        when(productRepository.findByBotId(BOT_ID))
+                .thenReturn(List.of(product(1L, "Чайник", "Кухня", "Техника", null)))
+                .thenAnswer(invocation -> {
+                    service.invalidate(BOT_ID);
+                    return List.of(product(2L, "Тостер", "Кухня", "Техника", null));
+                })
+                .thenReturn(List.of(product(3L, "Миксер", "Кухня", "Техника", null)));
+        service.getSnapshot(bot);
+
+        service.invalidate(BOT_ID);
+        runTasks();
+
+        assertThat(service.getSnapshot(bot).getItems()).extracting(CatalogSnapshot.Item::getName).containsExactly("Миксер");
+        verify(productRepository, times(3)).findByBotId(BOT_ID);
+    }
+
+    @Test
+    void failedRebuildDropsStaleSnapshot() {
+        when(productRepository.findByBotId(BOT_ID))
+                .thenReturn(List.of(product(1L, "Чайник", "Кухня", "Техника", null)))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(List.of(product(2L, "Тостер", "Кухня", "Техника", null)));
+        service.getSnapshot(bot);
+
+        service.invalidate(BOT_ID);
+        runTasks();
+
+        assertThat(service.getSnapshot(bot).getItems()).extracting(CatalogSnapshot.Item::getName).containsExactly("Тостер");
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogSnapshotTest {
+
+    @Test
+    void findsMentionsAsWholeWordsOnly() {
+        CatalogSnapshot snapshot = snapshot(false, product(1L, "Кот", "Игрушки", "Мягкие", null));
+
+        assertThat(names(snapshot.findMentions("Плюшевый кот в наличии"))).containsExactly("Кот");
+        assertThat(snapshot.findMentions("Котел и скотч")).isEmpty();
+    }
+
+    @Test
+    void foldsYoAndCaseInMentions() {
+        CatalogSnapshot snapshot = snapshot(false, product(1L, "Зелёный чай", "Чай", "Листовой", null));
+
+        assertThat(names(snapshot.findMentions("Рекомендую ЗЕЛЕНЫЙ ЧАЙ!"))).containsExactly("Зелёный чай");
+    }
+
+    @Test
+    void matchesWordFormsWhenStemmingIsEnabled() {
+        Product mug = product(1L, "Синяя кружка", "Посуда", "Кружки", null);
+
+        assertThat(snapshot(true, mug).findMentions("Возьмите синюю кружку")).hasSize(1);
+        assertThat(snapshot(false, mug).findMentions("Возьмите синюю кружку")).isEmpty();
+    }
+
+    @Test
+    void reportsOverlappingNames() {
+        CatalogSnapshot snapshot = snapshot(false,
+                product(1L, "Чайник", "Кухня", "Чайники", null),
+                product(2L, "Чайник Bosch", "Кухня", "Чайники", null),
+                product(3L, "Bosch", "Бренды", "Bosch", null));
+
+        assertThat(names(snapshot.findMentions("Советую чайник Bosch")))
+                .containsExactlyInAnyOrder("Чайник", "Чайник Bosch", "Bosch");
+    }
+
+    @Test
+    void groupsCatalogsSubcategoriesAndImages() {
+        CatalogSnapshot snapshot = snapshot(false,
+                product(1L, "Чайник", "Кухня", "Чайники", "https://img/1.jpg"),
+                product(2L, "Тостер", "Кухня", "Тостеры", null),
+                product(3L, "Пылесос", "Уборка", "Пылесосы", null),
+                product(4L, "Без раздела", null, null, null));
+
+        assertThat(snapshot.getCatalogs()).containsExactly("Кухня", "Уборка");
+        assertThat(snapshot.getSubcategories("Кухня")).containsExactly("Тостеры", "Чайники");
+        assertThat(snapshot.getSubcategories("Нет такого")).isEmpty();
+        assertThat(names(snapshot.getSubcategoryItems("Чайники"))).containsExactly("Чайник");
+        assertThat(snapshot.getSubcategoryItems("")).isEmpty();
+        assertThat(snapshot.hasImages()).isTrue();
+        assertThat(snapshot.getItem(3L).getName()).isEqualTo("Пылесос");
+    }
+
+    @Test
+    void promptTextDoesNotDependOnInputOrder() {
+        Product a = product(1L, "Чайник", "Кухня", "Чайники", null);
+        Product b = product(2L, "Пылесос", "Уборка", "Пылесосы", null);
+
+        assertThat(new CatalogSnapshot(1L, 1, List.of(a, b), false).getPromptText())
+                .isEqualTo(new CatalogSnapshot(1L, 1, List.of(b, a), false).getPromptText());
+    }
+
+    private static CatalogSnapshot snapshot(boolean stemming, Product... products) {
+        return new CatalogSnapshot(1L, 1, List.of(products), stemming);
+    }
+
+    private static List<String> names(List<CatalogSnapshot.Item> items) {
+        return items.stream().map(CatalogSnapshot.Item::getName).toList();
+    }
+
+    static Product product(Long id, String name, String catalog, String subcategory, String imageUrl) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setCatalog(catalog);
+        product.setSubcategory(subcategory);
+        product.setImageUrl(imageUrl);
+        product.setPrice(BigDecimal.TEN);
+        return product;
+    }
+}
@@ -0,0 +1,24 @@
+package com.chatalyst.backend.security.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatExportServiceTest {
+
+    @Test
+    void formulaLikeCellsArePrefixed() {
+        assertThat(ChatExportService.csvField("=HYPERLINK(\"http://evil\")")).isEqualTo("\"'=HYPERLINK(\"\"http://evil\"\")\"");
+        assertThat(ChatExportService.csvField("+77001234567")).isEqualTo("'+77001234567");
+        assertThat(ChatExportService.csvField("-1")).isEqualTo("'-1");
+        assertThat(ChatExportService.csvField("@SUM(A1)")).isEqualTo("'@SUM(A1)");
+    }
+
+    @Test
+    void plainCellsAreUnchanged() {
+        assertThat(ChatExportService.csvField("Привет")).isEqualTo("Привет");
+        assertThat(ChatExportService.csvField("")).isEmpty();
+        assertThat(ChatExportService.csvField("a, b")).isEqualTo("\"a, b\"");
+        assertThat(ChatExportService.csvField("2025-03-01T12:00")).isEqualTo("2025-03-01T12:00");
+    }
+}
@@ -0,0 +1,77 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.ChatMessageRepository;
+import com.chatalyst.backend.Repository.ChatSummaryRepository;
+import com.chatalyst.backend.model.Bot;
+import com.chatalyst.backend.model.ChatMessage;
+import com.chatalyst.backend.model.ChatRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatHistoryCacheTest {
+
+    private ChatMessageRepository messageRepository;
+    private ChatMessageWriter writer;
+    private ChatHistoryCache cache;
+    private Bot bot;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository = mock(ChatMessageRepository.class);
+        ChatSummaryRepository summaryRepository = mock(ChatSummaryRepository.class);
+        when(summaryRepository.findByBotIdentifierAndChatId(any(), any())).thenReturn(Optional.empty());
+        writer = mock(ChatMessageWriter.class);
+        cache = new ChatHistoryCache(messageRepository, summaryRepository, writer, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "capacity", 16);
+        ReflectionTestUtils.setField(cache, "maxChats", 100);
+        ReflectionTestUtils.setField(cache, "maxAgeDays", 90);
+        cache.init();
+        bot = new Bot();
+        bot.setId(1L);
+        bot.setBotIdentifier("bot");
+    }
+
+    @Test
+    void messageSavedDuringLoadIsNotDuplicated() {
+        // Сообщение 7 было в очереди на момент снимка и успело сохраниться до чтения из БД
+        ChatMessage saved = message(7L, ChatRole.USER, "привет");
+        ChatMessage stillPending = message(null, ChatRole.ASSISTANT, "здравствуйте");
+        when(writer.pending(1L, 10L)).thenReturn(List.of(saved, stillPending));
+        when(messageRepository.findByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfterOrderByIdDesc(
+                eq(10L), eq(1L), anyLong(), any(), any()))
+                .thenReturn(new ArrayList<>(List.of(message(7L, ChatRole.USER, "привет"), message(6L, ChatRole.ASSISTANT, "раньше"))));
+
+        List<String[]> messages = cache.getContext(bot, 10L).getRecentMessages();
+
+        assertThat(messages).extracting(m -> m[1]).containsExactly("раньше", "привет", "здравствуйте");
+    }
+
+    @Test
+    void pendingMessagesFollowStoredOnes() {
+        when(writer.pending(1L, 10L)).thenReturn(List.of(message(null, ChatRole.USER, "новое")));
+        when(messageRepository.findByChatIdAndBotIdAndIdGreaterThanAndCreatedAtAfterOrderByIdDesc(
+                eq(10L), eq(1L), anyLong(), any(), any()))
+                .thenReturn(new ArrayList<>(List.of(message(2L, ChatRole.ASSISTANT, "ответ"), message(1L, ChatRole.USER, "вопрос"))));
+
+        List<String[]> messages = cache.getContext(bot, 10L).getRecentMessages();
+
+        assertThat(messages).extracting(m -> m[1]).containsExactly("вопрос", "ответ", "новое");
+    }
+
+    private static ChatMessage message(Long id, ChatRole role, String content) {
+        return ChatMessage.builder().id(id).botId(1L).chatId(10L).role(role).content(content).build();
+    }
+}
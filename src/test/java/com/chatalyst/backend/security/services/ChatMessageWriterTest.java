@@ -0,0 +1,136 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.Repository.ChatMessageRepository;
+import com.chatalyst.backend.model.ChatMessage;
+import com.chatalyst.backend.model.ChatRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ChatMessageWriterTest {
+
+    private ChatMessageRepository repository;
+    private ChatMessageWriter writer;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repository = mock(ChatMessageRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<TransactionStatus>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        meterRegistry = new SimpleMeterRegistry();
+        writer = new ChatMessageWriter(repository, mock(BotStatsService.class), transactionTemplate, meterRegistry);
+        ReflectionTestUtils.setField(writer, "batchSize", 10);
+        ReflectionTestUtils.setField(writer, "queueCapacity", 100);
+        writer.init();
+    }
+
+    @Test
+    void messagesBeingSavedStayVisibleAsPending() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            saving.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return invocation.getArgument(0);
+        }).when(repository).saveAll(anyList());
+
+        writer.write(message(1L, 10L, "first"));
+        writer.write(message(2L, 10L, "other bot"));
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(writer::flush);
+        assertThat(saving.await(5, TimeUnit.SECONDS)).isTrue();
+        writer.write(message(1L, 10L, "second"));
+
+        assertThat(writer.pending(1L, 10L)).extracting(ChatMessage::getContent).containsExactly("first", "second");
+
+        release.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+        assertThat(writer.pending(1L, 10L)).isEmpty();
+    }
+
+    @Test
+    void failedBatchIsRequeuedInOriginalOrder() {
+        doThrow(new RuntimeException("db down")).when(repository).saveAll(anyList());
+        writer.write(message(1L, 10L, "a"));
+        writer.write(message(1L, 10L, "b"));
+
+        writer.flush();
+
+        assertThat(writer.pending(1L, 10L)).extracting(ChatMessage::getContent).containsExactly("a", "b");
+        verify(repository).saveAll(anyList());
+    }
+
+    @Test
+    void rowRejectedByDatabaseDoesNotBlockOthers() {
+        List<String> saved = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<ChatMessage> batch = invocation.getArgument(0);
+            // Внешний ключ не пропускает сообщения удалённого бота: откатывается вся транзакция
+            if (batch.stream().anyMatch(m -> m.getBotId() == 2L)) {
+                throw new DataIntegrityViolationException("violates foreign key constraint fk_chat_message_bot");
+            }
+            batch.forEach(m -> saved.add(m.getContent()));
+            return batch;
+        }).when(repository).saveAll(anyList());
+        for (int i = 0; i < 7; i++) {
+            writer.write(message(i == 4 ? 2L : 1L, 10L, "m" + i));
+        }
+
+        writer.flush();
+        writer.write(message(1L, 10L, "after"));
+        writer.flush();
+
+        assertThat(saved).containsExactlyInAnyOrder("m0", "m1", "m2", "m3", "m5", "m6", "after");
+        assertThat(writer.pending(1L, 10L)).isEmpty();
+        assertThat(writer.pending(2L, 10L)).isEmpty();
+        assertThat(meterRegistry.counter("chat.history.write.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void flushDrainsQueueInBatches() {
+        for (int i = 0; i < 25; i++) {
+            writer.write(message(1L, 10L, "m" + i));
+        }
+
+        writer.flush();
+
+        verify(repository, times(3)).saveAll(anyList());
+        assertThat(writer.pending(1L, 10L)).isEmpty();
+    }
+
+    @Test
+    void pendingFiltersByBotAndChat() {
+        writer.write(message(1L, 10L, "mine"));
+        writer.write(message(1L, 11L, "other chat"));
+
+        assertThat(writer.pending(1L, 10L)).extracting(ChatMessage::getContent).isEqualTo(List.of("mine"));
+    }
+
+    private static ChatMessage message(Long botId, Long chatId, String content) {
+        return ChatMessage.builder().botId(botId).chatId(chatId).role(ChatRole.USER).content(content).build();
+    }
+}
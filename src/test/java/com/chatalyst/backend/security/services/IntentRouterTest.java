@@ -0,0 +1,86 @@
+package com.chatalyst.backend.security.services;
+
+import com.chatalyst.backend.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntentRouterTest {
+
+    private IntentRouter router;
+    private CatalogSnapshot catalog;
+
+    @BeforeEach
+    void setUp() {
+        router = new IntentRouter(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(router, "enabled", true);
+        ReflectionTestUtils.setField(router, "minConfidence", 0.85);
+        catalog = new CatalogSnapshot(1L, 1, List.of(
+                product(1L, "Чайник Bosch", "Кухня", "Чайники", "15000"),
+                product(2L, "Тостер Philips", "Кухня", "Тостеры", "12000")), false);
+    }
+
+    @Test
+    void answersPriceOfMentionedProduct() {
+        IntentRouter.LocalAnswer answer = router.route("Сколько стоит чайник bosch?", catalog);
+
+        assertThat(answer).isNotNull();
+        assertThat(answer.getIntent()).isEqualTo(IntentRouter.Intent.PRICE);
+        assertThat(answer.getText()).contains("Чайник Bosch").contains("15000");
+    }
+
+    @Test
+    void listsItemsOfMentionedSubcategory() {
+        IntentRouter.LocalAnswer answer = router.route("какие у вас есть тостеры", catalog);
+
+        assertThat(answer).isNotNull();
+        assertThat(answer.getIntent()).isEqualTo(IntentRouter.Intent.CATEGORY);
+        assertThat(answer.getText()).contains("Тостер Philips").doesNotContain("Чайник");
+    }
+
+    @Test
+    void answersCatalogQuestion() {
+        IntentRouter.LocalAnswer answer = router.route("покажи каталог", catalog);
+
+        assertThat(answer).isNotNull();
+        assertThat(answer.getIntent()).isEqualTo(IntentRouter.Intent.CATALOG);
+        assertThat(answer.getText()).contains("/catalog_Кухня");
+    }
+
+    @Test
+    void deliveryAndPaymentQuestionsGoToLlm() {
+        assertThat(router.route("какие у вас условия доставки", catalog)).isNull();
+        assertThat(router.route("покажи где вы находитесь", catalog)).isNull();
+        assertThat(router.route("какие способы оплаты", catalog)).isNull();
+        assertThat(router.route("что у вас с доставкой чайников", catalog)).isNull();
+    }
+
+    @Test
+    void longMessagesGoToLlm() {
+        assertThat(router.route("здравствуйте подскажите пожалуйста сколько стоит чайник bosch "
+                + "и можно ли его доставить завтра утром ко мне домой", catalog)).isNull();
+    }
+
+    @Test
+    void disabledRouterNeverAnswers() {
+        ReflectionTestUtils.setField(router, "enabled", false);
+
+        assertThat(router.route("покажи каталог", catalog)).isNull();
+    }
+
+    private static Product product(Long id, String name, String catalog, String subcategory, String price) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setCatalog(catalog);
+        product.setSubcategory(subcategory);
+        product.setPrice(new BigDecimal(price));
+        return product;
+    }
+}
@@ -0,0 +1,125 @@
+package com.chatalyst.backend.security.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SpendQuotaServiceTest {
+
+    private final List<long[]> upserts = new ArrayList<>();
+    private SpendQuotaService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        // Аргументы UPSERT: botId, chatId, day, приращение токенов и тенге
+        when(jdbcTemplate.queryForObject(startsWith("INSERT INTO spend_quota_usage"), any(RowMapper.class), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    long tokens = invocation.getArgument(5);
+                    long kztMicros = invocation.getArgument(6);
+                    synchronized (upserts) {
+                        upserts.add(new long[]{invocation.getArgument(3), tokens, kztMicros});
+                    }
+                    return new long[]{tokens, kztMicros};
+                });
+        service = new SpendQuotaService(jdbcTemplate, mock(PipelineMetrics.class));
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "botDailyTokens", 1_000L);
+        ReflectionTestUtils.setField(service, "botDailyKzt", 0.0);
+        ReflectionTestUtils.setField(service, "chatDailyTokens", 0L);
+        ReflectionTestUtils.setField(service, "chatDailyKzt", 0.0);
+        ReflectionTestUtils.setField(service, "idleEvictMs", 3_600_000L);
+    }
+
+    @Test
+    void concurrentReservationsNeverExceedLimit() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                long chatId = 100 + i % 10;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        service.reserve(1L, chatId, 30, 0);
+                        return true;
+                    } catch (SpendQuotaService.QuotaExceededException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int reserved = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(10, TimeUnit.SECONDS)) {
+                    reserved++;
+                }
+            }
+
+            // 1000 / 30 = 33 резерва помещаются в лимит, 34-й уже нет
+            assertThat(reserved).isEqualTo(33);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void releaseReturnsReservedAmount() {
+        SpendQuotaService.Reservation reservation = service.reserve(1L, 10L, 900, 0);
+        service.release(reservation);
+
+        assertThat(service.reserve(1L, 10L, 900, 0)).isNotNull();
+    }
+
+    @Test
+    void counterWithOpenReservationIsNotEvicted() {
+        // Всё считается устаревшим, как после полуночи
+        ReflectionTestUtils.setField(service, "idleEvictMs", -1L);
+        SpendQuotaService.Reservation reservation = service.reserve(1L, 10L, 500, 0);
+
+        service.sync();
+        service.commit(reservation, 700, 0);
+        service.sync();
+
+        long chatTokens = upserts.stream().filter(row -> row[0] == 10L).mapToLong(row -> row[1]).sum();
+        assertThat(chatTokens).isEqualTo(700);
+        assertThat(reservation.chat()).isNotSameAs(service.reserve(1L, 10L, 1, 0).chat());
+    }
+
+    @Test
+    void failedSyncKeepsPendingSpendForRetry() {
+        SpendQuotaService.Reservation reservation = service.reserve(1L, 10L, 400, 0);
+        JdbcTemplate failing = mock(JdbcTemplate.class);
+        when(failing.queryForObject(startsWith("INSERT INTO spend_quota_usage"), any(RowMapper.class), any(Object[].class)))
+                .thenThrow(new IllegalStateException("db down"));
+        Object original = ReflectionTestUtils.getField(service, "jdbcTemplate");
+        ReflectionTestUtils.setField(service, "jdbcTemplate", failing);
+
+        service.sync();
+
+        assertThat(reservation.bot().tokens()).isEqualTo(400);
+        assertThat(reservation.bot().hasPending()).isTrue();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", original);
+        service.sync();
+        assertThat(reservation.bot().hasPending()).isFalse();
+        assertThat(reservation.bot().tokens()).isEqualTo(400);
+    }
+}
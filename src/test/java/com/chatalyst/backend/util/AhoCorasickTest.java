@@ -0,0 +1,73 @@
+package com.chatalyst.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AhoCorasickTest {
+
+    @Test
+    void findsAllPatternsInOnePass() {
+        AhoCorasick<String> matcher = matcher("he", "she", "his", "hers");
+
+        assertThat(matcher.findAll("ushers")).containsExactly("she", "he", "hers");
+    }
+
+    @Test
+    void findsPatternsThatAreSuffixesOfOthers() {
+        AhoCorasick<String> matcher = matcher("abcd", "bcd", "cd", "d");
+
+        assertThat(matcher.findAll("xabcdx")).containsExactlyInAnyOrder("abcd", "bcd", "cd", "d");
+    }
+
+    @Test
+    void followsFailLinksAfterPartialMatch() {
+        AhoCorasick<String> matcher = matcher("abab", "bac");
+
+        assertThat(matcher.findAll("ababac")).containsExactly("abab", "bac");
+    }
+
+    @Test
+    void reportsEachValueOnce() {
+        AhoCorasick<String> matcher = matcher("ab");
+
+        assertThat(matcher.findAll("ababab")).containsExactly("ab");
+    }
+
+    @Test
+    void returnsAllValuesOfSharedPattern() {
+        Map<String, List<Integer>> patterns = new LinkedHashMap<>();
+        patterns.put("кружка", List.of(1, 2));
+        AhoCorasick<Integer> matcher = new AhoCorasick<>(patterns);
+
+        assertThat(matcher.findAll("синяя кружка")).containsExactly(1, 2);
+    }
+
+    @Test
+    void ignoresEmptyPatternsAndHandlesEmptyText() {
+        AhoCorasick<String> matcher = matcher("", "a");
+
+        assertThat(matcher.findAll("")).isEmpty();
+        assertThat(matcher.findAll("bbb")).isEmpty();
+        assertThat(matcher.findAll("bab")).containsExactly("a");
+    }
+
+    @Test
+    void matchesNonLatinCharacters() {
+        AhoCorasick<String> matcher = matcher(" чайник ", " тостер ");
+
+        assertThat(matcher.findAll(" новый тостер и чайник ")).containsExactly(" тостер ", " чайник ");
+    }
+
+    private static AhoCorasick<String> matcher(String... patterns) {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        for (String pattern : patterns) {
+            map.put(pattern, List.of(pattern));
+        }
+        return new AhoCorasick<>(map);
+    }
+}
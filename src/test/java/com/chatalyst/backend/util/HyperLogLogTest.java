@@ -0,0 +1,112 @@
+package com.chatalyst.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    void emptySketchEstimatesZero() {
+        assertThat(new HyperLogLog().estimate()).isZero();
+    }
+
+    @Test
+    void smallSetsAreCountedAlmostExactly() {
+        HyperLogLog hll = new HyperLogLog();
+        for (long i = 1; i <= 100; i++) {
+            hll.add(i);
+            // Повторы не меняют оценку
+            hll.add(i);
+        }
+
+        assertThat(hll.estimate()).isCloseTo(100L, within(1L));
+    }
+
+    @Test
+    void largeSetErrorStaysWithinFewStandardErrors() {
+        HyperLogLog hll = new HyperLogLog();
+        // Последовательные ID чатов, как в рабочих данных
+        long count = 1_000_000;
+        for (long i = 0; i < count; i++) {
+            hll.add(1_000_000_000L + i);
+        }
+
+        // Стандартная ошибка при точности 14 — около 0,8%; допускаем три
+        assertThat((double) hll.estimate()).isCloseTo(count, within(count * 0.025));
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (long i = 0; i < 50_000; i++) {
+            first.add(i);
+            union.add(i);
+        }
+        for (long i = 30_000; i < 80_000; i++) {
+            second.add(i);
+            union.add(i);
+        }
+
+        first.merge(second);
+
+        assertThat(first.toBytes()).isEqualTo(union.toBytes());
+        assertThat(first.estimate()).isEqualTo(union.estimate());
+    }
+
+    @Test
+    void mergeRejectsDifferentPrecision() {
+        assertThatThrownBy(() -> new HyperLogLog(12).merge(new HyperLogLog(14)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void precisionOutsideRangeIsRejected() {
+        assertThatThrownBy(() -> new HyperLogLog(3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HyperLogLog(19)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void serializationRoundTripsAndCompressesSmallSketches() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (long i = 0; i < 500; i++) {
+            hll.add(i * 7919);
+        }
+
+        byte[] bytes = hll.toBytes();
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+
+        assertThat(bytes.length).isLessThan(1 << 12);
+        assertThat(restored.estimate()).isEqualTo(hll.estimate());
+        assertThat(restored.toBytes()).isEqualTo(bytes);
+    }
+
+    @Test
+    void copyIsIndependent() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.add(1);
+        HyperLogLog copy = hll.copy();
+
+        for (long i = 2; i < 1_000; i++) {
+            copy.add(i);
+        }
+
+        assertThat(hll.estimate()).isEqualTo(1);
+        assertThat(copy.estimate()).isGreaterThan(900);
+    }
+
+    @Test
+    void corruptedBytesAreRejected() {
+        byte[] bytes = new HyperLogLog().toBytes();
+
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{9, 14})).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(Arrays.copyOf(bytes, bytes.length / 2)))
+                .isInstanceOf(RuntimeException.class);
+    }
+}
@@ -0,0 +1,71 @@
+package com.chatalyst.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LttbTest {
+
+    private record Point(double x, double y) {
+    }
+
+    @Test
+    void shortSeriesIsReturnedAsIs() {
+        List<Point> data = series(10, i -> i);
+
+        assertThat(downsample(data, 10)).isSameAs(data);
+        assertThat(downsample(data, 50)).isSameAs(data);
+        // Меньше трёх точек прорежать нельзя: первая и последняя сохраняются всегда
+        assertThat(downsample(data, 2)).isSameAs(data);
+    }
+
+    @Test
+    void keepsThresholdPointsIncludingEnds() {
+        List<Point> data = series(1_000, i -> Math.sin(i / 20.0));
+
+        List<Point> sampled = downsample(data, 100);
+
+        assertThat(sampled).hasSize(100);
+        assertThat(sampled.get(0)).isSameAs(data.get(0));
+        assertThat(sampled.get(99)).isSameAs(data.get(999));
+        assertThat(data).containsAll(sampled);
+    }
+
+    @Test
+    void resultIsOrderedByX() {
+        List<Point> data = series(5_000, i -> (i * 7919) % 101);
+
+        List<Point> sampled = downsample(data, 300);
+
+        for (int i = 1; i < sampled.size(); i++) {
+            assertThat(sampled.get(i).x()).isGreaterThan(sampled.get(i - 1).x());
+        }
+    }
+
+    @Test
+    void spikesSurviveDownsampling() {
+        List<Point> data = series(10_000, i -> 1);
+        data.set(3_333, new Point(3_333, 500));
+        data.set(7_777, new Point(7_777, -300));
+
+        List<Point> sampled = downsample(data, 50);
+
+        assertThat(sampled).contains(data.get(3_333), data.get(7_777));
+    }
+
+    private static List<Point> downsample(List<Point> data, int threshold) {
+        return Lttb.downsample(data, threshold, Point::x, Point::y);
+    }
+
+    private static List<Point> series(int size, IntToDoubleFunction y) {
+        List<Point> data = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            data.add(new Point(i, y.applyAsDouble(i)));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,48 @@
+package com.chatalyst.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NgramNaiveBayesTest {
+
+    private final NgramNaiveBayes classifier = new NgramNaiveBayes(
+            List.of("сколько стоит", "какая цена", "цена на телефон",
+                    "как оформить доставку", "когда привезете заказ", "доставка в алматы"),
+            List.of("PRICE", "PRICE", "PRICE", "DELIVERY", "DELIVERY", "DELIVERY"));
+
+    @Test
+    void predictsLabelOfSimilarText() {
+        assertThat(classifier.predict("какая цена на чайник").getLabel()).isEqualTo("PRICE");
+        assertThat(classifier.predict("доставка заказа").getLabel()).isEqualTo("DELIVERY");
+    }
+
+    @Test
+    void toleratesTyposAndWordFormsThroughTrigrams() {
+        assertThat(classifier.predict("цены").getLabel()).isEqualTo("PRICE");
+        assertThat(classifier.predict("доставкой").getLabel()).isEqualTo("DELIVERY");
+    }
+
+    @Test
+    void normalizesCaseAndPunctuation() {
+        NgramNaiveBayes.Prediction plain = classifier.predict("сколько стоит");
+        NgramNaiveBayes.Prediction noisy = classifier.predict("Сколько СТОИТ?!");
+
+        assertThat(noisy.getLabel()).isEqualTo(plain.getLabel());
+        assertThat(noisy.getProbability()).isEqualTo(plain.getProbability());
+    }
+
+    @Test
+    void probabilityIsLowForUnrelatedText() {
+        NgramNaiveBayes.Prediction prediction = classifier.predict("qwerty");
+
+        assertThat(prediction.getProbability()).isBetween(0.0, 0.85);
+    }
+
+    @Test
+    void probabilityIsHighForTrainingExample() {
+        assertThat(classifier.predict("сколько стоит").getProbability()).isGreaterThan(0.9);
+    }
+}
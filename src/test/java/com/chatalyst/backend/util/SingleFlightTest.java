@@ -0,0 +1,161 @@
+package com.chatalyst.backend.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallsWithSameKeyShareOneExecution() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+
+        Future<SingleFlight.Shared<String>> leader = executor.submit(() -> flight.execute("k", () -> {
+            executions.incrementAndGet();
+            leaderStarted.countDown();
+            await(release);
+            return "value";
+        }));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<SingleFlight.Shared<String>> follower = executor.submit(() -> flight.execute("k", () -> {
+            executions.incrementAndGet();
+            return "other";
+        }));
+        waitForFollower();
+        release.countDown();
+
+        SingleFlight.Shared<String> leaderResult = leader.get(5, TimeUnit.SECONDS);
+        SingleFlight.Shared<String> followerResult = follower.get(5, TimeUnit.SECONDS);
+        assertThat(executions).hasValue(1);
+        assertThat(leaderResult.getValue()).isEqualTo("value");
+        assertThat(followerResult.getValue()).isEqualTo("value");
+        assertThat(leaderResult.getIndex()).isZero();
+        assertThat(followerResult.getIndex()).isEqualTo(1);
+        assertThat(leaderResult.getParticipants()).isEqualTo(2);
+    }
+
+    @Test
+    void resultIsNotCachedAfterCompletion() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        AtomicInteger executions = new AtomicInteger();
+
+        flight.execute("k", executions::incrementAndGet);
+        SingleFlight.Shared<Integer> second = flight.execute("k", executions::incrementAndGet);
+
+        assertThat(second.getValue()).isEqualTo(2);
+        assertThat(second.getParticipants()).isEqualTo(1);
+    }
+
+    @Test
+    void leaderErrorIsPropagatedToFollowersAndFlightIsRemoved() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<SingleFlight.Shared<String>> leader = executor.submit(() -> flight.execute("k", () -> {
+            leaderStarted.countDown();
+            await(release);
+            throw new AssertionError("boom");
+        }));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<SingleFlight.Shared<String>> follower = executor.submit(() -> flight.execute("k", () -> "unused"));
+        waitForFollower();
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(AssertionError.class);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(SingleFlight.FlightFailedException.class);
+        // Следующий вызов выполняется заново, а не ждёт завершившийся ошибкой
+        assertThat(flight.execute("k", () -> "fresh").getValue()).isEqualTo("fresh");
+    }
+
+    @Test
+    void leaderRuntimeExceptionIsRethrownAsIs() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(() -> flight.execute("k", () -> {
+            leaderStarted.countDown();
+            await(release);
+            throw new IllegalStateException("leader failed");
+        }));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<SingleFlight.Shared<String>> follower = executor.submit(() -> flight.execute("k", () -> "unused"));
+        waitForFollower();
+        release.countDown();
+
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("leader failed");
+    }
+
+    @Test
+    void followerWaitIsBounded() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofMillis(100));
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(() -> flight.execute("k", () -> {
+            leaderStarted.countDown();
+            await(release);
+            return "late";
+        }));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        try {
+            assertThatThrownBy(() -> flight.execute("k", () -> "unused"))
+                    .isInstanceOf(SingleFlight.FlightTimeoutException.class);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void differentKeysRunIndependently() {
+        SingleFlight<String, String> flight = new SingleFlight<>(Duration.ofSeconds(5));
+
+        List<String> values = List.of(
+                flight.execute("a", () -> "A").getValue(),
+                flight.execute("b", () -> "B").getValue());
+
+        assertThat(values).containsExactly("A", "B");
+    }
+
+    // Ожидающий вызов присоединяется под блокировкой корзины map; короткой паузы достаточно, чтобы он успел войти
+    private static void waitForFollower() throws InterruptedException {
+        Thread.sleep(200);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.chatalyst.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextNormalizerTest {
+
+    @Test
+    void lowercasesAndCollapsesPunctuation() {
+        assertThat(TextNormalizer.normalize("  Чайник, BOSCH!!  (белый) ")).isEqualTo("чайник bosch белый");
+    }
+
+    @Test
+    void foldsYoToYe() {
+        assertThat(TextNormalizer.normalize("Ёлка зелёная")).isEqualTo("елка зеленая");
+    }
+
+    @Test
+    void keepsDigits() {
+        assertThat(TextNormalizer.normalize("iPhone 15 Pro-Max")).isEqualTo("iphone 15 pro max");
+    }
+
+    @Test
+    void nullAndBlankBecomeEmpty() {
+        assertThat(TextNormalizer.normalize(null)).isEmpty();
+        assertThat(TextNormalizer.normalize(" ?! ")).isEmpty();
+    }
+
+    @Test
+    void stemmingMakesWordFormsEqual() {
+        assertThat(TextNormalizer.normalizeStemmed("синюю кружку"))
+                .isEqualTo(TextNormalizer.normalizeStemmed("Синяя кружка"));
+        assertThat(TextNormalizer.normalizeStemmed("ноутбуками"))
+                .isEqualTo(TextNormalizer.normalizeStemmed("ноутбуки"));
+    }
+
+    @Test
+    void stemKeepsShortWords() {
+        assertThat(TextNormalizer.stem("уха")).isEqualTo("уха");
+        assertThat(TextNormalizer.stem("чая")).isEqualTo("чая");
+        assertThat(TextNormalizer.stem("чашка")).isEqualTo("чашк");
+    }
+}